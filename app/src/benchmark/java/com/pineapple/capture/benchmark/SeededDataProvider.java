@@ -0,0 +1,94 @@
+package com.pineapple.capture.benchmark;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import com.google.firebase.Timestamp;
+import com.pineapple.capture.data.DataSources;
+import com.pineapple.capture.data.InMemoryAuthSource;
+import com.pineapple.capture.data.InMemoryDataSource;
+import com.pineapple.capture.feed.FeedItem;
+import com.pineapple.capture.feed.FeedItemCodec;
+import com.pineapple.capture.friends.Friend;
+import com.pineapple.capture.friends.FriendCodec;
+import com.pineapple.capture.profile.UserProfile;
+import com.pineapple.capture.profile.UserProfileCodec;
+
+/**
+ * Replaces Firebase with in-memory sources holding the same posts, users and friends on every
+ * launch, with a user already signed in, so benchmark builds measure the app's own work rather
+ * than the network. Only part of the benchmark build type.
+ */
+public class SeededDataProvider extends ContentProvider {
+    private static final String EMAIL = "benchmark@pineapple.com";
+    private static final String PASSWORD = "benchmark";
+    private static final int USERS = 300;
+    private static final int POSTS = 500;
+    private static final long NEWEST_POST_SECONDS = 1700000000L;
+    private static final String[] FIRST = {"Ana", "Bao", "Chloe", "Daniel", "Elodie", "Farah", "Giulia", "Hiro",
+        "Ines", "Jonas", "Kemal", "Linh", "Mateo", "Noor", "Olek", "Priya", "Quentin", "Rosa", "Soren", "Tariq"};
+    private static final String[] LAST = {"Nguyen", "Smith", "Garcia", "Muller", "Rossi", "Tanaka", "Kowalski",
+        "Dubois", "Silva", "Ozturk", "Johansson", "Ivanova", "Kim", "Okafor", "Novak"};
+
+    @Override
+    public boolean onCreate() {
+        InMemoryDataSource data = new InMemoryDataSource();
+        InMemoryAuthSource auth = new InMemoryAuthSource();
+        String userId = auth.createUser(EMAIL, PASSWORD).join();
+        seed(data, userId);
+        DataSources.install(data, auth);
+        return true;
+    }
+
+    private static void seed(InMemoryDataSource data, String userId) {
+        data.set("users/" + userId, UserProfileCodec.INSTANCE.encode(new UserProfile("benchmark", "")));
+        for (int i = 0; i < USERS; i++) {
+            String name = FIRST[i % FIRST.length] + " " + LAST[i / FIRST.length % LAST.length];
+            data.set("users/user-" + i, UserProfileCodec.INSTANCE.encode(new UserProfile(name, "")));
+            data.set("users/" + userId + "/friends/user-" + i,
+                FriendCodec.INSTANCE.encode(new Friend("user-" + i, name, null)));
+        }
+        for (int i = 0; i < POSTS; i++) {
+            FeedItem post = new FeedItem("user-" + (i % USERS), content(i), null);
+            post.setId("post-" + i);
+            post.setTimestamp(new Timestamp(NEWEST_POST_SECONDS - i * 60L, 0));
+            post.setLikes(i % 37);
+            data.set("posts/post-" + i, FeedItemCodec.INSTANCE.encode(post));
+        }
+    }
+
+    // Posts of one to four lines, so rows differ in height as they do in real use
+    private static String content(int i) {
+        StringBuilder content = new StringBuilder("Post " + i + ".");
+        for (int line = 0; line < i % 4; line++) {
+            content.append(" Out on the water again today, the light was better than yesterday.");
+        }
+        return content.toString();
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        return 0;
+    }
+}
@@ -0,0 +1,76 @@
+package com.pineapple.capture.data;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Accounts held in memory, to go with {@link InMemoryDataSource}.
+ */
+public class InMemoryAuthSource implements AuthSource {
+    private static final class Account {
+        final String userId;
+        final String password;
+
+        Account(String userId, String password) {
+            this.userId = userId;
+            this.password = password;
+        }
+    }
+
+    private final Map<String, Account> accounts = new HashMap<>();
+    private String currentEmail;
+
+    @Override
+    public synchronized String getCurrentUserId() {
+        Account account = currentEmail != null ? accounts.get(currentEmail) : null;
+        return account != null ? account.userId : null;
+    }
+
+    @Override
+    public CompletableFuture<String> restoredUserId() {
+        return CompletableFuture.completedFuture(getCurrentUserId());
+    }
+
+    @Override
+    public synchronized CompletableFuture<String> signIn(String email, String password) {
+        Account account = accounts.get(email);
+        CompletableFuture<String> future = new CompletableFuture<>();
+        if (account == null || !account.password.equals(password)) {
+            future.completeExceptionally(new IllegalArgumentException("Invalid email or password"));
+        } else {
+            currentEmail = email;
+            future.complete(account.userId);
+        }
+        return future;
+    }
+
+    @Override
+    public synchronized CompletableFuture<String> createUser(String email, String password) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        if (accounts.containsKey(email)) {
+            future.completeExceptionally(new UserCollisionException("Email already in use: " + email));
+            return future;
+        }
+        Account account = new Account(UUID.randomUUID().toString(), password);
+        accounts.put(email, account);
+        currentEmail = email;
+        future.complete(account.userId);
+        return future;
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> deleteCurrentUser() {
+        if (currentEmail != null) {
+            accounts.remove(currentEmail);
+            currentEmail = null;
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public synchronized void signOut() {
+        currentEmail = null;
+    }
+}
@@ -0,0 +1,850 @@
+package com.pineapple.capture.data;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link DataSource} held in memory, for running view models offline in load tests and
+ * benchmarks. Documents are kept per collection and per collection group, each with ordered
+ * indexes built on first use for the fields queries order by, so a limited query reads only
+ * the documents it returns. Writes apply at once and listeners hear of them straight away, as
+ * with Firestore's local writes; reads and commits complete after the simulated latency.
+ *
+ * <p>Listener events are handed to their executors in the order the writes happened, from a
+ * dispatch thread rather than the writer's. Values are compared with Firestore's type order.
+ * Security rules are not simulated. Nothing here needs Android, so it also runs in JVM tests.
+ */
+public class InMemoryDataSource implements DataSource {
+    private static final String ID_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+    // An entry of an ordered index: the indexed value, then the document path
+    private static final class IndexKey implements Comparable<IndexKey> {
+        final Object value;
+        final String path;
+
+        IndexKey(Object value, String path) {
+            this.value = value;
+            this.path = path;
+        }
+
+        @Override
+        public int compareTo(IndexKey other) {
+            int byValue = compareValues(value, other.value);
+            return byValue != 0 ? byValue : path.compareTo(other.path);
+        }
+    }
+
+    // The documents of one collection or collection group
+    private static final class Scope {
+        // Ordered by path, the order of DOCUMENT_ID
+        final TreeSet<IndexKey> byPath = new TreeSet<>();
+        // Field name to the documents that have the field, ordered by its value
+        final Map<String, TreeSet<IndexKey>> indexes = new HashMap<>();
+    }
+
+    private final class QueryListener implements ListenerRegistration {
+        final DataQuery query;
+        final Executor executor;
+        final Listener<DataSnapshot> listener;
+        List<DataDocument> last;
+        volatile boolean removed;
+
+        QueryListener(DataQuery query, Executor executor, Listener<DataSnapshot> listener) {
+            this.query = query;
+            this.executor = executor;
+            this.listener = listener;
+        }
+
+        @Override
+        public void remove() {
+            removed = true;
+            synchronized (lock) {
+                queryListeners.remove(this);
+            }
+        }
+    }
+
+    private final class DocumentListener implements ListenerRegistration {
+        final String path;
+        final Executor executor;
+        final Listener<DataDocument> listener;
+        volatile boolean removed;
+
+        DocumentListener(String path, Executor executor, Listener<DataDocument> listener) {
+            this.path = path;
+            this.executor = executor;
+            this.listener = listener;
+        }
+
+        @Override
+        public void remove() {
+            removed = true;
+            synchronized (lock) {
+                List<DocumentListener> listeners = documentListeners.get(path);
+                if (listeners != null) {
+                    listeners.remove(this);
+                }
+            }
+        }
+    }
+
+    private enum Kind {
+        SET,
+        MERGE,
+        UPDATE,
+        DELETE
+    }
+
+    private static final class Write {
+        final Kind kind;
+        final String path;
+        final Map<String, Object> fields;
+
+        Write(Kind kind, String path, Map<String, Object> fields) {
+            this.kind = kind;
+            this.path = path;
+            this.fields = fields;
+        }
+    }
+
+    private final Object lock = new Object();
+    // Everything below is guarded by lock. Stored maps are never changed once stored.
+    private final Map<String, Map<String, Object>> documents = new HashMap<>();
+    private final Map<String, Scope> collections = new HashMap<>();
+    private final Map<String, Scope> groups = new HashMap<>();
+    private final List<QueryListener> queryListeners = new ArrayList<>();
+    private final Map<String, List<DocumentListener>> documentListeners = new HashMap<>();
+    private final Random random = new Random();
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(daemon("in-memory-latency"));
+    // Fed while holding lock, so events leave in write order
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(daemon("in-memory-dispatch"));
+    private volatile long latencyMs;
+    // Held by a write to the document for documentWriteNanos; taken in path order, and never
+    // while holding lock
+    private final Map<String, ReentrantLock> documentSlots = new ConcurrentHashMap<>();
+    private volatile long documentWriteNanos;
+
+    public InMemoryDataSource() {
+        this(0);
+    }
+
+    public InMemoryDataSource(long latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    /** The delay before reads and commits complete, standing in for a round trip. */
+    public void setLatencyMillis(long latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    /**
+     * How long each write holds every document it writes, on the writer's thread, standing in
+     * for Firestore's limit on writes per document. Writes to one document then queue while
+     * writes to different documents go ahead together, and a transaction runs again if a
+     * document it read was written before its writes could apply. 0, the default, applies
+     * writes at once.
+     */
+    public void setDocumentWriteNanos(long nanos) {
+        this.documentWriteNanos = nanos;
+    }
+
+    public int size() {
+        synchronized (lock) {
+            return documents.size();
+        }
+    }
+
+    @Override
+    public CompletableFuture<DataDocument> get(String path) {
+        DataDocument document;
+        synchronized (lock) {
+            document = toDocument(path);
+        }
+        return completeLater(document, null);
+    }
+
+    @Override
+    public CompletableFuture<DataSnapshot> get(DataQuery query) {
+        List<DataDocument> result;
+        synchronized (lock) {
+            result = run(query);
+        }
+        return completeLater(new DataSnapshot(result, diff(Collections.emptyList(), result, comparator(query))), null);
+    }
+
+    @Override
+    public CompletableFuture<Void> set(String path, Map<String, Object> data) {
+        return apply(Collections.singletonList(new Write(Kind.SET, path, data)));
+    }
+
+    @Override
+    public CompletableFuture<Void> merge(String path, Map<String, Object> fields) {
+        return apply(Collections.singletonList(new Write(Kind.MERGE, path, fields)));
+    }
+
+    @Override
+    public CompletableFuture<Void> update(String path, Map<String, Object> fields) {
+        return apply(Collections.singletonList(new Write(Kind.UPDATE, path, fields)));
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(String path) {
+        return apply(Collections.singletonList(new Write(Kind.DELETE, path, null)));
+    }
+
+    @Override
+    public String newDocumentPath(String collectionPath) {
+        StringBuilder id = new StringBuilder(20);
+        synchronized (lock) {
+            for (int i = 0; i < 20; i++) {
+                id.append(ID_CHARS.charAt(random.nextInt(ID_CHARS.length())));
+            }
+        }
+        return collectionPath + "/" + id;
+    }
+
+    @Override
+    public DataBatch batch() {
+        List<Write> writes = new ArrayList<>();
+        return new DataBatch() {
+            @Override
+            public DataBatch set(String path, Map<String, Object> data) {
+                writes.add(new Write(Kind.SET, path, data));
+                return this;
+            }
+
+            @Override
+            public DataBatch merge(String path, Map<String, Object> fields) {
+                writes.add(new Write(Kind.MERGE, path, fields));
+                return this;
+            }
+
+            @Override
+            public DataBatch update(String path, Map<String, Object> fields) {
+                writes.add(new Write(Kind.UPDATE, path, fields));
+                return this;
+            }
+
+            @Override
+            public DataBatch delete(String path) {
+                writes.add(new Write(Kind.DELETE, path, null));
+                return this;
+            }
+
+            @Override
+            public CompletableFuture<Void> commit() {
+                return apply(new ArrayList<>(writes));
+            }
+        };
+    }
+
+    // Without a write time, holds the lock throughout, so nothing else can write in between and
+    // no retry is needed
+    @Override
+    public <T> CompletableFuture<T> runTransaction(DataTransaction.Function<T> function) {
+        while (true) {
+            // The stored copy of each document read, null for a missing one
+            Map<String, Map<String, Object>> reads = new HashMap<>();
+            List<Write> writes = new ArrayList<>();
+            T result;
+            synchronized (lock) {
+                try {
+                    result = function.apply(transaction(reads, writes));
+                } catch (FirebaseFirestoreException | RuntimeException e) {
+                    return completeLater(null, e);
+                }
+                if (documentWriteNanos <= 0) {
+                    return apply(writes).thenApply(unused -> result);
+                }
+            }
+            CompletableFuture<Void> applied = apply(writes, reads);
+            if (applied != null) {
+                return applied.thenApply(unused -> result);
+            }
+            // A document read was written in the meantime: run again on fresh reads
+        }
+    }
+
+    private DataTransaction transaction(Map<String, Map<String, Object>> reads, List<Write> writes) {
+        return new DataTransaction() {
+            @Override
+            public DataDocument get(String path) throws FirebaseFirestoreException {
+                if (!writes.isEmpty()) {
+                    throw new FirebaseFirestoreException("Transaction read after a write",
+                        FirebaseFirestoreException.Code.INVALID_ARGUMENT);
+                }
+                reads.put(path, documents.get(path));
+                return toDocument(path);
+            }
+
+            @Override
+            public DataTransaction set(String path, Map<String, Object> data) {
+                writes.add(new Write(Kind.SET, path, data));
+                return this;
+            }
+
+            @Override
+            public DataTransaction merge(String path, Map<String, Object> fields) {
+                writes.add(new Write(Kind.MERGE, path, fields));
+                return this;
+            }
+
+            @Override
+            public DataTransaction update(String path, Map<String, Object> fields) {
+                writes.add(new Write(Kind.UPDATE, path, fields));
+                return this;
+            }
+
+            @Override
+            public DataTransaction delete(String path) {
+                writes.add(new Write(Kind.DELETE, path, null));
+                return this;
+            }
+        };
+    }
+
+    @Override
+    public ListenerRegistration listen(String path, boolean includeMetadataChanges, Executor executor,
+                                       Listener<DataDocument> listener) {
+        // Writes are accepted as they apply, so metadata never changes on its own
+        DocumentListener registration = new DocumentListener(path, executor, listener);
+        synchronized (lock) {
+            documentListeners.computeIfAbsent(path, unused -> new ArrayList<>()).add(registration);
+            deliver(registration, toDocument(path));
+        }
+        return registration;
+    }
+
+    @Override
+    public ListenerRegistration listen(DataQuery query, Executor executor, Listener<DataSnapshot> listener) {
+        QueryListener registration = new QueryListener(query, executor, listener);
+        synchronized (lock) {
+            queryListeners.add(registration);
+            registration.last = run(query);
+            deliver(registration, new DataSnapshot(registration.last,
+                diff(Collections.emptyList(), registration.last, comparator(query))));
+        }
+        return registration;
+    }
+
+    private CompletableFuture<Void> apply(List<Write> writes) {
+        return documentWriteNanos <= 0 ? applyNow(writes) : apply(writes, Collections.emptyMap());
+    }
+
+    /**
+     * Holds every written document for the write time, then applies the writes unless one of
+     * the documents read has been written since. Returns null in that case.
+     */
+    private CompletableFuture<Void> apply(List<Write> writes, Map<String, Map<String, Object>> reads) {
+        // Taken in path order, so two writes never wait on each other
+        Set<String> paths = new TreeSet<>();
+        for (Write write : writes) {
+            paths.add(write.path);
+        }
+        List<ReentrantLock> slots = new ArrayList<>();
+        for (String path : paths) {
+            ReentrantLock slot = documentSlots.computeIfAbsent(path, unused -> new ReentrantLock());
+            slot.lock();
+            slots.add(slot);
+        }
+        try {
+            if (!slots.isEmpty()) {
+                TimeUnit.NANOSECONDS.sleep(documentWriteNanos);
+            }
+            synchronized (lock) {
+                for (Map.Entry<String, Map<String, Object>> read : reads.entrySet()) {
+                    if (documents.get(read.getKey()) != read.getValue()) {
+                        return null;
+                    }
+                }
+                return applyNow(writes);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return completeLater(null, new FirebaseFirestoreException("Write interrupted",
+                FirebaseFirestoreException.Code.CANCELLED));
+        } finally {
+            for (ReentrantLock slot : slots) {
+                slot.unlock();
+            }
+        }
+    }
+
+    // Applies the writes atomically: all of them, or none if an update finds no document
+    private CompletableFuture<Void> applyNow(List<Write> writes) {
+        synchronized (lock) {
+            Map<String, Map<String, Object>> staged = new LinkedHashMap<>();
+            for (Write write : writes) {
+                Map<String, Object> current = staged.containsKey(write.path)
+                    ? staged.get(write.path)
+                    : documents.get(write.path);
+                if (write.kind == Kind.UPDATE && current == null) {
+                    return completeLater(null, new FirebaseFirestoreException(
+                        "No document to update: " + write.path, FirebaseFirestoreException.Code.NOT_FOUND));
+                }
+                staged.put(write.path, written(write, current));
+            }
+            Set<String> changed = new LinkedHashSet<>();
+            for (Map.Entry<String, Map<String, Object>> document : staged.entrySet()) {
+                if (store(document.getKey(), document.getValue())) {
+                    changed.add(document.getKey());
+                }
+            }
+            notifyListeners(changed);
+        }
+        return completeLater(null, null);
+    }
+
+    private static Map<String, Object> written(Write write, Map<String, Object> current) {
+        switch (write.kind) {
+            case SET:
+                return resolve(null, write.fields);
+            case MERGE:
+                return resolve(current, write.fields);
+            case UPDATE: {
+                Map<String, Object> updated = new HashMap<>(current);
+                for (Map.Entry<String, Object> field : write.fields.entrySet()) {
+                    setPath(updated, field.getKey().split("\\."), 0, field.getValue());
+                }
+                return updated;
+            }
+            default:
+                return null;
+        }
+    }
+
+    // Copies the fields over the current map, merging nested maps and applying increments
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> resolve(Map<String, Object> current, Map<String, Object> fields) {
+        Map<String, Object> resolved = current != null ? new HashMap<>(current) : new HashMap<>();
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            Object previous = resolved.get(field.getKey());
+            Object value = field.getValue();
+            if (value instanceof Map) {
+                resolved.put(field.getKey(), resolve(previous instanceof Map ? (Map<String, Object>) previous : null,
+                    (Map<String, Object>) value));
+            } else {
+                resolved.put(field.getKey(), resolveValue(previous, value));
+            }
+        }
+        return resolved;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void setPath(Map<String, Object> map, String[] path, int depth, Object value) {
+        String key = path[depth];
+        Object previous = map.get(key);
+        if (depth == path.length - 1) {
+            map.put(key, value instanceof Map
+                ? resolve(null, (Map<String, Object>) value)
+                : resolveValue(previous, value));
+            return;
+        }
+        Map<String, Object> child = previous instanceof Map
+            ? new HashMap<>((Map<String, Object>) previous)
+            : new HashMap<>();
+        setPath(child, path, depth + 1, value);
+        map.put(key, child);
+    }
+
+    private static Object resolveValue(Object previous, Object value) {
+        if (value instanceof Increment) {
+            Number delta = ((Increment) value).getDelta();
+            Number base = previous instanceof Number ? (Number) previous : 0L;
+            if (isIntegral(base) && isIntegral(delta)) {
+                return base.longValue() + delta.longValue();
+            }
+            return base.doubleValue() + delta.doubleValue();
+        }
+        if (value instanceof List) {
+            List<Object> copy = new ArrayList<>();
+            for (Object item : (List<?>) value) {
+                copy.add(resolveValue(null, item));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    // Returns whether the document changed
+    private boolean store(String path, Map<String, Object> data) {
+        Map<String, Object> previous = documents.get(path);
+        if (previous == null ? data == null : previous.equals(data)) {
+            return false;
+        }
+        for (Scope scope : scopesOf(path, data != null)) {
+            if (previous != null) {
+                scope.byPath.remove(new IndexKey(null, path));
+                for (Map.Entry<String, TreeSet<IndexKey>> index : scope.indexes.entrySet()) {
+                    index.getValue().remove(new IndexKey(fieldValue(previous, index.getKey()), path));
+                }
+            }
+            if (data != null) {
+                scope.byPath.add(new IndexKey(null, path));
+                for (Map.Entry<String, TreeSet<IndexKey>> index : scope.indexes.entrySet()) {
+                    if (hasField(data, index.getKey())) {
+                        index.getValue().add(new IndexKey(fieldValue(data, index.getKey()), path));
+                    }
+                }
+            }
+        }
+        if (data != null) {
+            documents.put(path, data);
+        } else {
+            documents.remove(path);
+        }
+        return true;
+    }
+
+    private List<Scope> scopesOf(String path, boolean create) {
+        int slash = path.lastIndexOf('/');
+        String collectionPath = path.substring(0, slash);
+        String collectionId = collectionPath.substring(collectionPath.lastIndexOf('/') + 1);
+        List<Scope> scopes = new ArrayList<>(2);
+        Scope collection = create ? collections.computeIfAbsent(collectionPath, unused -> new Scope()) : collections.get(collectionPath);
+        Scope group = create ? groups.computeIfAbsent(collectionId, unused -> new Scope()) : groups.get(collectionId);
+        if (collection != null) {
+            scopes.add(collection);
+        }
+        if (group != null) {
+            scopes.add(group);
+        }
+        return scopes;
+    }
+
+    private void notifyListeners(Set<String> changed) {
+        if (changed.isEmpty()) {
+            return;
+        }
+        for (String path : changed) {
+            List<DocumentListener> listeners = documentListeners.get(path);
+            if (listeners != null) {
+                DataDocument document = toDocument(path);
+                for (DocumentListener listener : listeners) {
+                    deliver(listener, document);
+                }
+            }
+        }
+        for (QueryListener listener : queryListeners) {
+            if (!affects(listener.query, changed)) {
+                continue;
+            }
+            List<DataDocument> result = run(listener.query);
+            List<DataChange> changes = diff(listener.last, result, comparator(listener.query));
+            listener.last = result;
+            if (!changes.isEmpty()) {
+                deliver(listener, new DataSnapshot(result, changes));
+            }
+        }
+    }
+
+    private static boolean affects(DataQuery query, Set<String> paths) {
+        for (String path : paths) {
+            String collectionPath = path.substring(0, path.lastIndexOf('/'));
+            String collection = query.isCollectionGroup()
+                ? collectionPath.substring(collectionPath.lastIndexOf('/') + 1)
+                : collectionPath;
+            if (collection.equals(query.getCollection())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void deliver(QueryListener listener, DataSnapshot snapshot) {
+        dispatcher.execute(() -> listener.executor.execute(() -> {
+            if (!listener.removed) {
+                listener.listener.onEvent(snapshot, null);
+            }
+        }));
+    }
+
+    private void deliver(DocumentListener listener, DataDocument document) {
+        dispatcher.execute(() -> listener.executor.execute(() -> {
+            if (!listener.removed) {
+                listener.listener.onEvent(document, null);
+            }
+        }));
+    }
+
+    private DataDocument toDocument(String path) {
+        Map<String, Object> data = documents.get(path);
+        return new DataDocument(path, data != null ? Collections.unmodifiableMap(data) : null);
+    }
+
+    private List<DataDocument> run(DataQuery query) {
+        Scope scope = query.isCollectionGroup() ? groups.get(query.getCollection()) : collections.get(query.getCollection());
+        if (scope == null) {
+            return new ArrayList<>();
+        }
+        List<DataQuery.Order> orders = query.getOrders();
+        int limit = query.getLimit() > 0 ? query.getLimit() : Integer.MAX_VALUE;
+        DataDocument cursor = query.getStartAfter();
+        List<DataDocument> result = new ArrayList<>();
+
+        if (orders.size() > 1) {
+            // No index covers several orders; filter everything, then sort
+            Comparator<DataDocument> comparator = comparator(query);
+            for (IndexKey key : scope.byPath) {
+                DataDocument document = toDocument(key.path);
+                if (matches(query, document) && (cursor == null || comparator.compare(document, cursor) > 0)) {
+                    result.add(document);
+                }
+            }
+            Collections.sort(result, comparator);
+            return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+        }
+
+        String field = orders.isEmpty() ? DataQuery.DOCUMENT_ID : orders.get(0).getField();
+        boolean descending = !orders.isEmpty() && orders.get(0).getDirection() == DataQuery.Direction.DESCENDING;
+        boolean byPath = DataQuery.DOCUMENT_ID.equals(field);
+        NavigableSet<IndexKey> index = byPath ? scope.byPath : index(scope, field);
+        if (descending) {
+            index = index.descendingSet();
+        }
+        if (cursor != null) {
+            index = index.tailSet(new IndexKey(byPath ? null : fieldValue(cursor.getData(), field), cursor.getPath()), false);
+        }
+        for (IndexKey key : index) {
+            DataDocument document = toDocument(key.path);
+            if (matches(query, document)) {
+                result.add(document);
+                if (result.size() >= limit) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private TreeSet<IndexKey> index(Scope scope, String field) {
+        TreeSet<IndexKey> index = scope.indexes.get(field);
+        if (index == null) {
+            index = new TreeSet<>();
+            for (IndexKey key : scope.byPath) {
+                Map<String, Object> data = documents.get(key.path);
+                if (hasField(data, field)) {
+                    index.add(new IndexKey(fieldValue(data, field), key.path));
+                }
+            }
+            scope.indexes.put(field, index);
+        }
+        return index;
+    }
+
+    private static boolean matches(DataQuery query, DataDocument document) {
+        for (DataQuery.Filter filter : query.getFilters()) {
+            Object value = DataQuery.DOCUMENT_ID.equals(filter.getField())
+                ? null
+                : fieldValue(document.getData(), filter.getField());
+            boolean any = false;
+            List<?> candidates = filter.getOperator() == DataQuery.Filter.Operator.IN
+                ? (List<?>) filter.getValue()
+                : Collections.singletonList(filter.getValue());
+            for (Object candidate : candidates) {
+                if (DataQuery.DOCUMENT_ID.equals(filter.getField())
+                        ? isDocument(query, document, candidate)
+                        : value != null && compareValues(value, candidate) == 0) {
+                    any = true;
+                    break;
+                }
+            }
+            if (!any) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Ids name documents of a collection query; paths are needed in a collection group
+    private static boolean isDocument(DataQuery query, DataDocument document, Object candidate) {
+        if (!(candidate instanceof String)) {
+            return false;
+        }
+        String name = (String) candidate;
+        return name.indexOf('/') >= 0 || query.isCollectionGroup()
+            ? document.getPath().equals(name)
+            : document.getId().equals(name);
+    }
+
+    private static Comparator<DataDocument> comparator(DataQuery query) {
+        List<DataQuery.Order> orders = query.getOrders();
+        boolean descending = !orders.isEmpty()
+            && orders.get(orders.size() - 1).getDirection() == DataQuery.Direction.DESCENDING;
+        return (a, b) -> {
+            for (DataQuery.Order order : orders) {
+                if (DataQuery.DOCUMENT_ID.equals(order.getField())) {
+                    continue;
+                }
+                int byField = compareValues(fieldValue(a.getData(), order.getField()), fieldValue(b.getData(), order.getField()));
+                if (byField != 0) {
+                    return order.getDirection() == DataQuery.Direction.DESCENDING ? -byField : byField;
+                }
+            }
+            int byPath = a.getPath().compareTo(b.getPath());
+            return descending ? -byPath : byPath;
+        };
+    }
+
+    /**
+     * The changes that turn one result into the next, in Firestore's terms: each index is
+     * taken against a list that stays sorted as the changes are applied one by one.
+     */
+    static List<DataChange> diff(List<DataDocument> previous, List<DataDocument> next, Comparator<DataDocument> comparator) {
+        List<DataChange> changes = new ArrayList<>();
+        Map<String, DataDocument> previousByPath = new HashMap<>();
+        for (DataDocument document : previous) {
+            previousByPath.put(document.getPath(), document);
+        }
+        Set<String> nextPaths = new HashSet<>();
+        for (DataDocument document : next) {
+            nextPaths.add(document.getPath());
+        }
+        List<DataDocument> tracker = new ArrayList<>(previous);
+        for (DataDocument document : previous) {
+            if (!nextPaths.contains(document.getPath())) {
+                int index = Collections.binarySearch(tracker, document, comparator);
+                tracker.remove(index);
+                changes.add(new DataChange(DataChange.Type.REMOVED, document, index, -1));
+            }
+        }
+        for (DataDocument document : next) {
+            DataDocument old = previousByPath.get(document.getPath());
+            if (old == null) {
+                int index = -Collections.binarySearch(tracker, document, comparator) - 1;
+                tracker.add(index, document);
+                changes.add(new DataChange(DataChange.Type.ADDED, document, -1, index));
+            } else if (!old.getData().equals(document.getData())) {
+                int oldIndex = Collections.binarySearch(tracker, old, comparator);
+                tracker.remove(oldIndex);
+                int newIndex = -Collections.binarySearch(tracker, document, comparator) - 1;
+                tracker.add(newIndex, document);
+                changes.add(new DataChange(DataChange.Type.MODIFIED, document, oldIndex, newIndex));
+            }
+        }
+        return changes;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object fieldValue(Map<String, Object> data, String field) {
+        Object value = data;
+        for (String segment : field.split("\\.")) {
+            if (!(value instanceof Map)) {
+                return null;
+            }
+            value = ((Map<String, Object>) value).get(segment);
+        }
+        return value;
+    }
+
+    private static boolean hasField(Map<String, Object> data, String field) {
+        return data != null && fieldValue(data, field) != null;
+    }
+
+    private static boolean isIntegral(Number number) {
+        return number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte;
+    }
+
+    private static int typeOrder(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof Boolean) {
+            return 1;
+        } else if (value instanceof Number) {
+            return 2;
+        } else if (value instanceof Timestamp) {
+            return 3;
+        } else if (value instanceof String) {
+            return 4;
+        } else if (value instanceof List) {
+            return 5;
+        } else if (value instanceof Map) {
+            return 6;
+        }
+        return 7;
+    }
+
+    /** Firestore's ordering: by type first, then by value within a type. */
+    static int compareValues(Object a, Object b) {
+        int byType = Integer.compare(typeOrder(a), typeOrder(b));
+        if (byType != 0) {
+            return byType;
+        }
+        if (a == null) {
+            return 0;
+        } else if (a instanceof Boolean) {
+            return Boolean.compare((Boolean) a, (Boolean) b);
+        } else if (a instanceof Number) {
+            Number x = (Number) a;
+            Number y = (Number) b;
+            return isIntegral(x) && isIntegral(y)
+                ? Long.compare(x.longValue(), y.longValue())
+                : Double.compare(x.doubleValue(), y.doubleValue());
+        } else if (a instanceof Timestamp) {
+            return ((Timestamp) a).compareTo((Timestamp) b);
+        } else if (a instanceof String) {
+            return ((String) a).compareTo((String) b);
+        } else if (a instanceof List) {
+            List<?> x = (List<?>) a;
+            List<?> y = (List<?>) b;
+            for (int i = 0; i < Math.min(x.size(), y.size()); i++) {
+                int byItem = compareValues(x.get(i), y.get(i));
+                if (byItem != 0) {
+                    return byItem;
+                }
+            }
+            return Integer.compare(x.size(), y.size());
+        }
+        return a.toString().compareTo(b.toString());
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private <T> CompletableFuture<T> completeLater(T value, Exception error) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable complete = () -> {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(value);
+            }
+        };
+        long delay = latencyMs;
+        if (delay > 0) {
+            timer.schedule(complete, delay, TimeUnit.MILLISECONDS);
+        } else {
+            complete.run();
+        }
+        return future;
+    }
+}
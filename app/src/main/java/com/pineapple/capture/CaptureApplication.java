@@ -0,0 +1,28 @@
+package com.pineapple.capture;
+
+import android.app.Application;
+import androidx.work.Configuration;
+import com.pineapple.capture.data.DataExecutors;
+import com.pineapple.capture.data.DataSources;
+import com.pineapple.capture.feed.PostUploadWorker;
+import java.util.concurrent.Executors;
+
+public class CaptureApplication extends Application implements Configuration.Provider {
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        StartupTimer.mark("application created");
+        DataSources.initialize(this);
+        StartupTimer.mark("application ready");
+    }
+
+    // WorkManager starts on first use with this configuration rather than at process start.
+    // Its workers share a pool sized to the number of uploads allowed to run at once
+    @Override
+    public Configuration getWorkManagerConfiguration() {
+        return new Configuration.Builder()
+            .setExecutor(Executors.newFixedThreadPool(PostUploadWorker.MAX_PARALLEL_UPLOADS,
+                DataExecutors.backgroundThreads("work")))
+            .build();
+    }
+}
@@ -0,0 +1,40 @@
+package com.pineapple.capture;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Logs how far into a cold start each phase is reached, measured from process start, and how
+ * long the work started alongside it takes. Timed work is also traced as a section of its
+ * own, for macrobenchmarks and system traces.
+ */
+public final class StartupTimer {
+    private static final String TAG = "StartupTimer";
+
+    private static final Set<String> reached = ConcurrentHashMap.newKeySet();
+
+    private StartupTimer() {}
+
+    /** Logs the first time the phase is reached in this process. */
+    public static void mark(String phase) {
+        if (reached.add(phase)) {
+            Log.i(TAG, phase + " at " + (SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime()) + " ms");
+        }
+    }
+
+    public static <T> T time(String section, Supplier<T> work) {
+        long startMs = SystemClock.elapsedRealtime();
+        Trace.beginSection(section);
+        try {
+            return work.get();
+        } finally {
+            Trace.endSection();
+            Log.i(TAG, section + " took " + (SystemClock.elapsedRealtime() - startMs) + " ms");
+        }
+    }
+}
@@ -2,17 +2,21 @@ package com.pineapple.capture.auth;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
 import android.widget.TextView;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.lifecycle.ViewModelProvider;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.textfield.TextInputEditText;
+import com.google.android.material.textfield.TextInputLayout;
 import com.pineapple.capture.R;
 import com.pineapple.capture.feed.MainFeedActivity;
 
 public class AuthActivity extends AppCompatActivity {
     private AuthViewModel authViewModel;
+    private TextInputLayout usernameLayout;
     private TextInputEditText usernameInput;
     private TextInputEditText passwordInput;
     private MaterialButton loginButton;
@@ -27,6 +31,7 @@ public class AuthActivity extends AppCompatActivity {
         authViewModel = new ViewModelProvider(this).get(AuthViewModel.class);
         
         // Initialize views
+        usernameLayout = findViewById(R.id.username_layout);
         usernameInput = findViewById(R.id.username_input);
         passwordInput = findViewById(R.id.password_input);
         loginButton = findViewById(R.id.login_button);
@@ -36,6 +41,19 @@ public class AuthActivity extends AppCompatActivity {
         // Set up click listeners
         loginButton.setOnClickListener(v -> handleLogin());
         signupButton.setOnClickListener(v -> handleSignup());
+        usernameInput.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                authViewModel.checkUsername(s.toString().trim());
+            }
+        });
+        authViewModel.getUsernameStatus().observe(this, this::showUsernameStatus);
         
         // Observe authentication state changes
         authViewModel.getAuthState().observe(this, isAuthenticated -> {
@@ -56,6 +74,30 @@ public class AuthActivity extends AppCompatActivity {
         });
     }
     
+    private void showUsernameStatus(UsernameAvailabilityChecker.Status status) {
+        if (status == null) {
+            usernameLayout.setHelperText(null);
+            return;
+        }
+        switch (status) {
+            case CHECKING:
+                usernameLayout.setHelperText("Checking username...");
+                break;
+            case AVAILABLE:
+                usernameLayout.setHelperText("Username is available");
+                break;
+            case TAKEN:
+                usernameLayout.setHelperText("Username is taken");
+                break;
+            case INVALID:
+                usernameLayout.setHelperText("Username is not allowed");
+                break;
+            default:
+                usernameLayout.setHelperText(null);
+                break;
+        }
+    }
+
     private void handleLogin() {
         String username = usernameInput.getText().toString().trim();
         String password = passwordInput.getText().toString().trim();
@@ -68,7 +110,10 @@ public class AuthActivity extends AppCompatActivity {
     private void handleSignup() {
         String username = usernameInput.getText().toString().trim();
         String password = passwordInput.getText().toString().trim();
-        
+
+        if (!username.isEmpty()) {
+            authViewModel.precheckUsername(username);
+        }
         if (validateInput(username, password)) {
             authViewModel.signUp(username + "@pineapple.com", password);
         }
@@ -1,68 +1,168 @@
 package com.pineapple.capture.auth;
 
+import android.os.SystemClock;
+import android.util.Log;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.ViewModel;
-import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.auth.FirebaseUser;
-import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.pineapple.capture.data.AuthSource;
+import com.pineapple.capture.data.DataBatch;
+import com.pineapple.capture.data.DataDocument;
+import com.pineapple.capture.data.DataExecutors;
+import com.pineapple.capture.data.DataSource;
+import com.pineapple.capture.data.DataSources;
 import com.pineapple.capture.profile.UserProfile;
+import com.pineapple.capture.profile.UserProfileCodec;
+import java.util.concurrent.CompletableFuture;
 
 public class AuthViewModel extends ViewModel {
-    private FirebaseAuth auth;
-    private FirebaseFirestore db;
+    private static final String TAG = "AuthViewModel";
+
+    private AuthSource auth;
+    private DataSource data;
     private MutableLiveData<Boolean> authState;
     private MutableLiveData<String> errorMessage;
+    private MutableLiveData<UsernameAvailabilityChecker.Status> usernameStatus;
+    private UsernameAvailabilityChecker availabilityChecker;
+    // Reservation read started ahead of sign-up, reused if sign-up is for the same username
+    private String precheckedUsername;
+    private CompletableFuture<DataDocument> precheck;
+    private long precheckStartMs;
 
     public AuthViewModel() {
-        auth = FirebaseAuth.getInstance();
-        db = FirebaseFirestore.getInstance();
+        this(DataSources.data(), DataSources.auth());
+    }
+
+    public AuthViewModel(DataSource data, AuthSource auth) {
+        this.auth = auth;
+        this.data = data;
         authState = new MutableLiveData<>();
         errorMessage = new MutableLiveData<>();
+        usernameStatus = new MutableLiveData<>();
+        availabilityChecker = new UsernameAvailabilityChecker(data, (username, status) -> usernameStatus.setValue(status));
     }
 
     public void signIn(String email, String password) {
-        auth.signInWithEmailAndPassword(email, password)
-            .addOnSuccessListener(authResult -> authState.setValue(true))
-            .addOnFailureListener(e -> errorMessage.setValue("Invalid username or password"));
+        auth.signIn(email, password).whenCompleteAsync((userId, error) -> {
+            if (error == null) {
+                authState.setValue(true);
+            } else {
+                errorMessage.setValue("Invalid username or password");
+            }
+        }, DataExecutors.main());
     }
 
+    /**
+     * Reports through {@link #getUsernameStatus()} whether the name being typed is free. An empty
+     * name clears the status.
+     */
+    public void checkUsername(String username) {
+        if (username.isEmpty()) {
+            availabilityChecker.cancel();
+            usernameStatus.setValue(null);
+        } else {
+            availabilityChecker.check(username);
+        }
+    }
+
+    /**
+     * Starts reading the username's reservation so the answer is on its way while the form is
+     * validated. {@link #signUp} reuses the read when it is for the same username.
+     */
+    public void precheckUsername(String username) {
+        if (!username.equals(precheckedUsername)) {
+            precheckedUsername = username;
+            precheckStartMs = SystemClock.elapsedRealtime();
+            precheck = availabilityChecker.lookUp(username);
+        }
+    }
+
+    /**
+     * Signs up in two round trips: the reservation read runs alongside account creation, then the
+     * profile and the reservation are committed in one batch. The rules in {@code firestore.rules}
+     * only allow creating a {@code usernames} document, never overwriting one, so a username
+     * claimed in the meantime fails the whole batch. Any failure after the account exists deletes
+     * the account again.
+     */
     public void signUp(String email, String password) {
         String username = email.replace("@pineapple.com", "");
-        
-        // Check if username already exists
-        db.collection("usernames")
-            .document(username)
-            .get()
-            .addOnSuccessListener(document -> {
-                if (document.exists()) {
-                    errorMessage.setValue("Username already taken");
-                } else {
-                    // Create new user
-                    auth.createUserWithEmailAndPassword(email, password)
-                        .addOnSuccessListener(authResult -> {
-                            FirebaseUser user = authResult.getUser();
-                            if (user != null) {
-                                // Create user profile
-                                UserProfile profile = new UserProfile(username, "");
-                                db.collection("users")
-                                    .document(user.getUid())
-                                    .set(profile)
-                                    .addOnSuccessListener(aVoid -> {
-                                        // Reserve username
-                                        db.collection("usernames")
-                                            .document(username)
-                                            .set(new UsernameReservation(user.getUid()))
-                                            .addOnSuccessListener(aVoid2 -> authState.setValue(true))
-                                            .addOnFailureListener(e -> errorMessage.setValue("Failed to create user profile"));
-                                    })
-                                    .addOnFailureListener(e -> errorMessage.setValue("Failed to create user profile"));
-                            }
-                        })
-                        .addOnFailureListener(e -> errorMessage.setValue("Failed to create account"));
+        if (!UsernameAvailabilityChecker.isValid(username)) {
+            errorMessage.setValue("Invalid username");
+            return;
+        }
+        long startMs = SystemClock.elapsedRealtime();
+        precheckUsername(username);
+        CompletableFuture<DataDocument> check = precheck;
+        long checkStartMs = precheckStartMs;
+        precheckedUsername = null;
+
+        CompletableFuture<String> create = auth.createUser(email, password);
+        check.whenComplete((reservation, error) -> logStep("username check", checkStartMs));
+        create.whenComplete((userId, error) -> logStep("account creation", startMs));
+
+        // Both run concurrently; carry on once both have settled
+        create.whenCompleteAsync((userId, createError) -> check.whenCompleteAsync((reservation, checkError) -> {
+            if (createError != null) {
+                errorMessage.setValue(DataSource.cause(createError) instanceof AuthSource.UserCollisionException
+                    ? "Username already taken"
+                    : "Failed to create account");
+                return;
+            }
+            // A failed check is not fatal: the batch enforces uniqueness on its own
+            if (checkError == null && isReservedByOther(reservation, userId)) {
+                rollBack("Username already taken");
+                return;
+            }
+
+            long commitStartMs = SystemClock.elapsedRealtime();
+            DataBatch batch = data.batch();
+            batch.set("users/" + userId, UserProfileCodec.INSTANCE.encode(new UserProfile(username, "")));
+            batch.set("usernames/" + username,
+                UsernameReservationCodec.INSTANCE.encode(new UsernameReservation(userId)));
+            batch.commit().whenCompleteAsync((unused, error) -> {
+                logStep("profile commit", commitStartMs);
+                if (error == null) {
+                    logStep("sign-up", startMs);
+                    authState.setValue(true);
+                    return;
+                }
+                Exception e = DataSource.cause(error);
+                if (!(e instanceof FirebaseFirestoreException
+                        && ((FirebaseFirestoreException) e).getCode() == FirebaseFirestoreException.Code.PERMISSION_DENIED)) {
+                    rollBack("Failed to create user profile");
+                    return;
                 }
-            })
-            .addOnFailureListener(e -> errorMessage.setValue("Failed to check username availability"));
+                // Denied for a reason other than the reservation unless someone else now holds it
+                data.get("usernames/" + username).whenCompleteAsync((current, readError) ->
+                    rollBack(readError == null && isReservedByOther(current, userId)
+                        ? "Username already taken"
+                        : "Failed to create user profile"), DataExecutors.main());
+            }, DataExecutors.main());
+        }, DataExecutors.main()), DataExecutors.main());
+    }
+
+    private static boolean isReservedByOther(DataDocument reservation, String userId) {
+        if (!reservation.exists()) {
+            return false;
+        }
+        UsernameReservation owner = UsernameReservationCodec.INSTANCE.decode(reservation);
+        return owner == null || !userId.equals(owner.getUserId());
+    }
+
+    // Deletes the account just created so a failed sign-up leaves nothing behind
+    private void rollBack(String message) {
+        String userId = auth.getCurrentUserId();
+        auth.deleteCurrentUser().whenComplete((unused, error) -> {
+            if (error != null) {
+                Log.w(TAG, "Failed to delete account " + userId, error);
+            }
+        });
+        errorMessage.setValue(message);
+    }
+
+    private static void logStep(String step, long startMs) {
+        Log.d(TAG, step + " took " + (SystemClock.elapsedRealtime() - startMs) + " ms");
     }
 
     public void signOut() {
@@ -78,11 +178,20 @@ public class AuthViewModel extends ViewModel {
         return errorMessage;
     }
 
-    public FirebaseUser getCurrentUser() {
-        return auth.getCurrentUser();
+    public LiveData<UsernameAvailabilityChecker.Status> getUsernameStatus() {
+        return usernameStatus;
+    }
+
+    @Override
+    protected void onCleared() {
+        availabilityChecker.cancel();
+    }
+
+    public String getCurrentUserId() {
+        return auth.getCurrentUserId();
     }
     
-    private static class UsernameReservation {
+    public static class UsernameReservation {
         private String userId;
         
         public UsernameReservation() {}
@@ -0,0 +1,142 @@
+package com.pineapple.capture.auth;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.LruCache;
+import com.pineapple.capture.data.DataDocument;
+import com.pineapple.capture.data.DataExecutors;
+import com.pineapple.capture.data.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Tells whether a username is free while it is being typed. Keystrokes are debounced, only the
+ * latest name is reported, a name already being looked up is not looked up again, and answers
+ * are cached for a while so editing back and forth costs no reads. Main thread only.
+ */
+public class UsernameAvailabilityChecker {
+    public enum Status {
+        CHECKING,
+        AVAILABLE,
+        TAKEN,
+        // Not a name Firestore can use as a document id
+        INVALID,
+        // The lookup failed, e.g. while offline
+        UNKNOWN
+    }
+
+    public interface Listener {
+        void onStatus(String username, Status status);
+    }
+
+    static final long DEBOUNCE_MS = 300;
+    // A free name can be claimed at any moment, so trust that answer for less time
+    static final long AVAILABLE_TTL_MS = 30_000;
+    static final long TAKEN_TTL_MS = 10 * 60_000;
+    private static final int CACHE_SIZE = 64;
+
+    private static class Entry {
+        final boolean available;
+        final long checkedAt;
+
+        Entry(boolean available, long checkedAt) {
+            this.available = available;
+            this.checkedAt = checkedAt;
+        }
+    }
+
+    private final DataSource data;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final LruCache<String, Entry> cache = new LruCache<>(CACHE_SIZE);
+    private final Map<String, CompletableFuture<DataDocument>> inFlight = new HashMap<>();
+    private String latest;
+    private Runnable pendingCheck;
+
+    public UsernameAvailabilityChecker(DataSource data, Listener listener) {
+        this.data = data;
+        this.listener = listener;
+    }
+
+    /** Checks the name once typing pauses, superseding any earlier name. */
+    public void check(String username) {
+        cancel();
+        latest = username;
+        if (!isValid(username)) {
+            listener.onStatus(username, Status.INVALID);
+            return;
+        }
+        Entry cached = fresh(username);
+        if (cached != null) {
+            listener.onStatus(username, cached.available ? Status.AVAILABLE : Status.TAKEN);
+            return;
+        }
+        listener.onStatus(username, Status.CHECKING);
+        pendingCheck = () -> {
+            pendingCheck = null;
+            lookUp(username).whenCompleteAsync((reservation, error) -> {
+                if (!username.equals(latest)) {
+                    return;
+                }
+                if (error != null) {
+                    listener.onStatus(username, Status.UNKNOWN);
+                } else {
+                    listener.onStatus(username, reservation.exists() ? Status.TAKEN : Status.AVAILABLE);
+                }
+            }, DataExecutors.main());
+        };
+        handler.postDelayed(pendingCheck, DEBOUNCE_MS);
+    }
+
+    /** Drops the pending check, and with it any report for a lookup already under way. */
+    public void cancel() {
+        if (pendingCheck != null) {
+            handler.removeCallbacks(pendingCheck);
+            pendingCheck = null;
+        }
+        latest = null;
+    }
+
+    /**
+     * Reads the name's reservation, sharing a read already in flight for the same name. The result
+     * is cached for later checks.
+     */
+    public CompletableFuture<DataDocument> lookUp(String username) {
+        CompletableFuture<DataDocument> existing = inFlight.get(username);
+        if (existing != null) {
+            return existing;
+        }
+        CompletableFuture<DataDocument> read = data.get("usernames/" + username);
+        inFlight.put(username, read);
+        read.whenCompleteAsync((reservation, error) -> {
+            inFlight.remove(username);
+            if (error == null) {
+                cache.put(username, new Entry(!reservation.exists(), SystemClock.elapsedRealtime()));
+            }
+        }, DataExecutors.main());
+        return read;
+    }
+
+    private Entry fresh(String username) {
+        Entry entry = cache.get(username);
+        if (entry == null) {
+            return null;
+        }
+        long age = SystemClock.elapsedRealtime() - entry.checkedAt;
+        if (age > (entry.available ? AVAILABLE_TTL_MS : TAKEN_TTL_MS)) {
+            cache.remove(username);
+            return null;
+        }
+        return entry;
+    }
+
+    static boolean isValid(String username) {
+        return !username.isEmpty()
+            && !username.contains("/")
+            && !username.equals(".")
+            && !username.equals("..")
+            && !(username.startsWith("__") && username.endsWith("__"));
+    }
+}
@@ -0,0 +1,23 @@
+package com.pineapple.capture.auth;
+
+import com.pineapple.capture.data.DocumentCodec;
+import java.util.HashMap;
+import java.util.Map;
+
+public final class UsernameReservationCodec implements DocumentCodec<AuthViewModel.UsernameReservation> {
+    public static final UsernameReservationCodec INSTANCE = new UsernameReservationCodec();
+
+    private UsernameReservationCodec() {}
+
+    @Override
+    public AuthViewModel.UsernameReservation decode(String id, Map<String, Object> data) {
+        return new AuthViewModel.UsernameReservation(DocumentCodec.getString(data, "userId"));
+    }
+
+    @Override
+    public Map<String, Object> encode(AuthViewModel.UsernameReservation reservation) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("userId", reservation.getUserId());
+        return data;
+    }
+}
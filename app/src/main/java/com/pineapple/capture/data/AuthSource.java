@@ -0,0 +1,33 @@
+package com.pineapple.capture.data;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Signs users in and out. Futures complete with the user's id and may complete on any thread.
+ */
+public interface AuthSource {
+    /** Account creation failed because the email is already registered. */
+    class UserCollisionException extends Exception {
+        public UserCollisionException(String message) {
+            super(message);
+        }
+    }
+
+    /** The signed-in user's id, or null. */
+    String getCurrentUserId();
+
+    /**
+     * Completes with the signed-in user's id, or null, once the session saved by an earlier run
+     * has been restored. Until then {@link #getCurrentUserId()} may answer from a cache.
+     */
+    CompletableFuture<String> restoredUserId();
+
+    CompletableFuture<String> signIn(String email, String password);
+
+    /** Creates the account and signs it in; fails with {@link UserCollisionException} if taken. */
+    CompletableFuture<String> createUser(String email, String password);
+
+    CompletableFuture<Void> deleteCurrentUser();
+
+    void signOut();
+}
@@ -0,0 +1,19 @@
+package com.pineapple.capture.data;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Writes committed atomically, with the meaning of the matching {@link DataSource} methods.
+ */
+public interface DataBatch {
+    DataBatch set(String path, Map<String, Object> data);
+
+    DataBatch merge(String path, Map<String, Object> fields);
+
+    DataBatch update(String path, Map<String, Object> fields);
+
+    DataBatch delete(String path);
+
+    CompletableFuture<Void> commit();
+}
@@ -0,0 +1,43 @@
+package com.pineapple.capture.data;
+
+/**
+ * One change between two results of a query. Changes are applied in order: each index refers
+ * to the list as left by the changes before it, as with Firestore's {@code DocumentChange}.
+ */
+public final class DataChange {
+    public enum Type {
+        ADDED,
+        MODIFIED,
+        REMOVED
+    }
+
+    private final Type type;
+    private final DataDocument document;
+    private final int oldIndex;
+    private final int newIndex;
+
+    public DataChange(Type type, DataDocument document, int oldIndex, int newIndex) {
+        this.type = type;
+        this.document = document;
+        this.oldIndex = oldIndex;
+        this.newIndex = newIndex;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public DataDocument getDocument() {
+        return document;
+    }
+
+    /** -1 for an added document. */
+    public int getOldIndex() {
+        return oldIndex;
+    }
+
+    /** -1 for a removed document. */
+    public int getNewIndex() {
+        return newIndex;
+    }
+}
@@ -0,0 +1,106 @@
+package com.pineapple.capture.data;
+
+import com.google.firebase.Timestamp;
+import java.util.Map;
+
+/**
+ * A document read from a {@link DataSource}, or the absence of one. A document backed by the
+ * engine's own copy reads its fields from that copy only when asked, so documents that are only
+ * counted, compared or identified never have their fields converted.
+ */
+public final class DataDocument {
+    /** The fields of the engine's own copy of a document. */
+    interface Fields {
+        Map<String, Object> getAll();
+
+        Object get(String field);
+    }
+
+    private final String path;
+    private final boolean exists;
+    // Null when the fields were given up front
+    private final Fields fields;
+    // Converted from fields on first use; a race converts twice, to equal maps
+    private volatile Map<String, Object> data;
+    // The engine's own copy of the document, e.g. the snapshot a Firestore cursor starts after
+    final Object handle;
+    private final boolean fromCache;
+    private final boolean pendingWrites;
+
+    public DataDocument(String path, Map<String, Object> data) {
+        this.path = path;
+        this.exists = data != null;
+        this.fields = null;
+        this.data = data;
+        this.handle = null;
+        this.fromCache = false;
+        this.pendingWrites = false;
+    }
+
+    DataDocument(String path, boolean exists, Fields fields, Object handle, boolean fromCache, boolean pendingWrites) {
+        this.path = path;
+        this.exists = exists;
+        this.fields = fields;
+        this.handle = handle;
+        this.fromCache = fromCache;
+        this.pendingWrites = pendingWrites;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getId() {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * The id of the document whose subcollection holds this one, or null for a top-level
+     * document; for {@code users/u1/friends/u2} that is {@code u1}.
+     */
+    public String getParentId() {
+        String[] segments = path.split("/");
+        return segments.length >= 4 ? segments[segments.length - 3] : null;
+    }
+
+    /** Whether the document was read from the local cache rather than confirmed by the server. */
+    public boolean isFromCache() {
+        return fromCache;
+    }
+
+    /**
+     * Whether the document includes local writes the server has not accepted yet, and which it
+     * may still reject.
+     */
+    public boolean hasPendingWrites() {
+        return pendingWrites;
+    }
+
+    public boolean exists() {
+        return exists;
+    }
+
+    /** The fields, or null when the document does not exist. */
+    public Map<String, Object> getData() {
+        Map<String, Object> current = data;
+        if (current == null && exists) {
+            current = fields.getAll();
+            data = current;
+        }
+        return current;
+    }
+
+    /** One field, read without converting the others. */
+    public Object get(String field) {
+        Map<String, Object> current = data;
+        if (current != null) {
+            return current.get(field);
+        }
+        return exists ? fields.get(field) : null;
+    }
+
+    public Timestamp getTimestamp(String field) {
+        Object value = get(field);
+        return value instanceof Timestamp ? (Timestamp) value : null;
+    }
+}
@@ -0,0 +1,70 @@
+package com.pineapple.capture.data;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Shared executors for the data layer. Snapshot listeners are registered on the single mapping
+ * thread so documents are deserialized in order and off the main thread.
+ */
+public final class DataExecutors {
+    private static final ExecutorService MAPPING =
+        Executors.newSingleThreadExecutor(backgroundThreads("snapshot-mapping"));
+
+    // Kept apart from mapping so a long diff never delays the next snapshot
+    private static final ExecutorService DIFFING =
+        Executors.newSingleThreadExecutor(backgroundThreads("list-diffing"));
+
+    // Local database and file access
+    private static final ExecutorService IO =
+        Executors.newSingleThreadExecutor(backgroundThreads("data-io"));
+
+    // Jobs that block on many writes in turn, such as fanning a post out to every follower or a
+    // profile change out to every copy of it, so they never hold up io
+    private static final ExecutorService FANOUT =
+        Executors.newSingleThreadExecutor(backgroundThreads("fan-out"));
+
+    private static volatile Executor main;
+
+    private DataExecutors() {}
+
+    public static Executor mapping() {
+        return MAPPING;
+    }
+
+    public static Executor diffing() {
+        return DIFFING;
+    }
+
+    public static Executor io() {
+        return IO;
+    }
+
+    public static Executor fanout() {
+        return FANOUT;
+    }
+
+    public static Executor main() {
+        if (main == null) {
+            Handler handler = new Handler(Looper.getMainLooper());
+            main = handler::post;
+        }
+        return main;
+    }
+
+    public static ThreadFactory backgroundThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,152 @@
+package com.pineapple.capture.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable query over a collection, or over every collection with the same id (a
+ * collection group). Results are ordered by the {@link #orderBy} fields and then by document
+ * path, in the direction of the last order, as Firestore orders them.
+ */
+public final class DataQuery {
+    /** Filters or orders by the document id, or by the full path in a collection group. */
+    public static final String DOCUMENT_ID = "__name__";
+
+    public enum Direction {
+        ASCENDING,
+        DESCENDING
+    }
+
+    public static final class Filter {
+        public enum Operator {
+            EQUAL,
+            IN
+        }
+
+        private final String field;
+        private final Operator operator;
+        private final Object value;
+
+        Filter(String field, Operator operator, Object value) {
+            this.field = field;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public Operator getOperator() {
+            return operator;
+        }
+
+        /** The value, or for {@link Operator#IN} the list of values. */
+        public Object getValue() {
+            return value;
+        }
+    }
+
+    public static final class Order {
+        private final String field;
+        private final Direction direction;
+
+        Order(String field, Direction direction) {
+            this.field = field;
+            this.direction = direction;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public Direction getDirection() {
+            return direction;
+        }
+    }
+
+    private final String collection;
+    private final boolean group;
+    private final List<Filter> filters;
+    private final List<Order> orders;
+    private final int limit;
+    private final DataDocument startAfter;
+
+    private DataQuery(String collection, boolean group, List<Filter> filters, List<Order> orders,
+                      int limit, DataDocument startAfter) {
+        this.collection = collection;
+        this.group = group;
+        this.filters = filters;
+        this.orders = orders;
+        this.limit = limit;
+        this.startAfter = startAfter;
+    }
+
+    public static DataQuery collection(String path) {
+        return new DataQuery(path, false, Collections.emptyList(), Collections.emptyList(), 0, null);
+    }
+
+    public static DataQuery collectionGroup(String collectionId) {
+        return new DataQuery(collectionId, true, Collections.emptyList(), Collections.emptyList(), 0, null);
+    }
+
+    public DataQuery whereEqualTo(String field, Object value) {
+        return withFilter(new Filter(field, Filter.Operator.EQUAL, value));
+    }
+
+    public DataQuery whereIn(String field, List<?> values) {
+        return withFilter(new Filter(field, Filter.Operator.IN, Collections.unmodifiableList(new ArrayList<>(values))));
+    }
+
+    public DataQuery orderBy(String field) {
+        return orderBy(field, Direction.ASCENDING);
+    }
+
+    public DataQuery orderBy(String field, Direction direction) {
+        List<Order> ordered = new ArrayList<>(orders);
+        ordered.add(new Order(field, direction));
+        return new DataQuery(collection, group, filters, Collections.unmodifiableList(ordered), limit, startAfter);
+    }
+
+    public DataQuery limit(int limit) {
+        return new DataQuery(collection, group, filters, orders, limit, startAfter);
+    }
+
+    /** Starts after a document of an earlier result of this query. */
+    public DataQuery startAfter(DataDocument document) {
+        return new DataQuery(collection, group, filters, orders, limit, document);
+    }
+
+    private DataQuery withFilter(Filter filter) {
+        List<Filter> filtered = new ArrayList<>(filters);
+        filtered.add(filter);
+        return new DataQuery(collection, group, Collections.unmodifiableList(filtered), orders, limit, startAfter);
+    }
+
+    /** The collection path, or the collection id of a collection group. */
+    public String getCollection() {
+        return collection;
+    }
+
+    public boolean isCollectionGroup() {
+        return group;
+    }
+
+    public List<Filter> getFilters() {
+        return filters;
+    }
+
+    public List<Order> getOrders() {
+        return orders;
+    }
+
+    /** 0 for no limit. */
+    public int getLimit() {
+        return limit;
+    }
+
+    public DataDocument getStartAfter() {
+        return startAfter;
+    }
+}
@@ -0,0 +1,44 @@
+package com.pineapple.capture.data;
+
+import java.util.List;
+
+/**
+ * The result of a query. For a listener the changes are relative to its previous result, and
+ * for the first result or a one-off read every document is added.
+ */
+public final class DataSnapshot {
+    private final List<DataDocument> documents;
+    private final List<DataChange> changes;
+    private final boolean fromCache;
+
+    public DataSnapshot(List<DataDocument> documents, List<DataChange> changes) {
+        this(documents, changes, false);
+    }
+
+    public DataSnapshot(List<DataDocument> documents, List<DataChange> changes, boolean fromCache) {
+        this.documents = documents;
+        this.changes = changes;
+        this.fromCache = fromCache;
+    }
+
+    public List<DataDocument> getDocuments() {
+        return documents;
+    }
+
+    public List<DataChange> getChanges() {
+        return changes;
+    }
+
+    /** Whether the result was read from the local cache rather than confirmed by the server. */
+    public boolean isFromCache() {
+        return fromCache;
+    }
+
+    public boolean isEmpty() {
+        return documents.isEmpty();
+    }
+
+    public int size() {
+        return documents.size();
+    }
+}
@@ -0,0 +1,139 @@
+package com.pineapple.capture.data;
+
+import com.google.firebase.firestore.ListenerRegistration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * The document store the app reads and writes, addressed by slash-separated paths as in
+ * Firestore. {@link FirestoreDataSource} is the real one; {@code InMemoryDataSource}, in
+ * {@code src/inMemory}, runs the same view model code offline for tests and benchmarks.
+ *
+ * <p>Futures may complete on any thread, so continue on an executor of your own. Failures use
+ * Firestore's {@link com.google.firebase.firestore.FirebaseFirestoreException} codes in every
+ * implementation.
+ */
+public interface DataSource {
+    /** Most writes one {@link DataBatch} may hold, Firestore's limit. */
+    int MAX_BATCH_WRITES = 500;
+
+    /** Most values one {@code whereIn} filter may list, Firestore's limit. */
+    int MAX_IN_QUERY = 30;
+
+    interface Listener<T> {
+        /**
+         * @param error set when the listener failed; it receives no further events
+         */
+        void onEvent(T value, Exception error);
+    }
+
+    /**
+     * A field value that adds to the stored number, or to zero when there is none.
+     */
+    final class Increment {
+        private final Number delta;
+
+        Increment(Number delta) {
+            this.delta = delta;
+        }
+
+        public Number getDelta() {
+            return delta;
+        }
+    }
+
+    static Increment increment(long delta) {
+        return new Increment(delta);
+    }
+
+    static Increment increment(double delta) {
+        return new Increment(delta);
+    }
+
+    /**
+     * Unwraps the exception a future or a dependent stage failed with.
+     */
+    static Exception cause(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof Exception ? (Exception) cause : new Exception(cause);
+    }
+
+    /**
+     * Completes with the document, which does not {@link DataDocument#exists() exist} when
+     * nothing is stored at the path.
+     */
+    CompletableFuture<DataDocument> get(String path);
+
+    CompletableFuture<DataSnapshot> get(DataQuery query);
+
+    CompletableFuture<Void> set(String path, Map<String, Object> data);
+
+    /** Sets the given fields, creating the document if needed and keeping its other fields. */
+    CompletableFuture<Void> merge(String path, Map<String, Object> fields);
+
+    /** Updates the given fields, where a dotted key names a nested field; fails if the document is missing. */
+    CompletableFuture<Void> update(String path, Map<String, Object> fields);
+
+    CompletableFuture<Void> delete(String path);
+
+    /** A path for a new document with a generated id in the collection. */
+    String newDocumentPath(String collectionPath);
+
+    DataBatch batch();
+
+    /**
+     * Runs the function in a transaction, retrying it if a document it read changed before its
+     * writes were committed. Needs a connection to the server with Firestore.
+     */
+    <T> CompletableFuture<T> runTransaction(DataTransaction.Function<T> function);
+
+    /**
+     * Creates the marker document, or deletes it when {@code fields} is null, and moves the
+     * counter field by one to match, in one transaction. Nothing is written if the marker is
+     * already in that state, so repeating a call changes nothing. Completes with the change to
+     * the counter: 1, -1 or 0.
+     */
+    default CompletableFuture<Integer> setMarker(String markerPath, Map<String, Object> fields,
+                                                 String counterPath, String counterField) {
+        boolean present = fields != null;
+        return runTransaction(transaction -> {
+            // Only the marker is read, so markers of different users do not conflict
+            if (transaction.get(markerPath).exists() == present) {
+                return 0;
+            }
+            if (present) {
+                transaction.set(markerPath, fields);
+            } else {
+                transaction.delete(markerPath);
+            }
+            transaction.merge(counterPath, Collections.singletonMap(counterField, increment(present ? 1 : -1)));
+            return present ? 1 : -1;
+        });
+    }
+
+    default ListenerRegistration listen(String path, Executor executor, Listener<DataDocument> listener) {
+        return listen(path, false, executor, listener);
+    }
+
+    /**
+     * @param includeMetadataChanges also deliver snapshots in which only the metadata changed,
+     *                               such as the server accepting a local write, see
+     *                               {@link DataDocument#hasPendingWrites()}
+     */
+    ListenerRegistration listen(String path, boolean includeMetadataChanges, Executor executor,
+                                Listener<DataDocument> listener);
+
+    ListenerRegistration listen(DataQuery query, Executor executor, Listener<DataSnapshot> listener);
+
+    /** Whether data outlives the process, so writes queued against it should too. */
+    default boolean isPersistent() {
+        return false;
+    }
+}
@@ -0,0 +1,71 @@
+package com.pineapple.capture.data;
+
+import android.content.Context;
+import androidx.startup.AppInitializer;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.pineapple.capture.StartupTimer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The data and auth sources view models use when they are not given any, Firebase unless
+ * {@link #install} chose others. Either way they are wrapped in {@link TracingDataSource} and
+ * {@link TracingAuthSource}, so every operation is recorded in the {@link MetricsRegistry}.
+ */
+public final class DataSources {
+    private static volatile DataSource data;
+    private static volatile AuthSource auth;
+
+    private DataSources() {}
+
+    /**
+     * Makes Firebase the default without waiting for it: Firebase, Firestore and Auth are
+     * initialized in the background, and until Auth is ready the signed-in user is the one in
+     * the {@link SessionCache}. Sources already installed are kept.
+     */
+    public static synchronized void initialize(Context context) {
+        Context app = context.getApplicationContext();
+        AppInitializer initializer = AppInitializer.getInstance(app);
+        if (data == null) {
+            data = new TracingDataSource(new FirestoreDataSource(CompletableFuture.supplyAsync(() -> StartupTimer.time(
+                "Firestore init", () -> initializer.initializeComponent(FirebaseInitializers.Firestore.class)),
+                DataExecutors.io())));
+        }
+        if (auth == null) {
+            auth = new TracingAuthSource(new FirebaseAuthSource(CompletableFuture.supplyAsync(() -> StartupTimer.time(
+                "Firebase Auth init", () -> initializer.initializeComponent(FirebaseInitializers.Auth.class)),
+                DataExecutors.io()), SessionCache.getInstance(app)));
+        }
+    }
+
+    /**
+     * Replaces the defaults, e.g. with in-memory sources for a load test. Call before the first
+     * view model is created.
+     */
+    public static synchronized void install(DataSource dataSource, AuthSource authSource) {
+        data = new TracingDataSource(dataSource);
+        auth = new TracingAuthSource(authSource);
+    }
+
+    public static DataSource data() {
+        if (data == null) {
+            synchronized (DataSources.class) {
+                if (data == null) {
+                    data = new TracingDataSource(new FirestoreDataSource(FirebaseFirestore.getInstance()));
+                }
+            }
+        }
+        return data;
+    }
+
+    public static AuthSource auth() {
+        if (auth == null) {
+            synchronized (DataSources.class) {
+                if (auth == null) {
+                    auth = new TracingAuthSource(new FirebaseAuthSource(FirebaseAuth.getInstance()));
+                }
+            }
+        }
+        return auth;
+    }
+}
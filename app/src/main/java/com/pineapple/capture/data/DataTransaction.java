@@ -0,0 +1,28 @@
+package com.pineapple.capture.data;
+
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import java.util.Map;
+
+/**
+ * Reads and writes that succeed together only if nothing read changed in the meantime, see
+ * {@link DataSource#runTransaction}. Every read must come before the first write. Writes have
+ * the meaning of the matching {@link DataSource} methods.
+ */
+public interface DataTransaction {
+    interface Function<T> {
+        /**
+         * May run more than once, so it must not have effects outside the transaction.
+         */
+        T apply(DataTransaction transaction) throws FirebaseFirestoreException;
+    }
+
+    DataDocument get(String path) throws FirebaseFirestoreException;
+
+    DataTransaction set(String path, Map<String, Object> data);
+
+    DataTransaction merge(String path, Map<String, Object> fields);
+
+    DataTransaction update(String path, Map<String, Object> fields);
+
+    DataTransaction delete(String path);
+}
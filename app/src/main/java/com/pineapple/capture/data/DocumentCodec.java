@@ -0,0 +1,53 @@
+package com.pineapple.capture.data;
+
+import com.google.firebase.Timestamp;
+import java.util.Map;
+
+/**
+ * Converts a model to and from the plain map Firestore stores, without the reflective bean
+ * mapping behind {@code toObject} and {@code set(pojo)}. Encoded maps contain the same fields
+ * the reflective mapper would write, so both paths stay interchangeable.
+ */
+public interface DocumentCodec<T> {
+    /**
+     * @param id the id of the document the data was read from
+     */
+    T decode(String id, Map<String, Object> data);
+
+    Map<String, Object> encode(T value);
+
+    /**
+     * Decodes the document, or returns null if it does not exist. The time taken is recorded in
+     * the {@link MetricsRegistry}.
+     */
+    default T decode(DataDocument document) {
+        Map<String, Object> data = document.getData();
+        if (data == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        T value = decode(document.getId(), data);
+        MetricsRegistry.getInstance().decodeTimer(getClass()).record(System.nanoTime() - start);
+        return value;
+    }
+
+    static String getString(Map<String, Object> data, String field) {
+        Object value = data.get(field);
+        return value instanceof String ? (String) value : null;
+    }
+
+    static int getInt(Map<String, Object> data, String field) {
+        Object value = data.get(field);
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+
+    static long getLong(Map<String, Object> data, String field) {
+        Object value = data.get(field);
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+
+    static Timestamp getTimestamp(Map<String, Object> data, String field) {
+        Object value = data.get(field);
+        return value instanceof Timestamp ? (Timestamp) value : null;
+    }
+}
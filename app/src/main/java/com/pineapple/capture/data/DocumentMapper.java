@@ -0,0 +1,5 @@
+package com.pineapple.capture.data;
+
+public interface DocumentMapper<T> {
+    T map(DataDocument document);
+}
@@ -0,0 +1,125 @@
+package com.pineapple.capture.data;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthUserCollisionException;
+import com.google.firebase.auth.FirebaseUser;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+/**
+ * An {@link AuthSource} backed by Firebase Auth. Like {@link FirestoreDataSource} it can be
+ * created from a future of Firebase Auth; until that completes, the current user is the one
+ * in the session cache.
+ */
+public class FirebaseAuthSource implements AuthSource {
+    private final CompletableFuture<FirebaseAuth> firebaseAuth;
+    private final SessionCache session;
+
+    public FirebaseAuthSource(FirebaseAuth auth) {
+        this(CompletableFuture.completedFuture(auth), null);
+    }
+
+    public FirebaseAuthSource(CompletableFuture<FirebaseAuth> firebaseAuth, SessionCache session) {
+        this.firebaseAuth = firebaseAuth;
+        this.session = session;
+        // A session that expired or was revoked while the app was closed drops out of the cache
+        firebaseAuth.thenAccept(auth -> remember(uidOf(auth.getCurrentUser())));
+    }
+
+    @Override
+    public String getCurrentUserId() {
+        FirebaseAuth auth = firebaseAuth.getNow(null);
+        if (auth != null) {
+            return uidOf(auth.getCurrentUser());
+        }
+        return session != null ? session.getUserId() : null;
+    }
+
+    @Override
+    public CompletableFuture<String> restoredUserId() {
+        return firebaseAuth.thenApply(auth -> uidOf(auth.getCurrentUser()));
+    }
+
+    @Override
+    public CompletableFuture<String> signIn(String email, String password) {
+        return withAuth((auth, future) -> auth.signInWithEmailAndPassword(email, password).addOnCompleteListener(Runnable::run, task -> {
+            FirebaseUser user = task.isSuccessful() ? task.getResult().getUser() : null;
+            if (user != null) {
+                remember(user.getUid());
+                future.complete(user.getUid());
+            } else {
+                future.completeExceptionally(task.getException() != null ? task.getException() : new Exception("Sign-in failed"));
+            }
+        }));
+    }
+
+    @Override
+    public CompletableFuture<String> createUser(String email, String password) {
+        return withAuth((auth, future) -> auth.createUserWithEmailAndPassword(email, password).addOnCompleteListener(Runnable::run, task -> {
+            FirebaseUser user = task.isSuccessful() ? task.getResult().getUser() : null;
+            if (user != null) {
+                remember(user.getUid());
+                future.complete(user.getUid());
+            } else if (task.getException() instanceof FirebaseAuthUserCollisionException) {
+                future.completeExceptionally(new UserCollisionException(task.getException().getMessage()));
+            } else {
+                future.completeExceptionally(task.getException() != null ? task.getException() : new Exception("Sign-up failed"));
+            }
+        }));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteCurrentUser() {
+        remember(null);
+        return withAuth((auth, future) -> {
+            FirebaseUser user = auth.getCurrentUser();
+            if (user == null) {
+                future.complete(null);
+                return;
+            }
+            user.delete().addOnCompleteListener(Runnable::run, task -> {
+                if (task.isSuccessful()) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(task.getException());
+                }
+            });
+        });
+    }
+
+    @Override
+    public void signOut() {
+        remember(null);
+        firebaseAuth.thenAccept(FirebaseAuth::signOut);
+    }
+
+    /**
+     * Runs the call once Firebase Auth is ready. The returned future fails if Firebase Auth
+     * could not start or the call throws, as it does for an empty email or password.
+     */
+    private <T> CompletableFuture<T> withAuth(BiConsumer<FirebaseAuth, CompletableFuture<T>> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        firebaseAuth.whenComplete((auth, error) -> {
+            if (error != null) {
+                future.completeExceptionally(error);
+                return;
+            }
+            try {
+                call.accept(auth, future);
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private void remember(String userId) {
+        if (session != null) {
+            session.setUserId(userId);
+        }
+    }
+
+    private static String uidOf(FirebaseUser user) {
+        return user != null ? user.getUid() : null;
+    }
+}
@@ -0,0 +1,73 @@
+package com.pineapple.capture.data;
+
+import android.content.Context;
+import androidx.startup.AppInitializer;
+import androidx.startup.Initializer;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.storage.FirebaseStorage;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * App Startup initializers for Firebase, run on demand through {@link AppInitializer} rather
+ * than at process start. None is listed in the manifest, and Firebase's own init provider is
+ * removed from it, so nothing Firebase runs before the first frame.
+ */
+public final class FirebaseInitializers {
+    private FirebaseInitializers() {}
+
+    public static class App implements Initializer<FirebaseApp> {
+        @Override
+        public FirebaseApp create(Context context) {
+            return FirebaseApp.initializeApp(context);
+        }
+
+        @Override
+        public List<Class<? extends Initializer<?>>> dependencies() {
+            return Collections.emptyList();
+        }
+    }
+
+    public static class Firestore implements Initializer<FirebaseFirestore> {
+        @Override
+        public FirebaseFirestore create(Context context) {
+            return FirebaseFirestore.getInstance();
+        }
+
+        @Override
+        public List<Class<? extends Initializer<?>>> dependencies() {
+            return Collections.singletonList(App.class);
+        }
+    }
+
+    public static class Auth implements Initializer<FirebaseAuth> {
+        @Override
+        public FirebaseAuth create(Context context) {
+            return FirebaseAuth.getInstance();
+        }
+
+        @Override
+        public List<Class<? extends Initializer<?>>> dependencies() {
+            return Collections.singletonList(App.class);
+        }
+    }
+
+    public static class Storage implements Initializer<FirebaseStorage> {
+        // Uploads resume from their session on the next attempt, so they need not retry long
+        private static final long MAX_UPLOAD_RETRY_MS = 60_000;
+
+        @Override
+        public FirebaseStorage create(Context context) {
+            FirebaseStorage storage = FirebaseStorage.getInstance();
+            storage.setMaxUploadRetryTimeMillis(MAX_UPLOAD_RETRY_MS);
+            return storage;
+        }
+
+        @Override
+        public List<Class<? extends Initializer<?>>> dependencies() {
+            return Collections.singletonList(App.class);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.pineapple.capture.data;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.MetadataChanges;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.SnapshotMetadata;
+import com.google.firebase.firestore.WriteBatch;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * A {@link DataSource} backed by Firestore. It can be created before Firestore is, from a
+ * future that completes once Firestore is initialized: reads, writes and listeners issued
+ * before then start when it completes, so start-up does not wait for Firestore.
+ */
+public class FirestoreDataSource implements DataSource {
+    private interface BatchWrite {
+        void apply(FirebaseFirestore db, WriteBatch batch);
+    }
+
+    private final CompletableFuture<FirebaseFirestore> firestore;
+
+    public FirestoreDataSource(FirebaseFirestore db) {
+        this(CompletableFuture.completedFuture(db));
+    }
+
+    public FirestoreDataSource(CompletableFuture<FirebaseFirestore> firestore) {
+        this.firestore = firestore;
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return true;
+    }
+
+    /** Blocks until Firestore is initialized. */
+    public FirebaseFirestore getFirestore() {
+        return firestore.join();
+    }
+
+    @Override
+    public CompletableFuture<DataDocument> get(String path) {
+        return firestore.thenCompose(db -> toFuture(db.document(path).get())).thenApply(FirestoreDataSource::toDocument);
+    }
+
+    @Override
+    public CompletableFuture<DataSnapshot> get(DataQuery query) {
+        return firestore.thenCompose(db -> toFuture(toQuery(db, query).get())).thenApply(FirestoreDataSource::toSnapshot);
+    }
+
+    @Override
+    public CompletableFuture<Void> set(String path, Map<String, Object> data) {
+        return firestore.thenCompose(db -> toFuture(db.document(path).set(toFirestore(data))));
+    }
+
+    @Override
+    public CompletableFuture<Void> merge(String path, Map<String, Object> fields) {
+        return firestore.thenCompose(db -> toFuture(db.document(path).set(toFirestore(fields), SetOptions.merge())));
+    }
+
+    @Override
+    public CompletableFuture<Void> update(String path, Map<String, Object> fields) {
+        return firestore.thenCompose(db -> toFuture(db.document(path).update(toFirestore(fields))));
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(String path) {
+        return firestore.thenCompose(db -> toFuture(db.document(path).delete()));
+    }
+
+    /** Blocks until Firestore is initialized. */
+    @Override
+    public String newDocumentPath(String collectionPath) {
+        return getFirestore().collection(collectionPath).document().getPath();
+    }
+
+    @Override
+    public DataBatch batch() {
+        // Recorded until commit, so a batch can be filled before Firestore is ready
+        List<BatchWrite> writes = new ArrayList<>();
+        return new DataBatch() {
+            @Override
+            public DataBatch set(String path, Map<String, Object> data) {
+                writes.add((db, batch) -> batch.set(db.document(path), toFirestore(data)));
+                return this;
+            }
+
+            @Override
+            public DataBatch merge(String path, Map<String, Object> fields) {
+                writes.add((db, batch) -> batch.set(db.document(path), toFirestore(fields), SetOptions.merge()));
+                return this;
+            }
+
+            @Override
+            public DataBatch update(String path, Map<String, Object> fields) {
+                writes.add((db, batch) -> batch.update(db.document(path), toFirestore(fields)));
+                return this;
+            }
+
+            @Override
+            public DataBatch delete(String path) {
+                writes.add((db, batch) -> batch.delete(db.document(path)));
+                return this;
+            }
+
+            @Override
+            public CompletableFuture<Void> commit() {
+                List<BatchWrite> committed = new ArrayList<>(writes);
+                return firestore.thenCompose(db -> {
+                    WriteBatch batch = db.batch();
+                    for (BatchWrite write : committed) {
+                        write.apply(db, batch);
+                    }
+                    return toFuture(batch.commit());
+                });
+            }
+        };
+    }
+
+    @Override
+    public <T> CompletableFuture<T> runTransaction(DataTransaction.Function<T> function) {
+        return firestore.thenCompose(db -> toFuture(db.runTransaction(transaction -> function.apply(new DataTransaction() {
+            @Override
+            public DataDocument get(String path) throws FirebaseFirestoreException {
+                return toDocument(transaction.get(db.document(path)));
+            }
+
+            @Override
+            public DataTransaction set(String path, Map<String, Object> data) {
+                transaction.set(db.document(path), toFirestore(data));
+                return this;
+            }
+
+            @Override
+            public DataTransaction merge(String path, Map<String, Object> fields) {
+                transaction.set(db.document(path), toFirestore(fields), SetOptions.merge());
+                return this;
+            }
+
+            @Override
+            public DataTransaction update(String path, Map<String, Object> fields) {
+                transaction.update(db.document(path), toFirestore(fields));
+                return this;
+            }
+
+            @Override
+            public DataTransaction delete(String path) {
+                transaction.delete(db.document(path));
+                return this;
+            }
+        }))));
+    }
+
+    @Override
+    public ListenerRegistration listen(String path, boolean includeMetadataChanges, Executor executor,
+                                       Listener<DataDocument> listener) {
+        MetadataChanges metadataChanges = includeMetadataChanges ? MetadataChanges.INCLUDE : MetadataChanges.EXCLUDE;
+        return whenReady(db -> db.document(path).addSnapshotListener(executor, metadataChanges, (value, error) ->
+            listener.onEvent(value != null ? toDocument(value) : null, error)));
+    }
+
+    @Override
+    public ListenerRegistration listen(DataQuery query, Executor executor, Listener<DataSnapshot> listener) {
+        return whenReady(db -> toQuery(db, query).addSnapshotListener(executor, (value, error) ->
+            listener.onEvent(value != null ? toSnapshot(value) : null, error)));
+    }
+
+    // Attaches now if Firestore is ready, otherwise once it is unless removed in the meantime
+    private ListenerRegistration whenReady(Function<FirebaseFirestore, ListenerRegistration> attach) {
+        FirebaseFirestore ready = firestore.getNow(null);
+        if (ready != null) {
+            return attach.apply(ready);
+        }
+        Object lock = new Object();
+        ListenerRegistration[] attached = new ListenerRegistration[1];
+        boolean[] removed = new boolean[1];
+        firestore.thenAccept(db -> {
+            synchronized (lock) {
+                if (!removed[0]) {
+                    attached[0] = attach.apply(db);
+                }
+            }
+        });
+        return () -> {
+            synchronized (lock) {
+                removed[0] = true;
+                if (attached[0] != null) {
+                    attached[0].remove();
+                }
+            }
+        };
+    }
+
+    private static Query toQuery(FirebaseFirestore db, DataQuery spec) {
+        Query query = spec.isCollectionGroup()
+            ? db.collectionGroup(spec.getCollection())
+            : db.collection(spec.getCollection());
+        for (DataQuery.Filter filter : spec.getFilters()) {
+            if (DataQuery.DOCUMENT_ID.equals(filter.getField())) {
+                query = filter.getOperator() == DataQuery.Filter.Operator.IN
+                    ? query.whereIn(FieldPath.documentId(), (List<?>) filter.getValue())
+                    : query.whereEqualTo(FieldPath.documentId(), filter.getValue());
+            } else {
+                query = filter.getOperator() == DataQuery.Filter.Operator.IN
+                    ? query.whereIn(filter.getField(), (List<?>) filter.getValue())
+                    : query.whereEqualTo(filter.getField(), filter.getValue());
+            }
+        }
+        for (DataQuery.Order order : spec.getOrders()) {
+            Query.Direction direction = order.getDirection() == DataQuery.Direction.DESCENDING
+                ? Query.Direction.DESCENDING
+                : Query.Direction.ASCENDING;
+            query = DataQuery.DOCUMENT_ID.equals(order.getField())
+                ? query.orderBy(FieldPath.documentId(), direction)
+                : query.orderBy(order.getField(), direction);
+        }
+        DataDocument cursor = spec.getStartAfter();
+        if (cursor != null) {
+            query = cursor.handle instanceof DocumentSnapshot
+                ? query.startAfter((DocumentSnapshot) cursor.handle)
+                : query.startAfter(cursorValues(db, spec, cursor));
+        }
+        if (spec.getLimit() > 0) {
+            query = query.limit(spec.getLimit());
+        }
+        return query;
+    }
+
+    // A cursor that did not come from Firestore, positioned by its values for each order
+    private static Object[] cursorValues(FirebaseFirestore db, DataQuery spec, DataDocument cursor) {
+        List<Object> values = new ArrayList<>();
+        for (DataQuery.Order order : spec.getOrders()) {
+            values.add(DataQuery.DOCUMENT_ID.equals(order.getField())
+                ? db.document(cursor.getPath())
+                : cursor.get(order.getField()));
+        }
+        return values.toArray();
+    }
+
+    private static DataDocument toDocument(DocumentSnapshot snapshot) {
+        SnapshotMetadata metadata = snapshot.getMetadata();
+        return new DataDocument(snapshot.getReference().getPath(), snapshot.exists(), new DataDocument.Fields() {
+            @Override
+            public Map<String, Object> getAll() {
+                return snapshot.getData();
+            }
+
+            @Override
+            public Object get(String field) {
+                // A path of one segment, so a field name containing dots is taken as is
+                return snapshot.get(FieldPath.of(field));
+            }
+        }, snapshot, metadata.isFromCache(), metadata.hasPendingWrites());
+    }
+
+    private static DataSnapshot toSnapshot(QuerySnapshot snapshot) {
+        // Listeners mostly apply the changes, so documents are wrapped only when asked for
+        List<DocumentSnapshot> documents = snapshot.getDocuments();
+        DataDocument[] wrapped = new DataDocument[documents.size()];
+        List<DataDocument> converted = new AbstractList<DataDocument>() {
+            @Override
+            public DataDocument get(int index) {
+                DataDocument document = wrapped[index];
+                if (document == null) {
+                    document = toDocument(documents.get(index));
+                    wrapped[index] = document;
+                }
+                return document;
+            }
+
+            @Override
+            public int size() {
+                return wrapped.length;
+            }
+        };
+        List<DocumentChange> documentChanges = snapshot.getDocumentChanges();
+        List<DataChange> changes = new ArrayList<>(documentChanges.size());
+        for (DocumentChange change : documentChanges) {
+            changes.add(new DataChange(toType(change.getType()), toDocument(change.getDocument()),
+                change.getOldIndex(), change.getNewIndex()));
+        }
+        return new DataSnapshot(converted, changes, snapshot.getMetadata().isFromCache());
+    }
+
+    private static DataChange.Type toType(DocumentChange.Type type) {
+        switch (type) {
+            case ADDED:
+                return DataChange.Type.ADDED;
+            case MODIFIED:
+                return DataChange.Type.MODIFIED;
+            default:
+                return DataChange.Type.REMOVED;
+        }
+    }
+
+    private static Map<String, Object> toFirestore(Map<String, Object> data) {
+        Map<String, Object> converted = null;
+        for (Map.Entry<String, Object> field : data.entrySet()) {
+            if (field.getValue() instanceof Increment) {
+                if (converted == null) {
+                    converted = new LinkedHashMap<>(data);
+                }
+                Number delta = ((Increment) field.getValue()).getDelta();
+                converted.put(field.getKey(), delta instanceof Double
+                    ? FieldValue.increment(delta.doubleValue())
+                    : FieldValue.increment(delta.longValue()));
+            }
+        }
+        return converted != null ? converted : data;
+    }
+
+    private static <T> CompletableFuture<T> toFuture(Task<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        task.addOnCompleteListener(Runnable::run, done -> {
+            if (done.isSuccessful()) {
+                future.complete(done.getResult());
+            } else {
+                future.completeExceptionally(done.getException());
+            }
+        });
+        return future;
+    }
+}
@@ -0,0 +1,156 @@
+package com.pineapple.capture.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Id-keyed list that is edited in place and records every edit, so a new snapshot costs only
+ * the documents that actually changed instead of a full rebuild. Snapshots share the items
+ * until the next edit, which copies them first, so publishing a list that did not change is
+ * free and a published list never changes.
+ */
+public class IncrementalList<T> {
+    public interface KeyFunction<T> {
+        String keyOf(T item);
+    }
+
+    // Unique across lists, so a snapshot's base never matches another list's state
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private final KeyFunction<T> keyFunction;
+    private List<T> items = new ArrayList<>();
+    // Whether the last snapshot holds items, which must then be copied before an edit
+    private boolean shared;
+    private final Map<String, T> byKey = new HashMap<>();
+    // Positions by key, current for every position below indexedUpTo. An edit at a position
+    // moves only the items from there on, so it lowers the bound instead of reindexing.
+    private final Map<String, Integer> indexByKey = new HashMap<>();
+    private int indexedUpTo;
+    private ListChanges pending = new ListChanges();
+    private long version;
+
+    public IncrementalList(KeyFunction<T> keyFunction) {
+        this.keyFunction = keyFunction;
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    public T get(int index) {
+        return items.get(index);
+    }
+
+    public boolean contains(String key) {
+        return byKey.containsKey(key);
+    }
+
+    public T find(String key) {
+        return byKey.get(key);
+    }
+
+    public int indexOf(String key) {
+        if (!byKey.containsKey(key)) {
+            return -1;
+        }
+        Integer index = indexByKey.get(key);
+        if (index != null && index < indexedUpTo) {
+            return index;
+        }
+        for (int i = indexedUpTo; i < items.size(); i++) {
+            indexByKey.put(keyFunction.keyOf(items.get(i)), i);
+        }
+        indexedUpTo = items.size();
+        return indexByKey.get(key);
+    }
+
+    public void insert(int index, T item) {
+        edit(index).add(index, item);
+        byKey.put(keyFunction.keyOf(item), item);
+        pending.inserted(index, 1);
+    }
+
+    public void add(T item) {
+        insert(items.size(), item);
+    }
+
+    public T remove(int index) {
+        T item = edit(index).remove(index);
+        String key = keyFunction.keyOf(item);
+        byKey.remove(key);
+        indexByKey.remove(key);
+        pending.removed(index, 1);
+        return item;
+    }
+
+    public void set(int index, T item) {
+        T previous = edit(items.size()).set(index, item);
+        String key = keyFunction.keyOf(item);
+        String previousKey = keyFunction.keyOf(previous);
+        if (!previousKey.equals(key)) {
+            byKey.remove(previousKey);
+            indexByKey.remove(previousKey);
+            indexByKey.put(key, index);
+        }
+        byKey.put(key, item);
+        pending.changed(index, 1);
+    }
+
+    public void move(int fromIndex, int toIndex) {
+        if (fromIndex == toIndex) {
+            return;
+        }
+        List<T> editable = edit(Math.min(fromIndex, toIndex));
+        editable.add(toIndex, editable.remove(fromIndex));
+        pending.moved(fromIndex, toIndex);
+    }
+
+    /**
+     * Places {@code item} at {@code index}, moving and updating the existing entry with the same
+     * key if there is one.
+     */
+    public void upsert(int index, T item) {
+        int existing = indexOf(keyFunction.keyOf(item));
+        if (existing < 0) {
+            insert(index, item);
+            return;
+        }
+        move(existing, index);
+        set(index, item);
+    }
+
+    public void clear() {
+        pending.removed(0, items.size());
+        items = new ArrayList<>();
+        shared = false;
+        byKey.clear();
+        indexByKey.clear();
+        indexedUpTo = 0;
+    }
+
+    /**
+     * Returns the current items with every change recorded since the previous call.
+     */
+    public ListSnapshot<T> snapshot() {
+        ListChanges changes = pending;
+        pending = new ListChanges();
+        long baseVersion = version;
+        version = VERSIONS.incrementAndGet();
+        shared = true;
+        return new ListSnapshot<>(items, changes, baseVersion, version);
+    }
+
+    // The items to edit, no longer shared with a snapshot, with positions from the given one on
+    // no longer trusted
+    private List<T> edit(int fromIndex) {
+        if (shared) {
+            items = new ArrayList<>(items);
+            shared = false;
+        }
+        indexedUpTo = Math.min(indexedUpTo, fromIndex);
+        return items;
+    }
+}
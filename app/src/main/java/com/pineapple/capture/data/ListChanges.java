@@ -0,0 +1,106 @@
+package com.pineapple.capture.data;
+
+import java.util.Arrays;
+
+/**
+ * Ordered log of positional edits applied to a list, in the same terms RecyclerView uses
+ * (insert, remove, move, change). Replaying the log in order on the previous list yields the
+ * new one.
+ */
+public class ListChanges {
+    public interface Callback {
+        void onInserted(int position, int count);
+        void onRemoved(int position, int count);
+        void onMoved(int fromPosition, int toPosition);
+        void onChanged(int position, int count);
+    }
+
+    private static final int INSERT = 0;
+    private static final int REMOVE = 1;
+    private static final int MOVE = 2;
+    private static final int CHANGE = 3;
+
+    // Packed (type, first, second) triples
+    private int[] ops = new int[12];
+    private int size;
+
+    public void inserted(int position, int count) {
+        if (count > 0) {
+            add(INSERT, position, count);
+        }
+    }
+
+    public void removed(int position, int count) {
+        if (count > 0) {
+            add(REMOVE, position, count);
+        }
+    }
+
+    public void moved(int fromPosition, int toPosition) {
+        if (fromPosition != toPosition) {
+            add(MOVE, fromPosition, toPosition);
+        }
+    }
+
+    public void changed(int position, int count) {
+        if (count > 0) {
+            add(CHANGE, position, count);
+        }
+    }
+
+    public void append(ListChanges other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.ops[i * 3], other.ops[i * 3 + 1], other.ops[i * 3 + 2]);
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void dispatchTo(Callback callback) {
+        for (int i = 0; i < size; i++) {
+            int first = ops[i * 3 + 1];
+            int second = ops[i * 3 + 2];
+            switch (ops[i * 3]) {
+                case INSERT: callback.onInserted(first, second); break;
+                case REMOVE: callback.onRemoved(first, second); break;
+                case MOVE: callback.onMoved(first, second); break;
+                default: callback.onChanged(first, second); break;
+            }
+        }
+    }
+
+    private void add(int type, int first, int second) {
+        // Merge with the previous op when it is the same kind of edit on an adjacent range
+        if (size > 0) {
+            int last = (size - 1) * 3;
+            int lastType = ops[last];
+            int lastStart = ops[last + 1];
+            int lastCount = ops[last + 2];
+            if (type == lastType && type == INSERT && first == lastStart + lastCount) {
+                ops[last + 2] += second;
+                return;
+            }
+            if (type == lastType && type == REMOVE && first == lastStart) {
+                ops[last + 2] += second;
+                return;
+            }
+            if (type == lastType && type == CHANGE && first == lastStart + lastCount) {
+                ops[last + 2] += second;
+                return;
+            }
+        }
+        if ((size + 1) * 3 > ops.length) {
+            ops = Arrays.copyOf(ops, ops.length * 2);
+        }
+        ops[size * 3] = type;
+        ops[size * 3 + 1] = first;
+        ops[size * 3 + 2] = second;
+        size++;
+    }
+}
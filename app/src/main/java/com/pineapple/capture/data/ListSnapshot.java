@@ -0,0 +1,51 @@
+package com.pineapple.capture.data;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable list state together with the changes that produced it from the previous state.
+ * Versions identify states, so a consumer can tell whether the changes start from the state it
+ * holds or from one it never saw.
+ */
+public class ListSnapshot<T> {
+    // Versions of snapshots built without a base state; never shown, so never a base
+    static final long UNVERSIONED = -1;
+
+    private final List<T> items;
+    private final ListChanges changes;
+    private final long baseVersion;
+    private final long version;
+
+    public ListSnapshot(List<T> items, ListChanges changes) {
+        this(items, changes, UNVERSIONED, UNVERSIONED);
+    }
+
+    ListSnapshot(List<T> items, ListChanges changes, long baseVersion, long version) {
+        this.items = Collections.unmodifiableList(items);
+        this.changes = changes;
+        this.baseVersion = baseVersion;
+        this.version = version;
+    }
+
+    public static <T> ListSnapshot<T> empty() {
+        return new ListSnapshot<>(Collections.emptyList(), new ListChanges(), 0, 0);
+    }
+
+    /**
+     * Combines a snapshot that was never delivered with the one that follows it.
+     */
+    public static <T> ListSnapshot<T> merge(ListSnapshot<T> dropped, ListSnapshot<T> next) {
+        ListChanges changes = new ListChanges();
+        changes.append(dropped.changes);
+        changes.append(next.changes);
+        return new ListSnapshot<>(next.items, changes, dropped.baseVersion, next.version);
+    }
+
+    public List<T> getItems() { return items; }
+    public ListChanges getChanges() { return changes; }
+
+    /** The version of the state the changes apply to. */
+    public long getBaseVersion() { return baseVersion; }
+    public long getVersion() { return version; }
+}
@@ -0,0 +1,128 @@
+package com.pineapple.capture.data;
+
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * RecyclerView adapter fed with {@link ListSnapshot}s. A snapshot whose changes start from the
+ * shown list is applied by replaying those changes, with no diff at all; one that does not,
+ * such as the latest snapshot handed to a new screen, is diffed against the shown list on
+ * {@link DataExecutors#diffing()} first.
+ */
+public abstract class ListSnapshotAdapter<T, VH extends RecyclerView.ViewHolder> extends RecyclerView.Adapter<VH> {
+    private final DiffUtil.ItemCallback<T> diffCallback;
+    private final ListChanges.Callback notifier = new ListChanges.Callback() {
+        @Override
+        public void onInserted(int position, int count) {
+            notifyItemRangeInserted(position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            notifyItemRangeRemoved(position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            notifyItemMoved(fromPosition, toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count) {
+            notifyItemRangeChanged(position, count, getChangePayload());
+        }
+    };
+
+    // Main thread only
+    private List<T> items = Collections.emptyList();
+    private long version;
+    // Bumped by every snapshot, so a diff finishing after a newer snapshot is dropped
+    private long submissions;
+
+    protected ListSnapshotAdapter(DiffUtil.ItemCallback<T> diffCallback) {
+        this.diffCallback = diffCallback;
+    }
+
+    /** Shows the snapshot's items. Call on the main thread. */
+    public void submitSnapshot(ListSnapshot<T> snapshot) {
+        if (snapshot.getVersion() == version && snapshot.getVersion() != ListSnapshot.UNVERSIONED) {
+            return;
+        }
+        long submission = ++submissions;
+        List<T> previous = items;
+        if (snapshot.getBaseVersion() == version && snapshot.getBaseVersion() != ListSnapshot.UNVERSIONED) {
+            show(snapshot);
+            snapshot.getChanges().dispatchTo(notifier);
+            onCurrentListChanged(previous, items);
+            return;
+        }
+        List<T> next = snapshot.getItems();
+        DataExecutors.diffing().execute(() -> {
+            DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                @Override
+                public int getOldListSize() {
+                    return previous.size();
+                }
+
+                @Override
+                public int getNewListSize() {
+                    return next.size();
+                }
+
+                @Override
+                public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                    return diffCallback.areItemsTheSame(previous.get(oldPosition), next.get(newPosition));
+                }
+
+                @Override
+                public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                    return diffCallback.areContentsTheSame(previous.get(oldPosition), next.get(newPosition));
+                }
+
+                @Override
+                public Object getChangePayload(int oldPosition, int newPosition) {
+                    return diffCallback.getChangePayload(previous.get(oldPosition), next.get(newPosition));
+                }
+            }, true);
+            DataExecutors.main().execute(() -> {
+                if (submission == submissions) {
+                    show(snapshot);
+                    result.dispatchUpdatesTo(this);
+                    onCurrentListChanged(previous, items);
+                }
+            });
+        });
+    }
+
+    private void show(ListSnapshot<T> snapshot) {
+        items = snapshot.getItems();
+        version = snapshot.getVersion();
+    }
+
+    /**
+     * The payload for items a snapshot records as changed, which carries no detail of what
+     * changed; null rebinds them in full.
+     */
+    protected Object getChangePayload() {
+        return null;
+    }
+
+    /** Called once the shown list has been replaced. */
+    public void onCurrentListChanged(List<T> previousList, List<T> currentList) {
+    }
+
+    public List<T> getCurrentList() {
+        return items;
+    }
+
+    protected T getItem(int position) {
+        return items.get(position);
+    }
+
+    @Override
+    public int getItemCount() {
+        return items.size();
+    }
+}
@@ -0,0 +1,169 @@
+package com.pineapple.capture.data;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.ProcessLifecycleOwner;
+import com.google.firebase.firestore.ListenerRegistration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps snapshot listeners attached only while they are useful. Once the app has been in the
+ * background for {@link #setSuspendDelayMillis the suspend delay}, every managed listener is
+ * detached; when the app comes back they are attached again, and their first snapshot is the
+ * catch-up read. A listener is detached for good when its registration is removed, which view
+ * models do in {@code onCleared()}.
+ */
+public class ListenerManager implements DefaultLifecycleObserver {
+    private static final String TAG = "ListenerManager";
+
+    public static final long DEFAULT_SUSPEND_DELAY_MS = 60_000;
+
+    public interface Attach {
+        /**
+         * @param resumed true when this replaces a listener detached in the background, so the
+         *                first snapshot's document changes are relative to an empty result rather
+         *                than to the last snapshot seen
+         */
+        ListenerRegistration attach(boolean resumed);
+    }
+
+    private static volatile ListenerManager instance;
+
+    public static ListenerManager getInstance() {
+        if (instance == null) {
+            synchronized (ListenerManager.class) {
+                if (instance == null) {
+                    instance = new ListenerManager(DEFAULT_SUSPEND_DELAY_MS);
+                }
+            }
+        }
+        return instance;
+    }
+
+    private final class Managed implements ListenerRegistration {
+        final String tag;
+        final Attach attach;
+        ListenerRegistration registration;
+
+        Managed(String tag, Attach attach) {
+            this.tag = tag;
+            this.attach = attach;
+        }
+
+        @Override
+        public void remove() {
+            synchronized (ListenerManager.this) {
+                if (listeners.remove(this) && registration != null) {
+                    registration.remove();
+                    registration = null;
+                }
+            }
+        }
+    }
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable suspend = this::suspend;
+    private final List<Managed> listeners = new ArrayList<>();
+    private volatile long suspendDelayMs;
+    private boolean suspended;
+
+    ListenerManager(long suspendDelayMs) {
+        this.suspendDelayMs = suspendDelayMs;
+        handler.post(() -> ProcessLifecycleOwner.get().getLifecycle().addObserver(this));
+    }
+
+    public void setSuspendDelayMillis(long suspendDelayMs) {
+        this.suspendDelayMs = suspendDelayMs;
+    }
+
+    /**
+     * Attaches the listener now, or when the app returns to the foreground if listeners are
+     * suspended. Removing the returned registration detaches it for good.
+     *
+     * @param tag groups listeners in {@link #getActiveCounts()}
+     */
+    public synchronized ListenerRegistration manage(String tag, Attach attach) {
+        Managed managed = new Managed(tag, attach);
+        listeners.add(managed);
+        if (!suspended) {
+            managed.registration = attach.attach(false);
+        }
+        return managed;
+    }
+
+    @Override
+    public void onStart(LifecycleOwner owner) {
+        handler.removeCallbacks(suspend);
+        resume();
+    }
+
+    @Override
+    public void onStop(LifecycleOwner owner) {
+        handler.postDelayed(suspend, suspendDelayMs);
+    }
+
+    private synchronized void suspend() {
+        if (suspended) {
+            return;
+        }
+        suspended = true;
+        for (Managed managed : listeners) {
+            if (managed.registration != null) {
+                managed.registration.remove();
+                managed.registration = null;
+            }
+        }
+        Log.d(TAG, "Suspended " + listeners.size() + " listeners");
+    }
+
+    private synchronized void resume() {
+        if (!suspended) {
+            return;
+        }
+        suspended = false;
+        for (Managed managed : listeners) {
+            managed.registration = managed.attach.attach(true);
+        }
+        Log.d(TAG, "Resumed " + listeners.size() + " listeners");
+    }
+
+    public synchronized boolean isSuspended() {
+        return suspended;
+    }
+
+    /**
+     * Listeners currently attached to Firestore, by tag.
+     */
+    public synchronized Map<String, Integer> getActiveCounts() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (Managed managed : listeners) {
+            if (managed.registration != null) {
+                counts.merge(managed.tag, 1, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    public synchronized int getActiveCount() {
+        int count = 0;
+        for (Managed managed : listeners) {
+            if (managed.registration != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Listeners registered and not yet removed, attached or not.
+     */
+    public synchronized int getManagedCount() {
+        return listeners.size();
+    }
+}
@@ -0,0 +1,77 @@
+package com.pineapple.capture.data;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Serves nothing; it exists so the {@link MetricsRegistry} can be dumped from a running app:
+ *
+ * <pre>
+ * adb shell dumpsys activity provider com.pineapple.capture/.data.MetricsProvider [write] [reset]
+ * </pre>
+ *
+ * {@code write} also saves the dump to {@code metrics.txt} in the app's external files
+ * directory, and {@code reset} clears the registry afterwards.
+ */
+public class MetricsProvider extends ContentProvider {
+    private static final String FILE_NAME = "metrics.txt";
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.dump(writer);
+        List<String> commands = args != null ? Arrays.asList(args) : List.of();
+        if (commands.contains("write")) {
+            File directory = getContext().getExternalFilesDir(null);
+            File file = new File(directory != null ? directory : getContext().getFilesDir(), FILE_NAME);
+            try {
+                metrics.writeTo(file);
+                writer.println("Written to " + file);
+            } catch (IOException e) {
+                writer.println("Could not write " + file + ": " + e.getMessage());
+            }
+        }
+        if (commands.contains("reset")) {
+            metrics.reset();
+            writer.println("Reset");
+        }
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        return 0;
+    }
+}
@@ -0,0 +1,187 @@
+package com.pineapple.capture.data;
+
+import android.os.Build;
+import android.os.Trace;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * In-process histograms and counters for the data layer. Recording never takes a lock: series
+ * are found in concurrent maps and updated with atomics, so any thread can record on its hot
+ * path. Durations are recorded in nanoseconds and reported in milliseconds.
+ *
+ * <p>Dumped through {@link MetricsProvider}.
+ */
+public final class MetricsRegistry {
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+    private static final AtomicInteger cookies = new AtomicInteger();
+
+    /**
+     * Values grouped in power-of-two buckets, so percentiles are accurate to within a factor of
+     * two, which is enough to tell where time goes.
+     */
+    public static final class Histogram {
+        private static final int BUCKETS = 64;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+        public void record(long value) {
+            long clamped = Math.max(0, value);
+            buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(clamped));
+            count.increment();
+            sum.add(clamped);
+            max.accumulate(clamped);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public double getMean() {
+            long n = count.sum();
+            return n == 0 ? 0 : (double) sum.sum() / n;
+        }
+
+        public long getMax() {
+            return count.sum() == 0 ? 0 : max.get();
+        }
+
+        /** The upper bound of the bucket holding the given percentile, capped at the maximum. */
+        public long getPercentile(double percentile) {
+            long n = count.sum();
+            if (n == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(n * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(i == 0 ? 0 : (1L << i) - 1, getMax());
+                }
+            }
+            return getMax();
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            count.reset();
+            sum.reset();
+            max.reset();
+        }
+    }
+
+    private final Map<String, Histogram> timers = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> sizes = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    // Decoding is timed per document, so its timers are found without building a name
+    private final Map<Class<?>, Histogram> decodeTimers = new ConcurrentHashMap<>();
+
+    private MetricsRegistry() {}
+
+    public static MetricsRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /** A histogram of durations in nanoseconds. */
+    public Histogram timer(String name) {
+        Histogram timer = timers.get(name);
+        return timer != null ? timer : timers.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    /** The timer for documents decoded by the given codec, named {@code decode <codec>}. */
+    public Histogram decodeTimer(Class<?> codec) {
+        Histogram timer = decodeTimers.get(codec);
+        return timer != null ? timer : decodeTimers.computeIfAbsent(codec, key -> timer("decode " + key.getSimpleName()));
+    }
+
+    /** A histogram of plain values, such as document counts. */
+    public Histogram size(String name) {
+        Histogram size = sizes.get(name);
+        return size != null ? size : sizes.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    public void increment(String name) {
+        LongAdder counter = counters.get(name);
+        (counter != null ? counter : counters.computeIfAbsent(name, key -> new LongAdder())).increment();
+    }
+
+    /**
+     * Times the future {@code call} returns under {@code operation}, counting failures, and
+     * traces it as an async section. Returns that same future, so failures reach the caller
+     * unwrapped.
+     */
+    public <T> CompletableFuture<T> trace(String operation, Supplier<CompletableFuture<T>> call) {
+        int cookie = cookies.incrementAndGet();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.beginAsyncSection(operation, cookie);
+        }
+        long start = System.nanoTime();
+        CompletableFuture<T> future = call.get();
+        future.whenComplete((value, error) -> {
+            timer(operation).record(System.nanoTime() - start);
+            if (error != null) {
+                increment(operation + " failed");
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                Trace.endAsyncSection(operation, cookie);
+            }
+        });
+        return future;
+    }
+
+    public void reset() {
+        for (Histogram timer : timers.values()) {
+            timer.reset();
+        }
+        for (Histogram size : sizes.values()) {
+            size.reset();
+        }
+        for (LongAdder counter : counters.values()) {
+            counter.reset();
+        }
+    }
+
+    public void dump(PrintWriter out) {
+        out.println("Latency (ms): count mean p50 p90 p99 max");
+        for (Map.Entry<String, Histogram> timer : new TreeMap<>(timers).entrySet()) {
+            Histogram h = timer.getValue();
+            out.printf("  %s: %d %.2f %.2f %.2f %.2f %.2f%n", timer.getKey(), h.getCount(), h.getMean() / 1e6,
+                h.getPercentile(50) / 1e6, h.getPercentile(90) / 1e6, h.getPercentile(99) / 1e6, h.getMax() / 1e6);
+        }
+        out.println("Sizes: count mean p50 p90 p99 max");
+        for (Map.Entry<String, Histogram> size : new TreeMap<>(sizes).entrySet()) {
+            Histogram h = size.getValue();
+            out.printf("  %s: %d %.1f %d %d %d %d%n", size.getKey(), h.getCount(), h.getMean(),
+                h.getPercentile(50), h.getPercentile(90), h.getPercentile(99), h.getMax());
+        }
+        out.println("Counters:");
+        for (Map.Entry<String, LongAdder> counter : new TreeMap<>(counters).entrySet()) {
+            out.println("  " + counter.getKey() + ": " + counter.getValue().sum());
+        }
+        out.println("Active listeners: " + ListenerManager.getInstance().getActiveCounts());
+        out.flush();
+    }
+
+    public void writeTo(File file) throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+            dump(out);
+        }
+    }
+}
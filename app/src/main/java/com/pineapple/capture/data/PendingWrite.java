@@ -0,0 +1,147 @@
+package com.pineapple.capture.data;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A write waiting in the {@link WriteQueue}, already folded together with any earlier writes to
+ * the same document. Field names are top-level fields; dotted paths are not interpreted.
+ */
+public final class PendingWrite {
+    public enum Kind {
+        // Replaces the whole document
+        SET,
+        // Writes the given fields, creating the document if needed
+        MERGE,
+        // Writes the given fields of an existing document
+        UPDATE,
+        DELETE
+    }
+
+    private final String path;
+    private final Kind kind;
+    private final Map<String, Object> fields;
+    // Deltas still to be applied server side, for fields whose value is not known locally
+    private final Map<String, Number> increments;
+    // For a marker write, the document and field counting the marker; null otherwise
+    private final String counterPath;
+    private final String counterField;
+
+    PendingWrite(String path, Kind kind, Map<String, Object> fields, Map<String, Number> increments) {
+        this(path, kind, fields, increments, null, null);
+    }
+
+    PendingWrite(String path, Kind kind, Map<String, Object> fields, Map<String, Number> increments,
+                 String counterPath, String counterField) {
+        this.path = path;
+        this.kind = kind;
+        this.fields = Collections.unmodifiableMap(new LinkedHashMap<>(fields));
+        this.increments = Collections.unmodifiableMap(new LinkedHashMap<>(increments));
+        this.counterPath = counterPath;
+        this.counterField = counterField;
+    }
+
+    public static PendingWrite set(String path, Map<String, Object> fields) {
+        return new PendingWrite(path, Kind.SET, fields, Collections.emptyMap());
+    }
+
+    public static PendingWrite merge(String path, Map<String, Object> fields) {
+        return new PendingWrite(path, Kind.MERGE, fields, Collections.emptyMap());
+    }
+
+    public static PendingWrite update(String path, Map<String, Object> fields) {
+        return new PendingWrite(path, Kind.UPDATE, fields, Collections.emptyMap());
+    }
+
+    public static PendingWrite delete(String path) {
+        return new PendingWrite(path, Kind.DELETE, Collections.emptyMap(), Collections.emptyMap());
+    }
+
+    /**
+     * Creates a marker document, such as a like, counted in a field of another document. Only
+     * the last marker write to a path is committed, with {@link DataSource#setMarker}, so the
+     * counter moves only if the marker really changes.
+     */
+    public static PendingWrite setMarker(String path, Map<String, Object> fields, String counterPath, String counterField) {
+        return new PendingWrite(path, Kind.SET, fields, Collections.emptyMap(), counterPath, counterField);
+    }
+
+    /** Deletes a marker document, see {@link #setMarker}. */
+    public static PendingWrite deleteMarker(String path, String counterPath, String counterField) {
+        return new PendingWrite(path, Kind.DELETE, Collections.emptyMap(), Collections.emptyMap(), counterPath, counterField);
+    }
+
+    /** Adds to a numeric field, creating the document if needed. */
+    public static PendingWrite increment(String path, String field, Number delta) {
+        return new PendingWrite(path, Kind.MERGE, Collections.emptyMap(), Collections.singletonMap(field, delta));
+    }
+
+    /**
+     * Returns one write with the same effect as this write followed by {@code next}, or null if
+     * together they leave nothing to write, such as a like and an unlike of the same shard. An
+     * update followed by a merge becomes a merge of both, the same as long as the document
+     * exists.
+     */
+    public PendingWrite then(PendingWrite next) {
+        if (next.kind == Kind.SET || next.kind == Kind.DELETE) {
+            return next;
+        }
+        if (kind == Kind.DELETE) {
+            // Updating a deleted document fails, so the update would have been lost anyway
+            return next.kind == Kind.UPDATE ? this : next.asSetOnMissingDocument();
+        }
+
+        Kind combined = kind == Kind.SET ? Kind.SET : next.kind == Kind.MERGE ? Kind.MERGE : kind;
+        Map<String, Object> mergedFields = new LinkedHashMap<>(fields);
+        Map<String, Number> mergedIncrements = new LinkedHashMap<>(increments);
+        for (Map.Entry<String, Object> field : next.fields.entrySet()) {
+            mergedFields.put(field.getKey(), field.getValue());
+            mergedIncrements.remove(field.getKey());
+        }
+        for (Map.Entry<String, Number> increment : next.increments.entrySet()) {
+            String field = increment.getKey();
+            Object current = mergedFields.get(field);
+            if (combined == Kind.SET || mergedFields.containsKey(field)) {
+                // The field's value is known, so fold the delta into it; like Firestore, an
+                // increment of anything but a number starts from zero
+                mergedFields.put(field, add(current instanceof Number ? (Number) current : 0L, increment.getValue()));
+            } else {
+                mergedIncrements.put(field, add(mergedIncrements.getOrDefault(field, 0L), increment.getValue()));
+            }
+        }
+        mergedIncrements.values().removeIf(PendingWrite::isZero);
+
+        if (combined != Kind.SET && mergedFields.isEmpty() && mergedIncrements.isEmpty()) {
+            return null;
+        }
+        return new PendingWrite(path, combined, mergedFields, mergedIncrements, counterPath, counterField);
+    }
+
+    // What a merge writes when the document does not exist
+    private PendingWrite asSetOnMissingDocument() {
+        Map<String, Object> data = new LinkedHashMap<>(fields);
+        data.putAll(increments);
+        return new PendingWrite(path, Kind.SET, data, Collections.emptyMap(), counterPath, counterField);
+    }
+
+    static Number add(Number a, Number b) {
+        if (a instanceof Double || a instanceof Float || b instanceof Double || b instanceof Float) {
+            return a.doubleValue() + b.doubleValue();
+        }
+        return a.longValue() + b.longValue();
+    }
+
+    private static boolean isZero(Number n) {
+        return n.doubleValue() == 0;
+    }
+
+    // Getters
+    public String getPath() { return path; }
+    public Kind getKind() { return kind; }
+    public Map<String, Object> getFields() { return fields; }
+    public Map<String, Number> getIncrements() { return increments; }
+    public boolean isMarker() { return counterPath != null; }
+    public String getCounterPath() { return counterPath; }
+    public String getCounterField() { return counterField; }
+}
@@ -0,0 +1,46 @@
+package com.pineapple.capture.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * The id of the signed-in user, kept in preferences so a cold start can pick its first screen
+ * without waiting for Firebase Auth to restore the session. {@link FirebaseAuthSource} keeps it
+ * in step with the real session.
+ */
+public class SessionCache {
+    private static final String PREFERENCES = "session";
+    private static final String KEY_USER_ID = "user_id";
+
+    private static volatile SessionCache instance;
+
+    private final SharedPreferences preferences;
+
+    private SessionCache(Context context) {
+        preferences = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    public static SessionCache getInstance(Context context) {
+        if (instance == null) {
+            synchronized (SessionCache.class) {
+                if (instance == null) {
+                    instance = new SessionCache(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /** The cached user id, or null when nobody was signed in. */
+    public String getUserId() {
+        return preferences.getString(KEY_USER_ID, null);
+    }
+
+    public void setUserId(String userId) {
+        if (userId == null) {
+            preferences.edit().remove(KEY_USER_ID).apply();
+        } else if (!userId.equals(getUserId())) {
+            preferences.edit().putString(KEY_USER_ID, userId).apply();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.pineapple.capture.data;
+
+import java.util.List;
+
+/**
+ * Applies the document changes of a query snapshot to an {@link IncrementalList} keyed by
+ * document id, mapping only the documents that were added or modified. Documents the mapper
+ * rejects are left out of the list, which puts its indices behind the snapshot's; the changes
+ * are then applied by id and the list put back in the snapshot's order.
+ */
+public final class SnapshotChanges {
+    private SnapshotChanges() {}
+
+    public static <T> void apply(DataSnapshot value, IncrementalList<T> list, DocumentMapper<T> mapper) {
+        // The snapshot's indices are the list's only while the list holds every document
+        int previousSize = value.getDocuments().size();
+        for (DataChange change : value.getChanges()) {
+            if (change.getType() == DataChange.Type.ADDED) {
+                previousSize--;
+            } else if (change.getType() == DataChange.Type.REMOVED) {
+                previousSize++;
+            }
+        }
+        boolean aligned = list.size() == previousSize;
+
+        for (DataChange change : value.getChanges()) {
+            String id = change.getDocument().getId();
+            if (change.getType() == DataChange.Type.REMOVED) {
+                remove(list, id);
+                continue;
+            }
+            T item = mapper.map(change.getDocument());
+            if (item == null) {
+                // Stays in the snapshot but not in the list
+                remove(list, id);
+                aligned = false;
+            } else if (aligned) {
+                list.upsert(change.getNewIndex(), item);
+            } else {
+                int existing = list.indexOf(id);
+                if (existing >= 0) {
+                    list.set(existing, item);
+                } else {
+                    list.insert(Math.min(change.getNewIndex(), list.size()), item);
+                }
+            }
+        }
+        if (!aligned) {
+            restoreOrder(value.getDocuments(), list);
+        }
+    }
+
+    private static <T> void remove(IncrementalList<T> list, String id) {
+        int index = list.indexOf(id);
+        if (index >= 0) {
+            list.remove(index);
+        }
+    }
+
+    private static <T> void restoreOrder(List<DataDocument> documents, IncrementalList<T> list) {
+        int position = 0;
+        for (DataDocument document : documents) {
+            int index = list.indexOf(document.getId());
+            if (index >= 0) {
+                list.move(index, position++);
+            }
+        }
+    }
+}
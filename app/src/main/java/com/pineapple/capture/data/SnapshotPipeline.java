@@ -0,0 +1,88 @@
+package com.pineapple.capture.data;
+
+import android.os.Trace;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands results mapped on {@link DataExecutors#mapping()} to the main thread. Each snapshot
+ * opens a new generation; a result is dropped if a newer snapshot has started mapping by the
+ * time it reaches the main thread, since a fresher value is already on its way.
+ *
+ * <p>The delay from publish to delivery is recorded in the {@link MetricsRegistry} under the
+ * pipeline's name, and delivery, including the observers it runs, is traced.
+ */
+public class SnapshotPipeline<R> {
+    public interface Merger<R> {
+        R merge(R dropped, R next);
+    }
+
+    private final String name;
+    private final MutableLiveData<R> target;
+    private final Merger<R> merger;
+    private final AtomicLong latest = new AtomicLong();
+    private final MetricsRegistry.Histogram delays;
+
+    // Main thread only
+    private R dropped;
+
+    public SnapshotPipeline(String name) {
+        this(name, new MutableLiveData<>(), null);
+    }
+
+    /**
+     * @param merger folds a dropped result into the next delivered one, for results such as
+     *               {@link ListSnapshot} whose changes are relative to the previous value
+     */
+    public SnapshotPipeline(String name, R initialValue, Merger<R> merger) {
+        this(name, new MutableLiveData<>(initialValue), merger);
+    }
+
+    private SnapshotPipeline(String name, MutableLiveData<R> target, Merger<R> merger) {
+        this.name = "deliver " + name;
+        this.target = target;
+        this.merger = merger;
+        this.delays = MetricsRegistry.getInstance().timer(this.name);
+    }
+
+    public static <T> SnapshotPipeline<ListSnapshot<T>> forList(String name) {
+        return new SnapshotPipeline<>(name, ListSnapshot.empty(), ListSnapshot::merge);
+    }
+
+    /**
+     * Starts a new generation. Call on the mapping thread when a snapshot arrives.
+     */
+    public long begin() {
+        return latest.incrementAndGet();
+    }
+
+    public void publish(long generation, R result) {
+        long publishedAt = System.nanoTime();
+        DataExecutors.main().execute(() -> deliver(generation, result, publishedAt));
+    }
+
+    private void deliver(long generation, R result, long publishedAt) {
+        delays.record(System.nanoTime() - publishedAt);
+        if (merger != null && dropped != null) {
+            result = merger.merge(dropped, result);
+            dropped = null;
+        }
+        if (generation != latest.get()) {
+            if (merger != null) {
+                dropped = result;
+            }
+            return;
+        }
+        Trace.beginSection(name);
+        try {
+            target.setValue(result);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    public LiveData<R> getLiveData() {
+        return target;
+    }
+}
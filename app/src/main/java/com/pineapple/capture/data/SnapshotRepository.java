@@ -0,0 +1,242 @@
+package com.pineapple.capture.data;
+
+import android.os.Handler;
+import android.os.Looper;
+import com.google.firebase.firestore.ListenerRegistration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Process-wide owner of snapshot listeners, one per {@link DataSource}. Observers of the same
+ * key share one listener, and each snapshot is mapped once for all of them. An observer that arrives late is
+ * handed the last value straight away. Once the last observer leaves, the listener stays
+ * attached for a grace period, so a screen that is recreated or reopened soon after does not
+ * pay for a new listener and a fresh read. Listeners are attached through
+ * {@link ListenerManager}, so they are suspended while the app is in the background. When a
+ * listener fails, its observers hear of it and are dropped, and it is up to them to observe
+ * again.
+ *
+ * <p>Listeners and mapping run on {@link DataExecutors#mapping()}, which is also where
+ * observers are called.
+ */
+public class SnapshotRepository {
+    public static final long DEFAULT_GRACE_PERIOD_MS = 10_000;
+    private static final long MIN_RESUBSCRIBE_DELAY_MS = 1_000;
+    private static final long MAX_RESUBSCRIBE_DELAY_MS = 5 * 60_000;
+
+    public interface Source<S> {
+        ListenerRegistration listen(Executor executor, DataSource.Listener<S> listener);
+    }
+
+    public interface Mapper<S, T> {
+        T map(S snapshot);
+    }
+
+    public interface Observer<T> {
+        /**
+         * @param replay true when the value does not follow on from the last one this observer
+         *               saw: it was produced before the observer subscribed, or it is the
+         *               first value of a listener, e.g. one started after an error or the
+         *               catch-up read after listeners resumed. A query snapshot's document
+         *               changes are then relative to something else.
+         */
+        void onValue(T value, boolean replay);
+
+        /**
+         * The listener failed and every observer of the key has been dropped; observing again
+         * starts a new listener, see {@link #resubscribeDelayMillis}.
+         */
+        void onError(Exception e);
+    }
+
+    /** Runs the detach at the end of a grace period; the main looper outside of tests. */
+    interface Scheduler {
+        void postDelayed(Runnable task, long delayMs);
+
+        void cancel(Runnable task);
+    }
+
+    private static final Map<DataSource, SnapshotRepository> instances = new IdentityHashMap<>();
+
+    public static synchronized SnapshotRepository getInstance(DataSource source) {
+        SnapshotRepository instance = instances.get(source);
+        if (instance == null) {
+            instance = new SnapshotRepository(source, DEFAULT_GRACE_PERIOD_MS);
+            instances.put(source, instance);
+        }
+        return instance;
+    }
+
+    private static class Entry<S, T> {
+        final String key;
+        final Mapper<S, T> mapper;
+        final List<Observer<T>> observers = new ArrayList<>();
+        ListenerRegistration registration;
+        T last;
+        boolean hasValue;
+        Runnable pendingDetach;
+
+        Entry(String key, Mapper<S, T> mapper) {
+            this.key = key;
+            this.mapper = mapper;
+        }
+    }
+
+    private final DataSource source;
+    private final Executor mapping;
+    private final Scheduler scheduler;
+    private volatile long gracePeriodMs;
+
+    // Confined to the mapping thread
+    private final Map<String, Entry<?, ?>> entries = new HashMap<>();
+
+    public SnapshotRepository(DataSource source, long gracePeriodMs) {
+        this(source, gracePeriodMs, DataExecutors.mapping(), mainLooper());
+    }
+
+    SnapshotRepository(DataSource source, long gracePeriodMs, Executor mapping, Scheduler scheduler) {
+        this.source = source;
+        this.gracePeriodMs = gracePeriodMs;
+        this.mapping = mapping;
+        this.scheduler = scheduler;
+    }
+
+    private static Scheduler mainLooper() {
+        Handler handler = new Handler(Looper.getMainLooper());
+        return new Scheduler() {
+            @Override
+            public void postDelayed(Runnable task, long delayMs) {
+                handler.postDelayed(task, delayMs);
+            }
+
+            @Override
+            public void cancel(Runnable task) {
+                handler.removeCallbacks(task);
+            }
+        };
+    }
+
+    /**
+     * How long an observer should wait before observing again after its listener failed the
+     * given number of times in a row, so a lasting failure such as a denied read is not retried
+     * in a tight loop.
+     */
+    public static long resubscribeDelayMillis(int failures) {
+        int doublings = Math.min(Math.max(failures - 1, 0), 16);
+        return Math.min(MAX_RESUBSCRIBE_DELAY_MS, MIN_RESUBSCRIBE_DELAY_MS << doublings);
+    }
+
+    public void setGracePeriodMillis(long gracePeriodMs) {
+        this.gracePeriodMs = gracePeriodMs;
+    }
+
+    /**
+     * Observes a document decoded with the codec; a missing document is delivered as null.
+     */
+    public <T> ListenerRegistration observeDocument(String path, DocumentCodec<T> codec, Observer<T> observer) {
+        return observe(path + "#" + codec.getClass().getName(),
+            (executor, listener) -> source.listen(path, executor, listener),
+            (DataDocument document) -> document.exists() ? codec.decode(document) : null,
+            observer);
+    }
+
+    /**
+     * Observes the document itself, including snapshots in which only its metadata changed, for
+     * observers that act on {@link DataDocument#hasPendingWrites()}.
+     */
+    public ListenerRegistration observeDocumentWithMetadata(String path, Observer<DataDocument> observer) {
+        return observe(path + "#metadata",
+            (executor, listener) -> source.listen(path, true, executor, listener),
+            (DataDocument document) -> document,
+            observer);
+    }
+
+    /**
+     * Observes a query, keyed by the caller since queries cannot be compared. Replayed
+     * snapshots carry changes relative to an earlier snapshot, so observers should read
+     * {@link DataSnapshot#getDocuments()} for those.
+     */
+    public ListenerRegistration observeQuery(String key, DataQuery query, Observer<DataSnapshot> observer) {
+        return observe(key, (executor, listener) -> source.listen(query, executor, listener),
+            (DataSnapshot snapshot) -> snapshot, observer);
+    }
+
+    /**
+     * @param key identifies both the data and the mapping, since all observers of a key share
+     *            the values mapped by the first one's mapper
+     */
+    public <S, T> ListenerRegistration observe(String key, Source<S> source, Mapper<S, T> mapper, Observer<T> observer) {
+        mapping.execute(() -> subscribe(key, source, mapper, observer));
+        return () -> mapping.execute(() -> unsubscribe(key, observer));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <S, T> void subscribe(String key, Source<S> source, Mapper<S, T> mapper, Observer<T> observer) {
+        Entry<S, T> entry = (Entry<S, T>) entries.get(key);
+        if (entry == null) {
+            Entry<S, T> created = new Entry<>(key, mapper);
+            created.registration = ListenerManager.getInstance().manage(key, resumed -> {
+                // A listener's first snapshot is relative to nothing, while observers may still
+                // hold what an earlier listener for the key delivered
+                boolean[] first = {true};
+                return source.listen(mapping, (value, error) -> {
+                    boolean replay = first[0];
+                    first[0] = false;
+                    onSnapshot(created, value, error, replay);
+                });
+            });
+            entries.put(key, created);
+            entry = created;
+        }
+        if (entry.pendingDetach != null) {
+            scheduler.cancel(entry.pendingDetach);
+            entry.pendingDetach = null;
+        }
+        entry.observers.add(observer);
+        if (entry.hasValue) {
+            observer.onValue(entry.last, true);
+        }
+    }
+
+    private <S, T> void onSnapshot(Entry<S, T> entry, S value, Exception error, boolean replay) {
+        if (entries.get(entry.key) != entry) {
+            return;
+        }
+        if (error != null) {
+            // A listener stops after an error; the next subscriber starts a new one
+            entries.remove(entry.key);
+            entry.registration.remove();
+            for (Observer<T> observer : new ArrayList<>(entry.observers)) {
+                observer.onError(error);
+            }
+            return;
+        }
+        if (value == null) {
+            return;
+        }
+        entry.last = entry.mapper.map(value);
+        entry.hasValue = true;
+        for (Observer<T> observer : new ArrayList<>(entry.observers)) {
+            observer.onValue(entry.last, replay);
+        }
+    }
+
+    private void unsubscribe(String key, Observer<?> observer) {
+        Entry<?, ?> entry = entries.get(key);
+        if (entry == null || !entry.observers.remove(observer) || !entry.observers.isEmpty()) {
+            return;
+        }
+        Runnable detach = () -> mapping.execute(() -> {
+            if (entries.get(key) == entry && entry.observers.isEmpty()) {
+                entries.remove(key);
+                entry.registration.remove();
+            }
+        });
+        entry.pendingDetach = detach;
+        scheduler.postDelayed(detach, gracePeriodMs);
+    }
+}
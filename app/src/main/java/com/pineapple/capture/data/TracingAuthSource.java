@@ -0,0 +1,46 @@
+package com.pineapple.capture.data;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Records the round trip of every call on another {@link AuthSource} in the
+ * {@link MetricsRegistry} and as a trace section, like {@link TracingDataSource}.
+ */
+public class TracingAuthSource implements AuthSource {
+    private final AuthSource source;
+    private final MetricsRegistry metrics = MetricsRegistry.getInstance();
+
+    public TracingAuthSource(AuthSource source) {
+        this.source = source;
+    }
+
+    @Override
+    public String getCurrentUserId() {
+        return source.getCurrentUserId();
+    }
+
+    @Override
+    public CompletableFuture<String> restoredUserId() {
+        return source.restoredUserId();
+    }
+
+    @Override
+    public CompletableFuture<String> signIn(String email, String password) {
+        return metrics.trace("auth sign-in", () -> source.signIn(email, password));
+    }
+
+    @Override
+    public CompletableFuture<String> createUser(String email, String password) {
+        return metrics.trace("auth create user", () -> source.createUser(email, password));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteCurrentUser() {
+        return metrics.trace("auth delete user", source::deleteCurrentUser);
+    }
+
+    @Override
+    public void signOut() {
+        source.signOut();
+    }
+}
@@ -0,0 +1,177 @@
+package com.pineapple.capture.data;
+
+import android.os.Trace;
+import com.google.firebase.firestore.ListenerRegistration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Records every operation on another {@link DataSource} in the {@link MetricsRegistry} and as
+ * trace sections. Operations are named by their path with document ids replaced by {@code *},
+ * e.g. {@code get users/*}, so calls on different documents share a histogram.
+ *
+ * <p>Reads and writes record their round trip. Listeners record the time to their first
+ * snapshot, the size of each snapshot, whether it came from the cache or the server, and how
+ * long the app's own handling of it took, which is mostly decoding and diffing.
+ */
+public class TracingDataSource implements DataSource {
+    private final DataSource source;
+    private final MetricsRegistry metrics = MetricsRegistry.getInstance();
+
+    public TracingDataSource(DataSource source) {
+        this.source = source;
+    }
+
+    @Override
+    public CompletableFuture<DataDocument> get(String path) {
+        return metrics.trace("get " + pattern(path), () -> source.get(path));
+    }
+
+    @Override
+    public CompletableFuture<DataSnapshot> get(DataQuery query) {
+        String operation = "query " + pattern(query);
+        CompletableFuture<DataSnapshot> future = metrics.trace(operation, () -> source.get(query));
+        future.thenAccept(snapshot -> recordSnapshot(operation, snapshot));
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Void> set(String path, Map<String, Object> data) {
+        return metrics.trace("set " + pattern(path), () -> source.set(path, data));
+    }
+
+    @Override
+    public CompletableFuture<Void> merge(String path, Map<String, Object> fields) {
+        return metrics.trace("merge " + pattern(path), () -> source.merge(path, fields));
+    }
+
+    @Override
+    public CompletableFuture<Void> update(String path, Map<String, Object> fields) {
+        return metrics.trace("update " + pattern(path), () -> source.update(path, fields));
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(String path) {
+        return metrics.trace("delete " + pattern(path), () -> source.delete(path));
+    }
+
+    @Override
+    public String newDocumentPath(String collectionPath) {
+        return source.newDocumentPath(collectionPath);
+    }
+
+    @Override
+    public DataBatch batch() {
+        DataBatch batch = source.batch();
+        return new DataBatch() {
+            @Override
+            public DataBatch set(String path, Map<String, Object> data) {
+                batch.set(path, data);
+                return this;
+            }
+
+            @Override
+            public DataBatch merge(String path, Map<String, Object> fields) {
+                batch.merge(path, fields);
+                return this;
+            }
+
+            @Override
+            public DataBatch update(String path, Map<String, Object> fields) {
+                batch.update(path, fields);
+                return this;
+            }
+
+            @Override
+            public DataBatch delete(String path) {
+                batch.delete(path);
+                return this;
+            }
+
+            @Override
+            public CompletableFuture<Void> commit() {
+                return metrics.trace("batch", batch::commit);
+            }
+        };
+    }
+
+    @Override
+    public <T> CompletableFuture<T> runTransaction(DataTransaction.Function<T> function) {
+        return metrics.trace("transaction", () -> source.runTransaction(function));
+    }
+
+    @Override
+    public ListenerRegistration listen(String path, boolean includeMetadataChanges, Executor executor,
+                                       Listener<DataDocument> listener) {
+        String operation = "listen " + pattern(path);
+        long attachedAt = System.nanoTime();
+        boolean[] first = {true};
+        return source.listen(path, includeMetadataChanges, executor, (value, error) -> {
+            if (first[0]) {
+                first[0] = false;
+                metrics.timer(operation + " first").record(System.nanoTime() - attachedAt);
+            }
+            if (value != null) {
+                metrics.increment(operation + (value.isFromCache() ? " cache" : " server"));
+            }
+            handle(operation, () -> listener.onEvent(value, error));
+        });
+    }
+
+    @Override
+    public ListenerRegistration listen(DataQuery query, Executor executor, Listener<DataSnapshot> listener) {
+        String operation = "listen " + pattern(query);
+        long attachedAt = System.nanoTime();
+        boolean[] first = {true};
+        return source.listen(query, executor, (value, error) -> {
+            if (first[0]) {
+                first[0] = false;
+                metrics.timer(operation + " first").record(System.nanoTime() - attachedAt);
+            }
+            if (value != null) {
+                recordSnapshot(operation, value);
+            }
+            handle(operation, () -> listener.onEvent(value, error));
+        });
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return source.isPersistent();
+    }
+
+    private void recordSnapshot(String operation, DataSnapshot snapshot) {
+        metrics.size(operation).record(snapshot.size());
+        metrics.increment(operation + (snapshot.isFromCache() ? " cache" : " server"));
+    }
+
+    // Runs on the listener's executor, so the section nests with whatever the listener traces
+    private void handle(String operation, Runnable onEvent) {
+        long start = System.nanoTime();
+        Trace.beginSection(operation);
+        try {
+            onEvent.run();
+        } finally {
+            Trace.endSection();
+            metrics.timer(operation + " handle").record(System.nanoTime() - start);
+        }
+    }
+
+    private static String pattern(DataQuery query) {
+        return query.isCollectionGroup() ? "group " + query.getCollection() : pattern(query.getCollection());
+    }
+
+    // Collection ids sit at even positions and document ids at odd ones
+    static String pattern(String path) {
+        String[] segments = path.split("/");
+        StringBuilder pattern = new StringBuilder(path.length());
+        for (int i = 0; i < segments.length; i++) {
+            if (i > 0) {
+                pattern.append('/');
+            }
+            pattern.append(i % 2 == 0 ? segments[i] : "*");
+        }
+        return pattern.toString();
+    }
+}
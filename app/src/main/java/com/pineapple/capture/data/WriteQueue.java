@@ -0,0 +1,426 @@
+package com.pineapple.capture.data;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Write-behind queue for user mutations. Writes to the same document are folded into one (see
+ * {@link PendingWrite#then}) while they wait, and everything pending is committed together in a
+ * {@link DataBatch} shortly after the first write of a burst. Marker writes, such as likes, are
+ * committed each in its own {@link DataSource#setMarker} transaction instead, so that a burst of
+ * likes and unlikes costs at most one change to the counter.
+ *
+ * <p>Firestore keeps an unacknowledged batch on disk and sends it when it is back online, but a
+ * batch the server rejects, or a transaction that cannot reach it, is lost. Such writes go back
+ * into the queue and are committed again after a delay that doubles with each failure. A write
+ * the server keeps rejecting is dropped after {@link #MAX_COMMIT_ATTEMPTS}; being offline does
+ * not count as an attempt. Only writes not yet handed to the source are saved here, for a
+ * persistent source, so they survive process death without anything being applied twice.
+ * Queues for other sources, e.g. an in-memory one in a load test, live in memory only.
+ */
+public class WriteQueue {
+    private static final String TAG = "WriteQueue";
+    private static final String FILE_NAME = "write_queue.json";
+
+    static final long FLUSH_DELAY_MS = 2_000;
+    static final long MAX_RETRY_DELAY_MS = 5 * 60_000;
+    static final int MAX_COMMIT_ATTEMPTS = 10;
+
+    private static final Map<DataSource, WriteQueue> instances = new IdentityHashMap<>();
+
+    public static WriteQueue getInstance(Context context) {
+        return getInstance(context, DataSources.data());
+    }
+
+    public static synchronized WriteQueue getInstance(Context context, DataSource source) {
+        WriteQueue instance = instances.get(source);
+        if (instance == null) {
+            AtomicFile file = source.isPersistent()
+                ? new AtomicFile(new File(context.getApplicationContext().getFilesDir(), FILE_NAME))
+                : null;
+            instance = new WriteQueue(source, file);
+            instances.put(source, instance);
+        }
+        return instance;
+    }
+
+    private final DataSource source;
+    // Null when the queue is not persisted
+    private final AtomicFile file;
+    private final ScheduledExecutorService executor =
+        Executors.newSingleThreadScheduledExecutor(DataExecutors.backgroundThreads("write-queue"));
+
+    // Everything below is confined to the queue thread.
+    // Keyed by document path, in the order each document was first written
+    private final LinkedHashMap<String, PendingWrite> pending = new LinkedHashMap<>();
+    // Failed commits so far, by document path, for the writes being retried
+    private final Map<String, Integer> attempts = new HashMap<>();
+    // Consecutive failed commits, setting the retry delay
+    private int failures;
+    private ScheduledFuture<?> scheduledFlush;
+
+    private WriteQueue(DataSource source, AtomicFile file) {
+        this.source = source;
+        this.file = file;
+        executor.execute(this::restore);
+    }
+
+    public void set(String path, Map<String, Object> data) {
+        enqueue(PendingWrite.set(path, data));
+    }
+
+    public void merge(String path, Map<String, Object> fields) {
+        enqueue(PendingWrite.merge(path, fields));
+    }
+
+    public void update(String path, Map<String, Object> fields) {
+        enqueue(PendingWrite.update(path, fields));
+    }
+
+    public void delete(String path) {
+        enqueue(PendingWrite.delete(path));
+    }
+
+    public void increment(String path, String field, long delta) {
+        enqueue(PendingWrite.increment(path, field, delta));
+    }
+
+    /** Queues the creation of a marker document counted in another, see {@link PendingWrite#setMarker}. */
+    public void setMarker(String path, Map<String, Object> fields, String counterPath, String counterField) {
+        enqueue(PendingWrite.setMarker(path, fields, counterPath, counterField));
+    }
+
+    public void deleteMarker(String path, String counterPath, String counterField) {
+        enqueue(PendingWrite.deleteMarker(path, counterPath, counterField));
+    }
+
+    /** Commits whatever is pending now instead of waiting for the timer. */
+    public void flush() {
+        executor.execute(() -> {
+            cancelScheduledFlush();
+            commit();
+        });
+    }
+
+    private void enqueue(PendingWrite write) {
+        // Fail on the caller's thread rather than when the queue is next saved
+        checkStorable(write.getFields());
+        executor.execute(() -> {
+            PendingWrite previous = pending.remove(write.getPath());
+            PendingWrite folded = previous != null ? previous.then(write) : write;
+            if (folded != null) {
+                pending.put(write.getPath(), folded);
+            }
+            save();
+            if (pending.size() >= DataSource.MAX_BATCH_WRITES) {
+                cancelScheduledFlush();
+                commit();
+            } else if (scheduledFlush == null) {
+                scheduleFlush(FLUSH_DELAY_MS);
+            }
+        });
+    }
+
+    private void scheduleFlush(long delayMs) {
+        scheduledFlush = executor.schedule(() -> {
+            scheduledFlush = null;
+            commit();
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelScheduledFlush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+    }
+
+    private void commit() {
+        List<PendingWrite> markers = new ArrayList<>();
+        while (!pending.isEmpty()) {
+            DataBatch batch = source.batch();
+            List<PendingWrite> writes = new ArrayList<>();
+            Iterator<PendingWrite> it = pending.values().iterator();
+            while (it.hasNext() && writes.size() < DataSource.MAX_BATCH_WRITES) {
+                PendingWrite write = it.next();
+                it.remove();
+                if (write.isMarker()) {
+                    markers.add(write);
+                } else {
+                    apply(batch, write);
+                    writes.add(write);
+                }
+            }
+            // Saved before the commit, since from then on the writes are in the source's own queue
+            // and committing them again after a restart would apply increments twice
+            save();
+            if (!writes.isEmpty()) {
+                batch.commit().whenComplete((unused, error) -> settle(writes, error));
+            }
+        }
+        for (PendingWrite marker : markers) {
+            source.setMarker(marker.getPath(), marker.getKind() == PendingWrite.Kind.DELETE ? null : marker.getFields(),
+                    marker.getCounterPath(), marker.getCounterField())
+                .whenComplete((delta, error) -> settle(Collections.singletonList(marker), error));
+        }
+    }
+
+    // Forgets the attempts of committed writes, or puts failed ones back ahead of anything
+    // written to the same documents since
+    private void settle(List<PendingWrite> writes, Throwable error) {
+        executor.execute(() -> {
+            if (error == null) {
+                failures = 0;
+                for (PendingWrite write : writes) {
+                    attempts.remove(write.getPath());
+                }
+                return;
+            }
+            Exception cause = DataSource.cause(error);
+            boolean offline = cause instanceof FirebaseFirestoreException
+                && ((FirebaseFirestoreException) cause).getCode() == FirebaseFirestoreException.Code.UNAVAILABLE;
+            failures++;
+            int dropped = 0;
+            for (PendingWrite write : writes) {
+                int attempt = attempts.getOrDefault(write.getPath(), 0) + (offline ? 0 : 1);
+                if (attempt >= MAX_COMMIT_ATTEMPTS) {
+                    attempts.remove(write.getPath());
+                    dropped++;
+                    continue;
+                }
+                attempts.put(write.getPath(), attempt);
+                PendingWrite newer = pending.remove(write.getPath());
+                PendingWrite folded = newer != null ? write.then(newer) : write;
+                if (folded != null) {
+                    pending.put(write.getPath(), folded);
+                }
+            }
+            if (dropped > 0) {
+                Log.w(TAG, "Dropping " + dropped + " writes the store kept rejecting", cause);
+            } else {
+                Log.w(TAG, "Committing " + writes.size() + " writes failed, retrying", cause);
+            }
+            save();
+            if (!pending.isEmpty()) {
+                cancelScheduledFlush();
+                scheduleFlush(retryDelayMillis(failures));
+            }
+        });
+    }
+
+    /** How long to wait before committing again after this many failures in a row. */
+    static long retryDelayMillis(int failures) {
+        return Math.min(MAX_RETRY_DELAY_MS, FLUSH_DELAY_MS << Math.min(failures - 1, 20));
+    }
+
+    private static void apply(DataBatch batch, PendingWrite write) {
+        String path = write.getPath();
+        Map<String, Object> data = new LinkedHashMap<>(write.getFields());
+        for (Map.Entry<String, Number> increment : write.getIncrements().entrySet()) {
+            Number delta = increment.getValue();
+            data.put(increment.getKey(), delta instanceof Double || delta instanceof Float
+                ? DataSource.increment(delta.doubleValue())
+                : DataSource.increment(delta.longValue()));
+        }
+        switch (write.getKind()) {
+            case SET:
+                batch.set(path, data);
+                break;
+            case MERGE:
+                batch.merge(path, data);
+                break;
+            case UPDATE:
+                batch.update(path, data);
+                break;
+            case DELETE:
+                batch.delete(path);
+                break;
+        }
+    }
+
+    private void save() {
+        if (file == null) {
+            return;
+        }
+        FileOutputStream out = null;
+        try {
+            JSONArray writes = new JSONArray();
+            for (PendingWrite write : pending.values()) {
+                writes.put(toJson(write));
+            }
+            out = file.startWrite();
+            out.write(writes.toString().getBytes(StandardCharsets.UTF_8));
+            file.finishWrite(out);
+        } catch (IOException | JSONException e) {
+            if (out != null) {
+                file.failWrite(out);
+            }
+            Log.w(TAG, "Failed to save the write queue", e);
+        }
+    }
+
+    private void restore() {
+        if (file == null || !file.getBaseFile().exists()) {
+            return;
+        }
+        try {
+            byte[] bytes = file.readFully();
+            JSONArray writes = new JSONArray(new String(bytes, StandardCharsets.UTF_8));
+            for (int i = 0; i < writes.length(); i++) {
+                PendingWrite write = fromJson(writes.getJSONObject(i));
+                PendingWrite previous = pending.remove(write.getPath());
+                PendingWrite folded = previous != null ? previous.then(write) : write;
+                if (folded != null) {
+                    pending.put(write.getPath(), folded);
+                }
+            }
+        } catch (IOException | JSONException | IllegalArgumentException e) {
+            Log.w(TAG, "Discarding an unreadable write queue", e);
+            pending.clear();
+            file.delete();
+            return;
+        }
+        if (!pending.isEmpty()) {
+            scheduleFlush(0);
+        }
+    }
+
+    static JSONObject toJson(PendingWrite write) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("path", write.getPath());
+        json.put("kind", write.getKind().name());
+        json.put("fields", encodeMap(write.getFields()));
+        json.put("increments", encodeMap(write.getIncrements()));
+        if (write.isMarker()) {
+            json.put("counterPath", write.getCounterPath());
+            json.put("counterField", write.getCounterField());
+        }
+        return json;
+    }
+
+    static PendingWrite fromJson(JSONObject json) throws JSONException {
+        Map<String, Object> fields = decodeMap(json.getJSONObject("fields"));
+        Map<String, Number> increments = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> increment : decodeMap(json.getJSONObject("increments")).entrySet()) {
+            increments.put(increment.getKey(), (Number) increment.getValue());
+        }
+        return new PendingWrite(json.getString("path"), PendingWrite.Kind.valueOf(json.getString("kind")), fields, increments,
+            json.optString("counterPath", null), json.optString("counterField", null));
+    }
+
+    // Values are tagged with their type, since JSON cannot tell a Timestamp or a long apart
+    private static JSONObject encodeMap(Map<String, ?> map) throws JSONException {
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, ?> entry : map.entrySet()) {
+            json.put(entry.getKey(), encodeValue(entry.getValue()));
+        }
+        return json;
+    }
+
+    private static Map<String, Object> decodeMap(JSONObject json) throws JSONException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        Iterator<String> keys = json.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            map.put(key, decodeValue(json.getJSONArray(key)));
+        }
+        return map;
+    }
+
+    private static void checkStorable(Object value) {
+        if (value instanceof Map) {
+            for (Object item : ((Map<?, ?>) value).values()) {
+                checkStorable(item);
+            }
+        } else if (value instanceof List) {
+            for (Object item : (List<?>) value) {
+                checkStorable(item);
+            }
+        } else if (value != null && !(value instanceof String) && !(value instanceof Boolean)
+                && !(value instanceof Number) && !(value instanceof Timestamp)) {
+            throw new IllegalArgumentException("Cannot queue a value of " + value.getClass());
+        }
+    }
+
+    private static JSONArray encodeValue(Object value) throws JSONException {
+        JSONArray tagged = new JSONArray();
+        if (value == null) {
+            tagged.put("null");
+        } else if (value instanceof String) {
+            tagged.put("string").put(value);
+        } else if (value instanceof Boolean) {
+            tagged.put("boolean").put(value);
+        } else if (value instanceof Double || value instanceof Float) {
+            tagged.put("double").put(((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            tagged.put("long").put(String.valueOf(((Number) value).longValue()));
+        } else if (value instanceof Timestamp) {
+            Timestamp timestamp = (Timestamp) value;
+            tagged.put("timestamp").put(String.valueOf(timestamp.getSeconds())).put(timestamp.getNanoseconds());
+        } else if (value instanceof Map) {
+            @SuppressWarnings("unchecked")
+            Map<String, ?> map = (Map<String, ?>) value;
+            tagged.put("map").put(encodeMap(map));
+        } else if (value instanceof List) {
+            JSONArray items = new JSONArray();
+            for (Object item : (List<?>) value) {
+                items.put(encodeValue(item));
+            }
+            tagged.put("list").put(items);
+        } else {
+            throw new IllegalArgumentException("Cannot queue a value of " + value.getClass());
+        }
+        return tagged;
+    }
+
+    private static Object decodeValue(JSONArray tagged) throws JSONException {
+        switch (tagged.getString(0)) {
+            case "null":
+                return null;
+            case "string":
+                return tagged.getString(1);
+            case "boolean":
+                return tagged.getBoolean(1);
+            case "double":
+                return tagged.getDouble(1);
+            case "long":
+                return Long.parseLong(tagged.getString(1));
+            case "timestamp":
+                return new Timestamp(Long.parseLong(tagged.getString(1)), tagged.getInt(2));
+            case "map":
+                return decodeMap(tagged.getJSONObject(1));
+            case "list": {
+                JSONArray items = tagged.getJSONArray(1);
+                List<Object> list = new ArrayList<>(items.length());
+                for (int i = 0; i < items.length(); i++) {
+                    list.add(decodeValue(items.getJSONArray(i)));
+                }
+                return list;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown value type " + tagged.getString(0));
+        }
+    }
+}
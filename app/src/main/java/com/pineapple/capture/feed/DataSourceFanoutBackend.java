@@ -0,0 +1,94 @@
+package com.pineapple.capture.feed;
+
+import com.pineapple.capture.data.DataBatch;
+import com.pineapple.capture.data.DataDocument;
+import com.pineapple.capture.data.DataQuery;
+import com.pineapple.capture.data.DataSource;
+import com.pineapple.capture.data.DocumentCodec;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Timeline entries live in {@code users/{uid}/timeline/{postId}} and checkpoints in
+ * {@code users/{authorId}/fanouts/{postId}}. Followers are the users whose friends list contains
+ * the author, found with a collection group query over {@code friends}.
+ */
+public class DataSourceFanoutBackend implements TimelineFanout.Backend {
+    private final DataSource data;
+
+    public DataSourceFanoutBackend(DataSource data) {
+        this.data = data;
+    }
+
+    @Override
+    public List<String> loadFollowers(String authorId) throws Exception {
+        List<String> followers = new ArrayList<>();
+        for (DataDocument doc : data.get(DataQuery.collectionGroup("friends")
+                .whereEqualTo("userId", authorId)).get().getDocuments()) {
+            // users/{follower}/friends/{authorId}
+            String follower = doc.getParentId();
+            if (follower != null) {
+                followers.add(follower);
+            }
+        }
+        return followers;
+    }
+
+    @Override
+    public TimelineFanout.Checkpoint loadCheckpoint(String authorId, String postId) throws Exception {
+        DataDocument doc = data.get(checkpointPath(authorId, postId)).get();
+        return doc.exists() ? decodeCheckpoint(doc.getId(), doc.getData()) : null;
+    }
+
+    @Override
+    public List<TimelineFanout.Checkpoint> loadIncomplete(String authorId) throws Exception {
+        List<TimelineFanout.Checkpoint> incomplete = new ArrayList<>();
+        for (DataDocument doc : data.get(DataQuery.collection("users/" + authorId + "/fanouts")
+                .whereEqualTo("complete", false)).get().getDocuments()) {
+            incomplete.add(decodeCheckpoint(doc.getId(), doc.getData()));
+        }
+        return incomplete;
+    }
+
+    @Override
+    public void commit(TimelineEntry entry, List<String> followerIds, TimelineFanout.Checkpoint checkpoint) throws Exception {
+        DataBatch batch = data.batch();
+        Map<String, Object> encoded = encodeEntry(entry);
+        for (String followerId : followerIds) {
+            batch.set("users/" + followerId + "/timeline/" + entry.getPostId(), encoded);
+        }
+        batch.set(checkpointPath(entry.getAuthorId(), entry.getPostId()), encodeCheckpoint(checkpoint));
+        batch.commit().get();
+    }
+
+    static String checkpointPath(String authorId, String postId) {
+        return "users/" + authorId + "/fanouts/" + postId;
+    }
+
+    static Map<String, Object> encodeEntry(TimelineEntry entry) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("userId", entry.getAuthorId());
+        data.put("timestamp", entry.getTimestamp());
+        return data;
+    }
+
+    static Map<String, Object> encodeCheckpoint(TimelineFanout.Checkpoint checkpoint) {
+        Map<String, Object> data = encodeEntry(checkpoint.getEntry());
+        data.put("lastFollowerId", checkpoint.getLastFollowerId());
+        data.put("complete", checkpoint.isComplete());
+        return data;
+    }
+
+    private static TimelineFanout.Checkpoint decodeCheckpoint(String postId, Map<String, Object> data) {
+        TimelineEntry entry = new TimelineEntry(
+            postId,
+            DocumentCodec.getString(data, "userId"),
+            DocumentCodec.getTimestamp(data, "timestamp"));
+        return new TimelineFanout.Checkpoint(
+            entry,
+            DocumentCodec.getString(data, "lastFollowerId"),
+            Boolean.TRUE.equals(data.get("complete")));
+    }
+}
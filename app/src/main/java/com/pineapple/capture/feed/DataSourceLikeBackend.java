@@ -0,0 +1,86 @@
+package com.pineapple.capture.feed;
+
+import com.google.firebase.Timestamp;
+import com.pineapple.capture.data.DataDocument;
+import com.pineapple.capture.data.DataQuery;
+import com.pineapple.capture.data.DataSnapshot;
+import com.pineapple.capture.data.DataSource;
+import com.pineapple.capture.data.DocumentCodec;
+import com.pineapple.capture.data.WriteQueue;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Shards live in {@code posts/{postId}/likeShards/{index}} with a single {@code count} field.
+ * Shard documents are created by the first like counted in them.
+ */
+public class DataSourceLikeBackend implements LikeCounter.Backend {
+    private final DataSource data;
+    private final WriteQueue writes;
+
+    public DataSourceLikeBackend(DataSource data, WriteQueue writes) {
+        this.data = data;
+        this.writes = writes;
+    }
+
+    /**
+     * Queues the user's marker in {@code posts/{postId}/likes}, or its removal. Taps on one post
+     * fold into one net write, and its commit moves the counter only if the marker changes, so
+     * the count follows the markers whatever the client remembers. A marker on a sharded post
+     * names its shard, which the security rules check the counter change against.
+     */
+    public void setLiked(FeedItem post, String userId, boolean liked) {
+        if (liked) {
+            Map<String, Object> marker = new HashMap<>();
+            marker.put("likedAt", Timestamp.now());
+            if (post.getLikeShards() > 0) {
+                marker.put("shard", (long) LikeCounter.pinnedShard(post, userId));
+            }
+            writes.setMarker(likePath(post.getId(), userId), marker, counterPath(post, userId), counterField(post));
+        } else {
+            writes.deleteMarker(likePath(post.getId(), userId), counterPath(post, userId), counterField(post));
+        }
+    }
+
+    static String likePath(String postId, String userId) {
+        return "posts/" + postId + "/likes/" + userId;
+    }
+
+    static String shardPath(String postId, int shard) {
+        return "posts/" + postId + "/likeShards/" + shard;
+    }
+
+    /** The document a like by this client counts in: its pinned shard, or the post itself. */
+    public static String counterPath(FeedItem post, String clientId) {
+        return post.getLikeShards() > 0
+            ? shardPath(post.getId(), LikeCounter.pinnedShard(post, clientId))
+            : "posts/" + post.getId();
+    }
+
+    public static String counterField(FeedItem post) {
+        return post.getLikeShards() > 0 ? "count" : "likes";
+    }
+
+    @Override
+    public Map<String, Long> sumShards(List<String> postIds) throws Exception {
+        // Read every post's shards concurrently, then wait for all of them
+        List<CompletableFuture<DataSnapshot>> reads = new ArrayList<>(postIds.size());
+        for (String postId : postIds) {
+            reads.add(data.get(DataQuery.collection("posts/" + postId + "/likeShards")));
+        }
+        CompletableFuture.allOf(reads.toArray(new CompletableFuture<?>[0])).get();
+
+        Map<String, Long> totals = new HashMap<>();
+        for (int i = 0; i < postIds.size(); i++) {
+            long total = 0;
+            for (DataDocument shard : reads.get(i).get().getDocuments()) {
+                total += DocumentCodec.getLong(shard.getData(), "count");
+            }
+            totals.put(postIds.get(i), total);
+        }
+        return totals;
+    }
+}
@@ -0,0 +1,216 @@
+package com.pineapple.capture.feed;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+import com.pineapple.capture.R;
+import com.pineapple.capture.data.ListSnapshotAdapter;
+import com.pineapple.capture.image.ImageLoader;
+import com.pineapple.capture.profile.UserProfile;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+public class FeedAdapter extends ListSnapshotAdapter<FeedItem, FeedAdapter.PostViewHolder> {
+    public interface OnLikeClickListener {
+        void onLikeClick(FeedItem item);
+    }
+
+    static final int VIEW_TYPE_POST = 0;
+
+    // Partial bind payloads for a post whose only change is its like count or author profile
+    static final Object PAYLOAD_LIKES = new Object();
+    static final Object PAYLOAD_AUTHOR = new Object();
+    // For a post a snapshot records as changed: rebinds only the like count if nothing else
+    // differs from the post the holder shows
+    static final Object PAYLOAD_EDITED = new Object();
+
+    // Public for SnapshotBenchmark, which measures the diff this adapter runs when it cannot
+    // replay a snapshot's changes
+    public static final DiffUtil.ItemCallback<FeedItem> DIFF_CALLBACK = new DiffUtil.ItemCallback<FeedItem>() {
+        @Override
+        public boolean areItemsTheSame(FeedItem oldItem, FeedItem newItem) {
+            return Objects.equals(oldItem.getId(), newItem.getId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(FeedItem oldItem, FeedItem newItem) {
+            return sameExceptLikes(oldItem, newItem) && oldItem.getLikes() == newItem.getLikes();
+        }
+
+        @Override
+        public Object getChangePayload(FeedItem oldItem, FeedItem newItem) {
+            return sameExceptLikes(oldItem, newItem) ? PAYLOAD_LIKES : null;
+        }
+    };
+
+    // Post ids in the current list mapped to the long ids RecyclerView needs for stable ids.
+    // Ids are never reused, so a post that leaves and comes back gets a new one.
+    private final Map<String, Long> stableIds = new HashMap<>();
+    private long nextStableId;
+    private Map<String, UserProfile> authors = Collections.emptyMap();
+    private OnLikeClickListener onLikeClickListener;
+
+    public FeedAdapter() {
+        super(DIFF_CALLBACK);
+        setHasStableIds(true);
+    }
+
+    @Override
+    protected Object getChangePayload() {
+        return PAYLOAD_EDITED;
+    }
+
+    public void setAuthors(Map<String, UserProfile> authors) {
+        this.authors = authors;
+        notifyItemRangeChanged(0, getItemCount(), PAYLOAD_AUTHOR);
+    }
+
+    public void setOnLikeClickListener(OnLikeClickListener listener) {
+        this.onLikeClickListener = listener;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        String id = getItem(position).getId();
+        Long stableId = stableIds.get(id);
+        if (stableId == null) {
+            stableId = nextStableId++;
+            stableIds.put(id, stableId);
+        }
+        return stableId;
+    }
+
+    @Override
+    public void onCurrentListChanged(List<FeedItem> previousList, List<FeedItem> currentList) {
+        // Forget posts that left the list, so the map stays as large as the list
+        Set<String> current = new HashSet<>();
+        for (FeedItem item : currentList) {
+            current.add(item.getId());
+        }
+        stableIds.keySet().retainAll(current);
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return VIEW_TYPE_POST;
+    }
+
+    @Override
+    public PostViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_feed_post, parent, false);
+        PostViewHolder holder = new PostViewHolder(view);
+        holder.likesView.setOnClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (position != RecyclerView.NO_POSITION && onLikeClickListener != null) {
+                onLikeClickListener.onLikeClick(getItem(position));
+            }
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(PostViewHolder holder, int position) {
+        FeedItem item = getItem(position);
+        holder.bind(item, authors.get(item.getUserId()));
+    }
+
+    @Override
+    public void onBindViewHolder(PostViewHolder holder, int position, List<Object> payloads) {
+        if (payloads.isEmpty() || !onlyPartialChanges(payloads)) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        FeedItem item = getItem(position);
+        if (payloads.contains(PAYLOAD_EDITED) && (holder.item == null || !sameExceptLikes(holder.item, item))) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        if (payloads.contains(PAYLOAD_LIKES) || payloads.contains(PAYLOAD_EDITED)) {
+            holder.bindLikes(item);
+        }
+        if (payloads.contains(PAYLOAD_AUTHOR)) {
+            holder.bindAuthor(authors.get(item.getUserId()));
+        }
+    }
+
+    @Override
+    public void onViewRecycled(PostViewHolder holder) {
+        ImageLoader.getInstance(holder.itemView.getContext()).cancel(holder.imageView);
+    }
+
+    private static boolean onlyPartialChanges(List<Object> payloads) {
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD_LIKES && payload != PAYLOAD_AUTHOR && payload != PAYLOAD_EDITED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameExceptLikes(FeedItem a, FeedItem b) {
+        return Objects.equals(a.getUserId(), b.getUserId())
+            && Objects.equals(a.getContent(), b.getContent())
+            && Objects.equals(a.getImageUrl(), b.getImageUrl())
+            && Objects.equals(a.getTimestamp(), b.getTimestamp());
+    }
+
+    /**
+     * Applies recycling settings sized for the feed: one view type, a few full-width posts on
+     * screen at a time.
+     */
+    static void configure(RecyclerView recyclerView) {
+        RecyclerView.RecycledViewPool pool = new RecyclerView.RecycledViewPool();
+        pool.setMaxRecycledViews(VIEW_TYPE_POST, 10);
+        recyclerView.setRecycledViewPool(pool);
+        recyclerView.setItemViewCacheSize(4);
+        recyclerView.setHasFixedSize(true);
+        if (recyclerView.getLayoutManager() != null) {
+            recyclerView.getLayoutManager().setItemPrefetchEnabled(true);
+        }
+    }
+
+    static class PostViewHolder extends RecyclerView.ViewHolder {
+        final TextView authorView;
+        final ImageView imageView;
+        final TextView contentView;
+        final TextView likesView;
+        // The post last bound, for telling which of its views an edit touches
+        FeedItem item;
+
+        PostViewHolder(View itemView) {
+            super(itemView);
+            authorView = itemView.findViewById(R.id.post_author);
+            imageView = itemView.findViewById(R.id.post_image);
+            contentView = itemView.findViewById(R.id.post_content);
+            likesView = itemView.findViewById(R.id.post_likes);
+        }
+
+        void bind(FeedItem item, UserProfile author) {
+            this.item = item;
+            bindAuthor(author);
+            contentView.setText(item.getContent());
+            contentView.setVisibility(item.getContent() == null || item.getContent().isEmpty() ? View.GONE : View.VISIBLE);
+            imageView.setVisibility(item.getImageUrl() == null ? View.GONE : View.VISIBLE);
+            ImageLoader.getInstance(itemView.getContext()).load(item.getImageUrl(), imageView);
+            bindLikes(item);
+        }
+
+        void bindAuthor(UserProfile author) {
+            authorView.setText(author != null && author.getName() != null ? author.getName() : "");
+        }
+
+        void bindLikes(FeedItem item) {
+            this.item = item;
+            likesView.setText(item.getLikes() == 1 ? "1 like" : item.getLikes() + " likes");
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.pineapple.capture.feed;
+
+import android.os.SystemClock;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import com.pineapple.capture.image.ImageLoader;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Warms the image cache for the posts just ahead of the viewport in the direction the feed is
+ * scrolling. The window grows with scroll speed and with how long images currently take to load,
+ * and prefetches that the viewport has already passed are cancelled.
+ */
+public class FeedImagePrefetcher extends RecyclerView.OnScrollListener {
+    private static final int MIN_DISTANCE = 2;
+    private static final int MAX_DISTANCE = 10;
+    // Gaps between scroll events longer than this start a new gesture
+    private static final long GESTURE_GAP_MS = 100;
+
+    private final ImageLoader imageLoader;
+    private final FeedAdapter adapter;
+    private final LinearLayoutManager layoutManager;
+    private final Map<String, ImageLoader.Prefetch> inFlight = new HashMap<>();
+
+    private long lastScrollTime;
+    // Smoothed scroll velocity in pixels per millisecond; negative when scrolling up
+    private float velocity;
+    private int imageWidth;
+    private int imageHeight;
+    private int itemHeight;
+
+    public FeedImagePrefetcher(ImageLoader imageLoader, FeedAdapter adapter, LinearLayoutManager layoutManager) {
+        this.imageLoader = imageLoader;
+        this.adapter = adapter;
+        this.layoutManager = layoutManager;
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        long now = SystemClock.uptimeMillis();
+        long elapsed = now - lastScrollTime;
+        float sample = dy / (float) Math.max(1, elapsed);
+        velocity = lastScrollTime == 0 || elapsed > GESTURE_GAP_MS ? sample : velocity * 0.7f + sample * 0.3f;
+        lastScrollTime = now;
+        update(recyclerView);
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            update(recyclerView);
+        }
+    }
+
+    public void cancelAll() {
+        for (ImageLoader.Prefetch prefetch : inFlight.values()) {
+            prefetch.cancel();
+        }
+        inFlight.clear();
+    }
+
+    private void update(RecyclerView recyclerView) {
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION) {
+            return;
+        }
+        measure(recyclerView, first, last);
+        if (imageWidth <= 0 || imageHeight <= 0) {
+            return;
+        }
+
+        List<FeedItem> items = adapter.getCurrentList();
+        int distance = prefetchDistance();
+        int from = velocity >= 0 ? last + 1 : Math.max(0, first - distance);
+        int to = velocity >= 0 ? Math.min(items.size() - 1, last + distance) : first - 1;
+
+        // Drop finished prefetches and any the viewport has moved past
+        Iterator<Map.Entry<String, ImageLoader.Prefetch>> iterator = inFlight.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, ImageLoader.Prefetch> entry = iterator.next();
+            if (entry.getValue().isDone()) {
+                iterator.remove();
+            } else if (!inWindow(items, entry.getKey(), from, to)) {
+                entry.getValue().cancel();
+                iterator.remove();
+            }
+        }
+
+        // Nearest posts first, so the next one to scroll in is ready soonest
+        for (int i = 0; i <= to - from; i++) {
+            int position = velocity >= 0 ? from + i : to - i;
+            String url = items.get(position).getImageUrl();
+            if (url != null && !inFlight.containsKey(url)) {
+                ImageLoader.Prefetch prefetch = imageLoader.prefetch(url, imageWidth, imageHeight);
+                if (prefetch != null) {
+                    inFlight.put(url, prefetch);
+                }
+            }
+        }
+    }
+
+    /**
+     * Number of posts ahead to prefetch: enough to cover the posts that scroll into view while
+     * one image loads at the current speed.
+     */
+    private int prefetchDistance() {
+        if (itemHeight <= 0) {
+            return MIN_DISTANCE;
+        }
+        float postsPerMilli = Math.abs(velocity) / itemHeight;
+        int ahead = (int) Math.ceil(postsPerMilli * imageLoader.getAverageLoadMillis());
+        return Math.max(MIN_DISTANCE, Math.min(MAX_DISTANCE, MIN_DISTANCE + ahead));
+    }
+
+    // Image views share one size, so any laid out post on screen gives the decode size
+    private void measure(RecyclerView recyclerView, int first, int last) {
+        for (int position = first; position <= last; position++) {
+            RecyclerView.ViewHolder holder = recyclerView.findViewHolderForAdapterPosition(position);
+            if (holder instanceof FeedAdapter.PostViewHolder) {
+                FeedAdapter.PostViewHolder post = (FeedAdapter.PostViewHolder) holder;
+                if (post.imageView.getWidth() > 0 && post.imageView.getHeight() > 0) {
+                    imageWidth = post.imageView.getWidth();
+                    imageHeight = post.imageView.getHeight();
+                    itemHeight = post.itemView.getHeight();
+                    return;
+                }
+            }
+        }
+    }
+
+    private static boolean inWindow(List<FeedItem> items, String url, int from, int to) {
+        for (int position = from; position <= to; position++) {
+            if (url.equals(items.get(position).getImageUrl())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -9,6 +9,8 @@ public class FeedItem {
     private String imageUrl;
     private Timestamp timestamp;
     private int likes;
+    // Number of like counter shards; 0 for posts that keep a single likes field
+    private int likeShards;
 
     // Required empty constructor for Firestore
     public FeedItem() {}
@@ -21,6 +23,23 @@ public class FeedItem {
         this.likes = 0;
     }
 
+    public FeedItem(FeedItem other) {
+        this.id = other.id;
+        this.userId = other.userId;
+        this.content = other.content;
+        this.imageUrl = other.imageUrl;
+        this.timestamp = other.timestamp;
+        this.likes = other.likes;
+        this.likeShards = other.likeShards;
+    }
+
+    /** A copy with another like count, for replacing a post that published snapshots share. */
+    public FeedItem withLikes(int likes) {
+        FeedItem copy = new FeedItem(this);
+        copy.likes = likes;
+        return copy;
+    }
+
     // Getters and setters
     public String getId() { return id; }
     public void setId(String id) { this.id = id; }
@@ -39,4 +58,7 @@ public class FeedItem {
     
     public int getLikes() { return likes; }
     public void setLikes(int likes) { this.likes = likes; }
+
+    public int getLikeShards() { return likeShards; }
+    public void setLikeShards(int likeShards) { this.likeShards = likeShards; }
 } 
\ No newline at end of file
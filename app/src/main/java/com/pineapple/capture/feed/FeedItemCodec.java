@@ -0,0 +1,37 @@
+package com.pineapple.capture.feed;
+
+import com.pineapple.capture.data.DocumentCodec;
+import java.util.HashMap;
+import java.util.Map;
+
+public final class FeedItemCodec implements DocumentCodec<FeedItem> {
+    public static final FeedItemCodec INSTANCE = new FeedItemCodec();
+
+    private FeedItemCodec() {}
+
+    @Override
+    public FeedItem decode(String id, Map<String, Object> data) {
+        FeedItem item = new FeedItem();
+        item.setId(id);
+        item.setUserId(DocumentCodec.getString(data, "userId"));
+        item.setContent(DocumentCodec.getString(data, "content"));
+        item.setImageUrl(DocumentCodec.getString(data, "imageUrl"));
+        item.setTimestamp(DocumentCodec.getTimestamp(data, "timestamp"));
+        item.setLikes(DocumentCodec.getInt(data, "likes"));
+        item.setLikeShards(DocumentCodec.getInt(data, "likeShards"));
+        return item;
+    }
+
+    @Override
+    public Map<String, Object> encode(FeedItem item) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", item.getId());
+        data.put("userId", item.getUserId());
+        data.put("content", item.getContent());
+        data.put("imageUrl", item.getImageUrl());
+        data.put("timestamp", item.getTimestamp());
+        data.put("likes", item.getLikes());
+        data.put("likeShards", item.getLikeShards());
+        return data;
+    }
+}
@@ -0,0 +1,10 @@
+package com.pineapple.capture.feed;
+
+public enum FeedMode {
+    // Every post, newest first
+    EVERYONE,
+    // Only posts by the people in the user's friends list, queried per friend chunk on read
+    FRIENDS,
+    // The same posts as FRIENDS, read from the timeline fanned out when each post was written
+    TIMELINE
+}
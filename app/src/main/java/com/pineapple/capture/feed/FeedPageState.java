@@ -0,0 +1,41 @@
+package com.pineapple.capture.feed;
+
+public class FeedPageState {
+    private final boolean refreshing;
+    private final boolean loadingMore;
+    private final boolean endReached;
+    private final String error;
+
+    public FeedPageState(boolean refreshing, boolean loadingMore, boolean endReached, String error) {
+        this.refreshing = refreshing;
+        this.loadingMore = loadingMore;
+        this.endReached = endReached;
+        this.error = error;
+    }
+
+    public static FeedPageState initial() {
+        return new FeedPageState(true, false, false, null);
+    }
+
+    public FeedPageState withRefreshing(boolean refreshing) {
+        return new FeedPageState(refreshing, loadingMore, endReached, error);
+    }
+
+    public FeedPageState withLoadingMore(boolean loadingMore) {
+        return new FeedPageState(refreshing, loadingMore, endReached, error);
+    }
+
+    public FeedPageState withEndReached(boolean endReached) {
+        return new FeedPageState(refreshing, loadingMore, endReached, error);
+    }
+
+    public FeedPageState withError(String error) {
+        return new FeedPageState(refreshing, loadingMore, endReached, error);
+    }
+
+    // Getters
+    public boolean isRefreshing() { return refreshing; }
+    public boolean isLoadingMore() { return loadingMore; }
+    public boolean isEndReached() { return endReached; }
+    public String getError() { return error; }
+}
@@ -0,0 +1,175 @@
+package com.pineapple.capture.feed;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import com.google.firebase.Timestamp;
+import com.pineapple.capture.profile.UserProfile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * On-device copy of the newest feed posts and their authors, so the feed can render from disk
+ * on a cold start while the live query catches up. It only ever holds a bounded, recent slice.
+ */
+public class FeedStore extends SQLiteOpenHelper {
+    private static final String DATABASE_NAME = "feed_cache.db";
+    private static final int DATABASE_VERSION = 2;
+
+    // Only the head page is saved: posts of older pages are dropped once the live head arrives
+    static final int MAX_POSTS = MainFeedViewModel.PAGE_SIZE;
+    static final int MAX_AUTHORS = 200;
+    static final long MAX_AGE_MS = 7L * 24 * 60 * 60 * 1000;
+
+    private static volatile FeedStore instance;
+
+    public static FeedStore getInstance(Context context) {
+        if (instance == null) {
+            synchronized (FeedStore.class) {
+                if (instance == null) {
+                    instance = new FeedStore(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private FeedStore(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE posts ("
+            + "id TEXT PRIMARY KEY, "
+            + "user_id TEXT, "
+            + "content TEXT, "
+            + "image_url TEXT, "
+            + "ts_seconds INTEGER, "
+            + "ts_nanos INTEGER, "
+            + "likes INTEGER NOT NULL DEFAULT 0, "
+            + "like_shards INTEGER NOT NULL DEFAULT 0, "
+            + "cached_at INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX posts_timestamp ON posts (ts_seconds DESC, ts_nanos DESC)");
+        db.execSQL("CREATE TABLE authors ("
+            + "user_id TEXT PRIMARY KEY, "
+            + "name TEXT, "
+            + "bio TEXT, "
+            + "profile_image_url TEXT, "
+            + "cached_at INTEGER NOT NULL)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Everything here can be fetched again, so start over rather than migrate
+        db.execSQL("DROP TABLE IF EXISTS posts");
+        db.execSQL("DROP TABLE IF EXISTS authors");
+        onCreate(db);
+    }
+
+    /**
+     * Newest cached posts first, skipping anything older than {@link #MAX_AGE_MS}.
+     */
+    public List<FeedItem> loadPosts() {
+        List<FeedItem> posts = new ArrayList<>();
+        long oldest = System.currentTimeMillis() - MAX_AGE_MS;
+        try (Cursor cursor = getReadableDatabase().query("posts",
+                new String[] {"id", "user_id", "content", "image_url", "ts_seconds", "ts_nanos", "likes", "like_shards"},
+                "cached_at >= ?", new String[] {String.valueOf(oldest)},
+                null, null, "ts_seconds DESC, ts_nanos DESC", String.valueOf(MAX_POSTS))) {
+            while (cursor.moveToNext()) {
+                FeedItem item = new FeedItem();
+                item.setId(cursor.getString(0));
+                item.setUserId(cursor.getString(1));
+                item.setContent(cursor.getString(2));
+                item.setImageUrl(cursor.getString(3));
+                if (!cursor.isNull(4)) {
+                    item.setTimestamp(new Timestamp(cursor.getLong(4), cursor.getInt(5)));
+                }
+                item.setLikes(cursor.getInt(6));
+                item.setLikeShards(cursor.getInt(7));
+                posts.add(item);
+            }
+        }
+        return posts;
+    }
+
+    /**
+     * Replaces the cached posts with the given newest-first slice of the live feed.
+     */
+    public void savePosts(List<FeedItem> posts) {
+        SQLiteDatabase db = getWritableDatabase();
+        long now = System.currentTimeMillis();
+        db.beginTransaction();
+        try {
+            db.delete("posts", null, null);
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < posts.size() && i < MAX_POSTS; i++) {
+                FeedItem item = posts.get(i);
+                values.clear();
+                values.put("id", item.getId());
+                values.put("user_id", item.getUserId());
+                values.put("content", item.getContent());
+                values.put("image_url", item.getImageUrl());
+                if (item.getTimestamp() != null) {
+                    values.put("ts_seconds", item.getTimestamp().getSeconds());
+                    values.put("ts_nanos", item.getTimestamp().getNanoseconds());
+                }
+                values.put("likes", item.getLikes());
+                values.put("like_shards", item.getLikeShards());
+                values.put("cached_at", now);
+                db.insertWithOnConflict("posts", null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public Map<String, UserProfile> loadAuthors() {
+        Map<String, UserProfile> authors = new HashMap<>();
+        long oldest = System.currentTimeMillis() - MAX_AGE_MS;
+        try (Cursor cursor = getReadableDatabase().query("authors",
+                new String[] {"user_id", "name", "bio", "profile_image_url"},
+                "cached_at >= ?", new String[] {String.valueOf(oldest)},
+                null, null, null)) {
+            while (cursor.moveToNext()) {
+                UserProfile profile = new UserProfile(cursor.getString(1), cursor.getString(2));
+                profile.setProfileImageUrl(cursor.getString(3));
+                authors.put(cursor.getString(0), profile);
+            }
+        }
+        return authors;
+    }
+
+    /**
+     * Upserts the given authors, then trims the table by age and to {@link #MAX_AUTHORS} rows.
+     */
+    public void saveAuthors(Map<String, UserProfile> authors) {
+        SQLiteDatabase db = getWritableDatabase();
+        long now = System.currentTimeMillis();
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (Map.Entry<String, UserProfile> entry : authors.entrySet()) {
+                values.clear();
+                values.put("user_id", entry.getKey());
+                values.put("name", entry.getValue().getName());
+                values.put("bio", entry.getValue().getBio());
+                values.put("profile_image_url", entry.getValue().getProfileImageUrl());
+                values.put("cached_at", now);
+                db.insertWithOnConflict("authors", null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.delete("authors", "cached_at < ?", new String[] {String.valueOf(now - MAX_AGE_MS)});
+            db.execSQL("DELETE FROM authors WHERE user_id NOT IN "
+                + "(SELECT user_id FROM authors ORDER BY cached_at DESC LIMIT " + MAX_AUTHORS + ")");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.pineapple.capture.feed;
+
+import java.util.List;
+
+/**
+ * A feed read page by page with one-shot queries, as opposed to the live head of the
+ * everyone feed.
+ */
+public interface FeedTimeline {
+    interface Callback {
+        void onPage(List<FeedItem> page, boolean endReached);
+
+        void onError(Exception e);
+    }
+
+    void loadNextPage(Callback callback);
+
+    boolean isEndReached();
+}
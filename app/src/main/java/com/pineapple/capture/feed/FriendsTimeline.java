@@ -0,0 +1,160 @@
+package com.pineapple.capture.feed;
+
+import com.google.firebase.Timestamp;
+import com.pineapple.capture.data.DataDocument;
+import com.pineapple.capture.data.DataQuery;
+import com.pineapple.capture.data.DataSnapshot;
+import com.pineapple.capture.data.DataSource;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Pages through the posts of a set of friends, newest first. Firestore caps the size of an
+ * {@code in} filter, so friend ids are split into chunks that are queried concurrently, each
+ * with its own cursor, and the chunk results are k-way merged by timestamp.
+ *
+ * <p>Each chunk query needs the composite index {@code posts(userId ASC, timestamp DESC)}.
+ * Not thread-safe; call from a single thread, which is also where callbacks run.
+ */
+public class FriendsTimeline implements FeedTimeline {
+    private static final Comparator<Chunk> NEWEST_FIRST =
+        (a, b) -> compareTimestamps(b.buffer.peek().getTimestamp(), a.buffer.peek().getTimestamp());
+
+    private final DataSource data;
+    private final Executor executor;
+    private final int pageSize;
+    private final List<Chunk> chunks = new ArrayList<>();
+    private final Set<String> seen = new HashSet<>();
+
+    public FriendsTimeline(DataSource data, Collection<String> friendIds, int pageSize, Executor executor) {
+        this.data = data;
+        this.executor = executor;
+        this.pageSize = pageSize;
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(friendIds));
+        for (int start = 0; start < ids.size(); start += DataSource.MAX_IN_QUERY) {
+            chunks.add(new Chunk(new ArrayList<>(ids.subList(start, Math.min(ids.size(), start + DataSource.MAX_IN_QUERY)))));
+        }
+    }
+
+    @Override
+    public boolean isEndReached() {
+        for (Chunk chunk : chunks) {
+            if (!chunk.exhausted || !chunk.buffer.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void loadNextPage(Callback callback) {
+        fill(new ArrayList<>(pageSize), callback);
+    }
+
+    private void fill(List<FeedItem> page, Callback callback) {
+        // A chunk can only be merged once its next post is known
+        List<Chunk> refill = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            if (chunk.buffer.isEmpty() && !chunk.exhausted) {
+                refill.add(chunk);
+            }
+        }
+        if (!refill.isEmpty()) {
+            fetch(refill, () -> fill(page, callback), callback);
+            return;
+        }
+
+        PriorityQueue<Chunk> heads = new PriorityQueue<>(Math.max(1, chunks.size()), NEWEST_FIRST);
+        for (Chunk chunk : chunks) {
+            if (!chunk.buffer.isEmpty()) {
+                heads.add(chunk);
+            }
+        }
+        while (page.size() < pageSize) {
+            Chunk next = heads.poll();
+            if (next == null) {
+                callback.onPage(page, true);
+                return;
+            }
+            FeedItem item = next.buffer.poll();
+            if (seen.add(item.getId())) {
+                page.add(item);
+            }
+            if (!next.buffer.isEmpty()) {
+                heads.add(next);
+            } else if (!next.exhausted) {
+                fill(page, callback);
+                return;
+            }
+        }
+        callback.onPage(page, isEndReached());
+    }
+
+    private void fetch(List<Chunk> refill, Runnable onFetched, Callback callback) {
+        List<CompletableFuture<DataSnapshot>> reads = new ArrayList<>(refill.size());
+        for (Chunk chunk : refill) {
+            DataQuery query = DataQuery.collection("posts")
+                .whereIn("userId", chunk.authorIds)
+                .orderBy("timestamp", DataQuery.Direction.DESCENDING)
+                .limit(pageSize);
+            if (chunk.cursor != null) {
+                query = query.startAfter(chunk.cursor);
+            }
+            reads.add(data.get(query));
+        }
+
+        // Settles once every read has, whether or not it failed
+        CompletableFuture.allOf(reads.toArray(new CompletableFuture<?>[0])).whenCompleteAsync((unused, error) -> {
+            Exception failure = null;
+            for (int i = 0; i < refill.size(); i++) {
+                CompletableFuture<DataSnapshot> read = reads.get(i);
+                if (read.isCompletedExceptionally()) {
+                    failure = DataSource.cause(read.handle((value, readError) -> readError).join());
+                    continue;
+                }
+                Chunk chunk = refill.get(i);
+                List<DataDocument> documents = read.join().getDocuments();
+                for (DataDocument doc : documents) {
+                    chunk.buffer.add(FeedItemCodec.INSTANCE.decode(doc));
+                }
+                if (!documents.isEmpty()) {
+                    chunk.cursor = documents.get(documents.size() - 1);
+                }
+                chunk.exhausted = documents.size() < pageSize;
+            }
+            if (failure != null) {
+                callback.onError(failure);
+            } else {
+                onFetched.run();
+            }
+        }, executor);
+    }
+
+    // Null timestamps sort as the oldest posts
+    private static int compareTimestamps(Timestamp a, Timestamp b) {
+        if (a == null || b == null) {
+            return a == b ? 0 : (a == null ? -1 : 1);
+        }
+        return a.compareTo(b);
+    }
+
+    private static class Chunk {
+        final List<String> authorIds;
+        final ArrayDeque<FeedItem> buffer = new ArrayDeque<>();
+        DataDocument cursor;
+        boolean exhausted;
+
+        Chunk(List<String> authorIds) {
+            this.authorIds = authorIds;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.pineapple.capture.feed;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Last known like counts of sharded posts. Posts decoded from their documents carry no count of
+ * their own, so the cached count is copied onto them, and the shards are only summed again once
+ * the count is older than {@link #MAX_AGE_MS}. Confined to one thread.
+ */
+class LikeCountCache {
+    static final long MAX_AGE_MS = 60_000;
+
+    private static class Entry {
+        long count;
+        long fetchedAt;
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /** Copies the cached count onto a post freshly decoded from its document. */
+    FeedItem apply(FeedItem post) {
+        Entry entry = entries.get(post.getId());
+        if (post.getLikeShards() > 0 && entry != null) {
+            post.setLikes((int) entry.count);
+        }
+        return post;
+    }
+
+    /**
+     * Returns the sharded posts whose count is missing or too old, and marks them as fetched so
+     * a refresh already in flight is not started twice.
+     */
+    List<FeedItem> takeStale(List<FeedItem> posts, long now) {
+        List<FeedItem> stale = new ArrayList<>();
+        for (FeedItem post : posts) {
+            if (post.getLikeShards() <= 0) {
+                continue;
+            }
+            Entry entry = entries.get(post.getId());
+            if (entry == null) {
+                entry = new Entry();
+                entry.count = post.getLikes();
+                entries.put(post.getId(), entry);
+            } else if (now - entry.fetchedAt < MAX_AGE_MS) {
+                continue;
+            }
+            entry.fetchedAt = now;
+            stale.add(post);
+        }
+        return stale;
+    }
+
+    void put(String postId, long count, long now) {
+        Entry entry = entries.get(postId);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(postId, entry);
+        }
+        entry.count = count;
+        entry.fetchedAt = now;
+    }
+
+    /** Applies a like made on this device before the shards are read again. */
+    void add(String postId, long delta) {
+        Entry entry = entries.get(postId);
+        if (entry != null) {
+            entry.count += delta;
+        }
+    }
+
+    /** Forgets a count whose refresh failed, so the next pass retries it. */
+    void invalidate(String postId) {
+        entries.remove(postId);
+    }
+}
@@ -0,0 +1,53 @@
+package com.pineapple.capture.feed;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts likes across shard documents so that concurrent likes on a popular post land on
+ * different documents instead of queueing on one. Each user's likes on a post go to the shard
+ * {@link #pinnedShard} picks, in the commit that sets or removes their like marker, and the
+ * count is the sum over all of a post's shards.
+ *
+ * <p>Posts with {@link FeedItem#getLikeShards()} of 0 predate sharding and keep counting in
+ * their own {@code likes} field. All methods block on the backend; call them off the main thread.
+ */
+public class LikeCounter {
+    public static final int DEFAULT_SHARDS = 10;
+
+    public interface Backend {
+        /** Sums every shard of each post; posts without shards count 0. */
+        Map<String, Long> sumShards(List<String> postIds) throws Exception;
+    }
+
+    private final Backend backend;
+
+    public LikeCounter(Backend backend) {
+        this.backend = backend;
+    }
+
+    /**
+     * Picks the same shard for every like of one client on one post, so that a like and its
+     * undo land on the same document.
+     */
+    public static int pinnedShard(FeedItem post, String clientId) {
+        return Math.floorMod((clientId + "/" + post.getId()).hashCode(), post.getLikeShards());
+    }
+
+    /**
+     * Returns the current count of each sharded post by id. Unsharded posts are left out since
+     * their document already carries the count.
+     */
+    public Map<String, Long> count(Collection<FeedItem> posts) throws Exception {
+        List<String> sharded = new ArrayList<>();
+        for (FeedItem post : posts) {
+            if (post.getLikeShards() > 0) {
+                sharded.add(post.getId());
+            }
+        }
+        return sharded.isEmpty() ? Collections.emptyMap() : backend.sumShards(sharded);
+    }
+}
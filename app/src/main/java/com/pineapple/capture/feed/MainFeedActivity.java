@@ -1,29 +1,114 @@
 package com.pineapple.capture.feed;
 
+import android.content.Intent;
 import android.os.Bundle;
+import android.view.ViewTreeObserver;
+import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
+import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 import com.pineapple.capture.R;
+import com.pineapple.capture.StartupTimer;
+import com.pineapple.capture.auth.AuthActivity;
+import com.pineapple.capture.data.DataExecutors;
+import com.pineapple.capture.data.DataSources;
+import com.pineapple.capture.image.ImageLoader;
+import java.util.Objects;
 
 public class MainFeedActivity extends AppCompatActivity {
+    // Start fetching the next page when this many posts are left below the viewport
+    private static final int LOAD_MORE_THRESHOLD = 5;
+
     private MainFeedViewModel viewModel;
     private RecyclerView recyclerView;
+    private SwipeRefreshLayout refreshLayout;
+    private FeedAdapter adapter;
+    private FeedImagePrefetcher prefetcher;
+    private boolean fullyDrawn;
+    // The error last shown, so a page state that still carries it does not show it again
+    private String shownError;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        StartupTimer.mark("feed activity created");
+        // Answered from the session cache while Firebase Auth is still starting. Leaving before
+        // any content is set means this activity never draws a frame.
+        if (DataSources.auth().getCurrentUserId() == null) {
+            startActivity(new Intent(this, AuthActivity.class));
+            finish();
+            return;
+        }
+        // The cached session may have expired or been revoked while the app was closed
+        DataSources.auth().restoredUserId().thenAcceptAsync(userId -> {
+            if (userId == null && !isFinishing()) {
+                startActivity(new Intent(this, AuthActivity.class));
+                finish();
+            }
+        }, DataExecutors.main());
         setContentView(R.layout.activity_main_feed);
 
         viewModel = new ViewModelProvider(this).get(MainFeedViewModel.class);
         
         recyclerView = findViewById(R.id.feed_recycler_view);
-        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        recyclerView.setLayoutManager(layoutManager);
+        adapter = new FeedAdapter();
+        adapter.setOnLikeClickListener(viewModel::toggleLike);
+        recyclerView.setAdapter(adapter);
+        FeedAdapter.configure(recyclerView);
+        prefetcher = new FeedImagePrefetcher(ImageLoader.getInstance(this), adapter, layoutManager);
+        recyclerView.addOnScrollListener(prefetcher);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView view, int dx, int dy) {
+                if (dy > 0 && layoutManager.findLastVisibleItemPosition()
+                        >= layoutManager.getItemCount() - LOAD_MORE_THRESHOLD) {
+                    viewModel.loadMore();
+                }
+            }
+        });
         
+        recyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                recyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                StartupTimer.mark("feed first frame");
+                return true;
+            }
+        });
+
         // Observe feed updates
-        viewModel.getFeedItems().observe(this, feedItems -> {
-            // Update RecyclerView adapter with new items
+        viewModel.getFeedUpdates().observe(this, snapshot -> {
+            adapter.submitSnapshot(snapshot);
+            // Stored or live posts are on screen: the start-up is complete
+            if (!fullyDrawn && !snapshot.getItems().isEmpty()) {
+                fullyDrawn = true;
+                StartupTimer.mark("feed posts shown");
+                reportFullyDrawn();
+            }
         });
+        viewModel.getAuthors().observe(this, adapter::setAuthors);
+
+        refreshLayout = findViewById(R.id.feed_refresh);
+        refreshLayout.setOnRefreshListener(viewModel::refresh);
+        viewModel.getPageState().observe(this, state -> {
+            refreshLayout.setRefreshing(state.isRefreshing());
+            String error = state.getError();
+            if (error != null && !Objects.equals(error, shownError)) {
+                Toast.makeText(this, error, Toast.LENGTH_SHORT).show();
+            }
+            shownError = error;
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (prefetcher != null) {
+            prefetcher.cancelAll();
+        }
+        super.onDestroy();
     }
 } 
\ No newline at end of file
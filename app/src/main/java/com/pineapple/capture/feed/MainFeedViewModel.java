@@ -1,44 +1,642 @@
 package com.pineapple.capture.feed;
 
+import android.app.Application;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
 import androidx.lifecycle.MutableLiveData;
-import androidx.lifecycle.ViewModel;
-import com.google.firebase.firestore.FirebaseFirestore;
-import java.util.List;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.pineapple.capture.data.AuthSource;
+import com.pineapple.capture.data.DataChange;
+import com.pineapple.capture.data.DataDocument;
+import com.pineapple.capture.data.DataExecutors;
+import com.pineapple.capture.data.DataQuery;
+import com.pineapple.capture.data.DataSnapshot;
+import com.pineapple.capture.data.DataSource;
+import com.pineapple.capture.data.DataSources;
+import com.pineapple.capture.data.IncrementalList;
+import com.pineapple.capture.data.ListSnapshot;
+import com.pineapple.capture.data.ListenerManager;
+import com.pineapple.capture.data.SnapshotPipeline;
+import com.pineapple.capture.data.SnapshotRepository;
+import com.pineapple.capture.data.WriteQueue;
+import com.pineapple.capture.profile.UserProfile;
+import com.pineapple.capture.profile.UserProfileCodec;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class MainFeedViewModel extends AndroidViewModel {
+    private static final String TAG = "MainFeedViewModel";
+
+    static final int PAGE_SIZE = 20;
 
-public class MainFeedViewModel extends ViewModel {
-    private FirebaseFirestore db;
-    private MutableLiveData<List<FeedItem>> feedItems;
+    private final DataSource data;
+    private final AuthSource auth;
+    private final FeedStore store;
+    private final Executor mapping = DataExecutors.mapping();
+    private SnapshotPipeline<ListSnapshot<FeedItem>> feedUpdates;
+    private MediatorLiveData<List<FeedItem>> feedItems;
+    private MutableLiveData<FeedPageState> pageState;
+    private MutableLiveData<Map<String, UserProfile>> authors;
+    private final AtomicReference<List<FeedItem>> pendingSave = new AtomicReference<>();
+    private final DataSourceLikeBackend likes;
+    private final LikeCounter likeCounter;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable resubscribe = () -> mapping.execute(this::resubscribeHead);
+
+    // Everything below is confined to the mapping thread.
+    // Newest posts first; the first headSize entries are kept live by a snapshot listener and
+    // the rest are older pages fetched once on demand with startAfter cursors
+    private final IncrementalList<FeedItem> items = new IncrementalList<>(FeedItem::getId);
+    private int headSize;
+    private volatile ListenerRegistration headRegistration;
+    // Failures of the head listener in a row
+    private int headFailures;
+    private DataDocument headTail;
+    private DataDocument olderCursor;
+    private boolean pagedPastHead;
+    private int generation;
+    private FeedPageState state = FeedPageState.initial();
+    // True while the list still holds posts restored from the local store
+    private boolean showingStored;
+    private final Map<String, UserProfile> authorsById = new HashMap<>();
+    private final Set<String> requestedAuthors = new HashSet<>();
+    private final LikeCountCache likeCounts = new LikeCountCache();
+    // Whether each post tapped this session is liked, read from its marker on the first tap
+    private final Map<String, Boolean> likedPosts = new HashMap<>();
+    // Taps on posts whose marker is still being read
+    private final Map<String, Integer> pendingTaps = new HashMap<>();
+    private volatile FeedMode mode = FeedMode.EVERYONE;
+    // Set in FRIENDS and TIMELINE modes, for FRIENDS once the friends list has been read
+    private FeedTimeline timeline;
+    private boolean resumedFanouts;
+
+    public MainFeedViewModel(Application application) {
+        this(application, DataSources.data(), DataSources.auth());
+    }
 
-    public MainFeedViewModel() {
-        db = FirebaseFirestore.getInstance();
-        feedItems = new MutableLiveData<>(new ArrayList<>());
+    public MainFeedViewModel(Application application, DataSource data, AuthSource auth) {
+        super(application);
+        this.data = data;
+        this.auth = auth;
+        store = FeedStore.getInstance(application);
+        likes = new DataSourceLikeBackend(data, WriteQueue.getInstance(application, data));
+        likeCounter = new LikeCounter(likes);
+        feedUpdates = SnapshotPipeline.forList("feed");
+        feedItems = new MediatorLiveData<>();
+        feedItems.setValue(new ArrayList<>());
+        feedItems.addSource(feedUpdates.getLiveData(), snapshot -> feedItems.setValue(snapshot.getItems()));
+        pageState = new MutableLiveData<>(state);
+        authors = new MutableLiveData<>(Collections.emptyMap());
+        // Queued ahead of the listener, so stored posts are in place before the first snapshot
+        mapping.execute(this::restoreFromStore);
         loadFeedItems();
     }
 
+    private void restoreFromStore() {
+        long snapshotGeneration = feedUpdates.begin();
+        for (FeedItem item : store.loadPosts()) {
+            items.add(item);
+            if (item.getLikeShards() > 0) {
+                // Shown until the shards are summed again
+                likeCounts.put(item.getId(), item.getLikes(), 0);
+            }
+        }
+        showingStored = items.size() > 0;
+        authorsById.putAll(store.loadAuthors());
+        authors.postValue(new HashMap<>(authorsById));
+        feedUpdates.publish(snapshotGeneration, items.snapshot());
+    }
+
+    private static DataQuery feedQuery() {
+        return DataQuery.collection("posts")
+            .orderBy("timestamp", DataQuery.Direction.DESCENDING);
+    }
+
     private void loadFeedItems() {
-        db.collection("posts")
-            .orderBy("timestamp", com.google.firebase.firestore.Query.Direction.DESCENDING)
-            .addSnapshotListener((value, error) -> {
+        headRegistration = ListenerManager.getInstance().manage("feed", resumed -> {
+            // The first snapshot of every listener, whether new, resumed or started again after
+            // an error, adds the whole head page rather than the changes since the last one
+            boolean[] first = {true};
+            return data.listen(feedQuery().limit(PAGE_SIZE), mapping, (value, error) -> {
+                boolean firstPage = first[0];
+                first[0] = false;
                 if (error != null) {
+                    onHeadError(error);
                     return;
                 }
-                
-                List<FeedItem> items = new ArrayList<>();
                 if (value != null) {
-                    for (com.google.firebase.firestore.DocumentSnapshot doc : value) {
-                        FeedItem item = doc.toObject(FeedItem.class);
-                        if (item != null) {
-                            items.add(item);
-                        }
-                    }
+                    headFailures = 0;
+                    applyHeadPage(value, firstPage);
                 }
-                feedItems.setValue(items);
             });
+        });
+    }
+
+    // The listener has stopped; the posts shown stay until a new one's first snapshot
+    private void onHeadError(Exception error) {
+        Log.w(TAG, "Feed listener failed", error);
+        detach();
+        setState(state.withRefreshing(false).withError(error.getMessage()));
+        handler.postDelayed(resubscribe, SnapshotRepository.resubscribeDelayMillis(++headFailures));
+    }
+
+    private void resubscribeHead() {
+        // A restart or mode change since the error has already replaced the listener
+        if (headRegistration == null && mode == FeedMode.EVERYONE) {
+            loadFeedItems();
+        }
+    }
+
+    /**
+     * @param firstPage true for the first snapshot of a listener, which adds the whole head
+     *                  page again rather than the changes since the last snapshot
+     */
+    private void applyHeadPage(DataSnapshot value, boolean firstPage) {
+        long snapshotGeneration = feedUpdates.begin();
+        List<DataDocument> documents = value.getDocuments();
+        headTail = documents.isEmpty() ? null : documents.get(documents.size() - 1);
+
+        // A full head page drops its oldest posts when newer ones arrive. Once older pages are
+        // loaded those posts sit between the head and the first older page, so keep them.
+        Timestamp tail = headTail != null ? headTail.getTimestamp("timestamp") : null;
+        boolean keepPushedOut = pagedPastHead && documents.size() == PAGE_SIZE;
+
+        // A first page is applied over what the old listener's head held
+        List<String> previousHead = new ArrayList<>();
+        if (firstPage) {
+            for (int i = 0; i < headSize; i++) {
+                previousHead.add(items.get(i).getId());
+            }
+            headSize = 0;
+        }
+
+        for (DataChange change : value.getChanges()) {
+            switch (change.getType()) {
+                case ADDED: {
+                    FeedItem item = toFeedItem(change.getDocument());
+                    int existing = items.indexOf(item.getId());
+                    if (existing >= 0) {
+                        // Already loaded as part of an older page
+                        items.move(existing, change.getNewIndex());
+                        items.set(change.getNewIndex(), item);
+                    } else {
+                        items.insert(change.getNewIndex(), item);
+                    }
+                    headSize++;
+                    break;
+                }
+                case MODIFIED: {
+                    items.move(change.getOldIndex(), change.getNewIndex());
+                    items.set(change.getNewIndex(), toFeedItem(change.getDocument()));
+                    break;
+                }
+                case REMOVED: {
+                    int index = change.getOldIndex();
+                    FeedItem item = items.get(index);
+                    headSize--;
+                    if (keepPushedOut && compareTimestamps(item.getTimestamp(), tail) <= 0) {
+                        movePushedOut(items, index, headSize);
+                    } else {
+                        items.remove(index);
+                    }
+                    break;
+                }
+            }
+        }
+
+        // Posts of the old head the catch-up page did not add again were deleted or pushed out
+        for (String id : previousHead) {
+            int index = items.indexOf(id);
+            if (index >= headSize
+                    && !(keepPushedOut && compareTimestamps(items.get(index).getTimestamp(), tail) <= 0)) {
+                items.remove(index);
+            }
+        }
+
+        // Stored posts the live page did not reconcile were deleted or belong to older pages
+        if (showingStored) {
+            while (items.size() > headSize) {
+                items.remove(items.size() - 1);
+            }
+            showingStored = false;
+        }
+
+        FeedPageState next = state.withRefreshing(false).withError(null);
+        if (!pagedPastHead) {
+            next = next.withEndReached(documents.size() < PAGE_SIZE);
+        }
+        setState(next);
+        ListSnapshot<FeedItem> snapshot = items.snapshot();
+        feedUpdates.publish(snapshotGeneration, snapshot);
+
+        List<FeedItem> head = snapshot.getItems().subList(0, headSize);
+        saveHead(head);
+        loadAuthors(head);
+        refreshLikes(head);
+    }
+
+    // Coalesces saves, so a burst of snapshots costs one write of the latest head page
+    private void saveHead(List<FeedItem> head) {
+        if (pendingSave.getAndSet(head) == null) {
+            DataExecutors.io().execute(() -> store.savePosts(pendingSave.getAndSet(null)));
+        }
+    }
+
+    /**
+     * Fetches the profiles of authors not requested yet this session. Stored authors are shown
+     * until the fresh copies arrive.
+     */
+    private void loadAuthors(List<FeedItem> posts) {
+        List<String> missing = new ArrayList<>();
+        for (FeedItem item : posts) {
+            String userId = item.getUserId();
+            if (userId != null && requestedAuthors.add(userId)) {
+                missing.add(userId);
+            }
+        }
+        for (int start = 0; start < missing.size(); start += DataSource.MAX_IN_QUERY) {
+            List<String> chunk = new ArrayList<>(missing.subList(start, Math.min(missing.size(), start + DataSource.MAX_IN_QUERY)));
+            data.get(DataQuery.collection("users").whereIn(DataQuery.DOCUMENT_ID, chunk))
+                .whenCompleteAsync((value, error) -> {
+                    if (error != null) {
+                        requestedAuthors.removeAll(chunk);
+                        return;
+                    }
+                    Map<String, UserProfile> fetched = new HashMap<>();
+                    for (DataDocument doc : value.getDocuments()) {
+                        fetched.put(doc.getId(), UserProfileCodec.INSTANCE.decode(doc));
+                    }
+                    authorsById.putAll(fetched);
+                    authors.postValue(new HashMap<>(authorsById));
+                    DataExecutors.io().execute(() -> store.saveAuthors(fetched));
+                }, mapping);
+        }
+    }
+
+    public void loadMore() {
+        mapping.execute(() -> {
+            if (state.isRefreshing() || state.isLoadingMore() || state.isEndReached()) {
+                return;
+            }
+            if (mode != FeedMode.EVERYONE) {
+                if (timeline != null) {
+                    setState(state.withLoadingMore(true));
+                    loadTimelinePage();
+                }
+                return;
+            }
+            DataDocument cursor = olderCursor != null ? olderCursor : headTail;
+            if (cursor == null) {
+                return;
+            }
+
+            setState(state.withLoadingMore(true));
+            int requestGeneration = generation;
+            data.get(feedQuery().startAfter(cursor).limit(PAGE_SIZE))
+                .whenCompleteAsync((value, error) -> {
+                    if (requestGeneration != generation) {
+                        return;
+                    }
+                    if (error != null) {
+                        setState(state.withLoadingMore(false).withError(DataSource.cause(error).getMessage()));
+                    } else {
+                        applyOlderPage(value.getDocuments());
+                    }
+                }, mapping);
+        });
+    }
+
+    private void applyOlderPage(List<DataDocument> documents) {
+        long snapshotGeneration = feedUpdates.begin();
+        if (!documents.isEmpty()) {
+            olderCursor = documents.get(documents.size() - 1);
+        }
+        List<FeedItem> page = new ArrayList<>(documents.size());
+        for (DataDocument doc : documents) {
+            if (!items.contains(doc.getId())) {
+                FeedItem item = toFeedItem(doc);
+                items.add(item);
+                page.add(item);
+            }
+        }
+        pagedPastHead = true;
+        setState(state
+            .withLoadingMore(false)
+            .withEndReached(documents.size() < PAGE_SIZE)
+            .withError(null));
+        feedUpdates.publish(snapshotGeneration, items.snapshot());
+        loadAuthors(page);
+        refreshLikes(page);
+    }
+
+    public void refresh() {
+        mapping.execute(this::restart);
+    }
+
+    public void setFeedMode(FeedMode mode) {
+        mapping.execute(() -> {
+            if (this.mode != mode) {
+                this.mode = mode;
+                restart();
+            }
+        });
+    }
+
+    private void restart() {
+        detach();
+        headFailures = 0;
+        long snapshotGeneration = feedUpdates.begin();
+        items.clear();
+        headSize = 0;
+        headTail = null;
+        olderCursor = null;
+        pagedPastHead = false;
+        showingStored = false;
+        timeline = null;
+        generation++;
+        setState(FeedPageState.initial());
+        feedUpdates.publish(snapshotGeneration, items.snapshot());
+        // Without fan-out on write there is no timeline to read, so the same posts are queried
+        if (mode == FeedMode.FRIENDS || (mode == FeedMode.TIMELINE && !PostPublisher.FAN_OUT_ON_WRITE)) {
+            loadFriendsTimeline();
+        } else if (mode == FeedMode.TIMELINE) {
+            loadMaterializedTimeline();
+        } else {
+            loadFeedItems();
+        }
+    }
+
+    private void loadMaterializedTimeline() {
+        String userId = auth.getCurrentUserId();
+        if (userId == null) {
+            setState(state.withRefreshing(false).withEndReached(true));
+            return;
+        }
+        if (!resumedFanouts) {
+            // Finish spreading any of this user's own posts an earlier session left half done
+            new PostPublisher(data).resumeIncomplete(userId);
+            resumedFanouts = true;
+        }
+        timeline = new MaterializedTimeline(data, userId, PAGE_SIZE, mapping);
+        loadTimelinePage();
+    }
+
+    private void loadFriendsTimeline() {
+        String userId = auth.getCurrentUserId();
+        if (userId == null) {
+            setState(state.withRefreshing(false).withEndReached(true));
+            return;
+        }
+        int requestGeneration = generation;
+        data.get(DataQuery.collection("users/" + userId + "/friends"))
+            .whenCompleteAsync((value, error) -> {
+                if (requestGeneration != generation) {
+                    return;
+                }
+                if (error != null) {
+                    setState(state.withRefreshing(false).withError(DataSource.cause(error).getMessage()));
+                    return;
+                }
+                List<String> friendIds = new ArrayList<>();
+                for (DataDocument doc : value.getDocuments()) {
+                    friendIds.add(doc.getId());
+                }
+                timeline = new FriendsTimeline(data, friendIds, PAGE_SIZE, mapping);
+                loadTimelinePage();
+            }, mapping);
+    }
+
+    private void loadTimelinePage() {
+        int requestGeneration = generation;
+        timeline.loadNextPage(new FeedTimeline.Callback() {
+            @Override
+            public void onPage(List<FeedItem> page, boolean endReached) {
+                if (requestGeneration != generation) {
+                    return;
+                }
+                long snapshotGeneration = feedUpdates.begin();
+                for (FeedItem item : page) {
+                    items.add(likeCounts.apply(item));
+                }
+                setState(state
+                    .withRefreshing(false)
+                    .withLoadingMore(false)
+                    .withEndReached(endReached)
+                    .withError(null));
+                feedUpdates.publish(snapshotGeneration, items.snapshot());
+                loadAuthors(page);
+                refreshLikes(page);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                if (requestGeneration == generation) {
+                    setState(state.withRefreshing(false).withLoadingMore(false).withError(e.getMessage()));
+                }
+            }
+        });
+    }
+
+    private void setState(FeedPageState state) {
+        this.state = state;
+        pageState.postValue(state);
+    }
+
+    private void detach() {
+        handler.removeCallbacks(resubscribe);
+        ListenerRegistration registration = headRegistration;
+        if (registration != null) {
+            registration.remove();
+            headRegistration = null;
+        }
+    }
+
+    private FeedItem toFeedItem(DataDocument doc) {
+        FeedItem item = FeedItemCodec.INSTANCE.decode(doc);
+        if (item == null) {
+            item = new FeedItem();
+            item.setId(doc.getId());
+        }
+        return likeCounts.apply(item);
+    }
+
+    /**
+     * Sums the like shards of posts whose cached count has expired, off the mapping thread.
+     */
+    private void refreshLikes(List<FeedItem> posts) {
+        List<FeedItem> stale = likeCounts.takeStale(posts, System.currentTimeMillis());
+        if (stale.isEmpty()) {
+            return;
+        }
+        DataExecutors.io().execute(() -> {
+            try {
+                Map<String, Long> counts = likeCounter.count(stale);
+                mapping.execute(() -> applyLikeCounts(counts));
+            } catch (Exception e) {
+                mapping.execute(() -> {
+                    for (FeedItem post : stale) {
+                        likeCounts.invalidate(post.getId());
+                    }
+                });
+            }
+        });
+    }
+
+    private void applyLikeCounts(Map<String, Long> counts) {
+        long now = System.currentTimeMillis();
+        boolean changed = false;
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            likeCounts.put(count.getKey(), count.getValue(), now);
+            changed |= setLikes(count.getKey(), count.getValue().intValue());
+        }
+        if (changed) {
+            feedUpdates.publish(feedUpdates.begin(), items.snapshot());
+        }
+    }
+
+    /**
+     * Likes the post, or takes back the user's like. The count shown changes at once; the write
+     * goes through the write queue, which folds quick taps into one net like or unlike.
+     */
+    public void toggleLike(FeedItem post) {
+        String userId = auth.getCurrentUserId();
+        if (userId == null) {
+            return;
+        }
+        mapping.execute(() -> {
+            Boolean liked = likedPosts.get(post.getId());
+            if (liked != null) {
+                setLiked(post, userId, !liked);
+                return;
+            }
+            Integer taps = pendingTaps.get(post.getId());
+            pendingTaps.put(post.getId(), taps == null ? 1 : taps + 1);
+            if (taps != null) {
+                return;
+            }
+            data.get(DataSourceLikeBackend.likePath(post.getId(), userId)).whenCompleteAsync((marker, error) -> {
+                int tapped = pendingTaps.remove(post.getId());
+                if (error != null) {
+                    Log.w(TAG, "Reading the like on " + post.getId() + " failed, taking it as unliked", error);
+                }
+                boolean wasLiked = error == null && marker.exists();
+                likedPosts.put(post.getId(), wasLiked);
+                // An even number of taps leaves the like as it was
+                if (tapped % 2 == 1) {
+                    setLiked(post, userId, !wasLiked);
+                }
+            }, mapping);
+        });
+    }
+
+    private void setLiked(FeedItem post, String userId, boolean liked) {
+        likedPosts.put(post.getId(), liked);
+        addLikes(post.getId(), liked ? 1 : -1);
+        likes.setLiked(post, userId, liked);
+    }
+
+    private void addLikes(String postId, int delta) {
+        likeCounts.add(postId, delta);
+        int index = items.indexOf(postId);
+        if (index >= 0 && setLikes(postId, items.get(index).getLikes() + delta)) {
+            feedUpdates.publish(feedUpdates.begin(), items.snapshot());
+        }
+    }
+
+    /**
+     * Posts a captured photo. It is shrunk and uploaded in the background, and the post shows up
+     * in the feed once the upload has finished, even if the app is closed in the meantime.
+     */
+    public void post(String content, Uri capture) {
+        String userId = auth.getCurrentUserId();
+        if (userId == null) {
+            return;
+        }
+        PostUploadWorker.enqueue(getApplication(), userId, content, capture).whenCompleteAsync((postId, error) -> {
+            if (error != null) {
+                setState(state.withError(DataSource.cause(error).getMessage()));
+            }
+        }, mapping);
+    }
+
+    // Replaces rather than mutates the post, since the published snapshots share it
+    private boolean setLikes(String postId, int likes) {
+        int index = items.indexOf(postId);
+        if (index < 0 || items.get(index).getLikes() == likes) {
+            return false;
+        }
+        items.set(index, items.get(index).withLikes(likes));
+        return true;
+    }
+
+    /**
+     * Moves a post pushed out of the head to its place among the posts after the head, which
+     * are newest first. Posts pushed out by one snapshot are removed newest first, and each
+     * lands behind the ones before it rather than at the head's edge.
+     *
+     * @param headSize the size of the head without the post
+     */
+    static void movePushedOut(IncrementalList<FeedItem> items, int index, int headSize) {
+        Timestamp timestamp = items.get(index).getTimestamp();
+        // The first post after the head that is older than this one; the head ends at
+        // headSize + 1 while the post is still in it
+        int low = headSize + 1;
+        int high = items.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareTimestamps(items.get(middle).getTimestamp(), timestamp) >= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        // The index once the post has left its place in the head
+        items.move(index, low - 1);
+    }
+
+    // Null timestamps sort as the oldest posts
+    private static int compareTimestamps(Timestamp a, Timestamp b) {
+        if (a == null || b == null) {
+            return a == b ? 0 : (a == null ? -1 : 1);
+        }
+        return a.compareTo(b);
     }
 
     public LiveData<List<FeedItem>> getFeedItems() {
         return feedItems;
     }
-} 
\ No newline at end of file
+
+    public LiveData<ListSnapshot<FeedItem>> getFeedUpdates() {
+        return feedUpdates.getLiveData();
+    }
+
+    public LiveData<Map<String, UserProfile>> getAuthors() {
+        return authors;
+    }
+
+    public LiveData<FeedPageState> getPageState() {
+        return pageState;
+    }
+
+    public FeedMode getFeedMode() {
+        return mode;
+    }
+
+    @Override
+    protected void onCleared() {
+        detach();
+    }
+}
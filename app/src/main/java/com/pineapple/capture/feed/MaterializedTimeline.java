@@ -0,0 +1,93 @@
+package com.pineapple.capture.feed;
+
+import com.pineapple.capture.data.DataDocument;
+import com.pineapple.capture.data.DataQuery;
+import com.pineapple.capture.data.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Pages through the timeline {@link TimelineFanout} writes for a user: one ordered query over
+ * {@code users/{uid}/timeline}, then one lookup of the referenced posts. Entries whose post no
+ * longer exists are skipped.
+ */
+public class MaterializedTimeline implements FeedTimeline {
+    private final DataSource data;
+    private final String userId;
+    private final int pageSize;
+    private final Executor executor;
+    private DataDocument cursor;
+    private boolean endReached;
+
+    public MaterializedTimeline(DataSource data, String userId, int pageSize, Executor executor) {
+        if (pageSize > DataSource.MAX_IN_QUERY) {
+            throw new IllegalArgumentException("pageSize must be at most " + DataSource.MAX_IN_QUERY);
+        }
+        this.data = data;
+        this.userId = userId;
+        this.pageSize = pageSize;
+        this.executor = executor;
+    }
+
+    @Override
+    public boolean isEndReached() {
+        return endReached;
+    }
+
+    @Override
+    public void loadNextPage(Callback callback) {
+        DataQuery query = DataQuery.collection("users/" + userId + "/timeline")
+            .orderBy("timestamp", DataQuery.Direction.DESCENDING)
+            .limit(pageSize);
+        if (cursor != null) {
+            query = query.startAfter(cursor);
+        }
+        data.get(query).whenCompleteAsync((value, error) -> {
+            if (error != null) {
+                callback.onError(DataSource.cause(error));
+                return;
+            }
+            List<DataDocument> entries = value.getDocuments();
+            endReached = entries.size() < pageSize;
+            if (entries.isEmpty()) {
+                callback.onPage(new ArrayList<>(), true);
+                return;
+            }
+            cursor = entries.get(entries.size() - 1);
+            List<String> postIds = new ArrayList<>(entries.size());
+            for (DataDocument entry : entries) {
+                postIds.add(entry.getId());
+            }
+            loadPosts(postIds, callback);
+        }, executor);
+    }
+
+    private void loadPosts(List<String> postIds, Callback callback) {
+        data.get(DataQuery.collection("posts").whereIn(DataQuery.DOCUMENT_ID, postIds))
+            .whenCompleteAsync((value, error) -> {
+                if (error != null) {
+                    callback.onError(DataSource.cause(error));
+                    return;
+                }
+                Map<String, FeedItem> byId = new HashMap<>();
+                for (DataDocument doc : value.getDocuments()) {
+                    FeedItem item = FeedItemCodec.INSTANCE.decode(doc);
+                    if (item != null) {
+                        byId.put(doc.getId(), item);
+                    }
+                }
+                // whereIn on the document id returns posts in id order; restore timeline order
+                List<FeedItem> page = new ArrayList<>(postIds.size());
+                for (String postId : postIds) {
+                    FeedItem item = byId.get(postId);
+                    if (item != null) {
+                        page.add(item);
+                    }
+                }
+                callback.onPage(page, endReached);
+            }, executor);
+    }
+}
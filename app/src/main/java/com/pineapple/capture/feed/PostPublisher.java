@@ -0,0 +1,90 @@
+package com.pineapple.capture.feed;
+
+import android.util.Log;
+import com.google.firebase.Timestamp;
+import com.pineapple.capture.data.DataBatch;
+import com.pineapple.capture.data.DataExecutors;
+import com.pineapple.capture.data.DataSource;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Creates posts. With fan-out on write enabled, the post is stored together with an empty
+ * fan-out checkpoint, so a fan-out interrupted at any point is found again by
+ * {@link #resumeIncomplete(String)}. Fan-outs run on {@link DataExecutors#fanout()}.
+ */
+public class PostPublisher {
+    private static final String TAG = "PostPublisher";
+
+    /**
+     * Whether new posts are copied into their followers' timelines, which
+     * {@link FeedMode#TIMELINE} reads. Needs the collection group index on {@code friends.userId}
+     * and the timeline rules in {@code firestore.rules}.
+     */
+    public static final boolean FAN_OUT_ON_WRITE = true;
+
+    private final DataSource data;
+    private final TimelineFanout fanout;
+    private final boolean fanOutOnWrite;
+
+    public PostPublisher(DataSource data) {
+        this(data, FAN_OUT_ON_WRITE);
+    }
+
+    PostPublisher(DataSource data, boolean fanOutOnWrite) {
+        this.data = data;
+        this.fanout = new TimelineFanout(new DataSourceFanoutBackend(data));
+        this.fanOutOnWrite = fanOutOnWrite;
+    }
+
+    /**
+     * Stores the post, assigning an id, timestamp and {@link LikeCounter#DEFAULT_SHARDS} like
+     * shards where it has none. The returned future completes
+     * once the post is written; the fan-out continues in the background.
+     */
+    public CompletableFuture<Void> publish(FeedItem post) {
+        String path = post.getId() != null
+            ? "posts/" + post.getId()
+            : data.newDocumentPath("posts");
+        post.setId(path.substring(path.lastIndexOf('/') + 1));
+        if (post.getTimestamp() == null) {
+            post.setTimestamp(Timestamp.now());
+        }
+        if (post.getLikeShards() <= 0) {
+            post.setLikeShards(LikeCounter.DEFAULT_SHARDS);
+        }
+
+        DataBatch batch = data.batch();
+        batch.set(path, FeedItemCodec.INSTANCE.encode(post));
+        if (!fanOutOnWrite) {
+            return batch.commit();
+        }
+        TimelineEntry entry = TimelineEntry.of(post);
+        batch.set(DataSourceFanoutBackend.checkpointPath(entry.getAuthorId(), entry.getPostId()),
+            DataSourceFanoutBackend.encodeCheckpoint(new TimelineFanout.Checkpoint(entry, null, false)));
+        CompletableFuture<Void> written = batch.commit();
+        written.thenRunAsync(() -> fanOut(entry), DataExecutors.fanout());
+        return written;
+    }
+
+    public void resumeIncomplete(String authorId) {
+        if (!fanOutOnWrite) {
+            return;
+        }
+        DataExecutors.fanout().execute(() -> {
+            try {
+                fanout.resumeIncomplete(authorId);
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to resume fan-outs for " + authorId, e);
+            }
+        });
+    }
+
+    private void fanOut(TimelineEntry entry) {
+        try {
+            fanout.run(entry);
+        } catch (Exception e) {
+            // The checkpoint stays incomplete, so the next resumeIncomplete picks it up
+            Log.w(TAG, "Fan-out of " + entry.getPostId() + " stopped", e);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.pineapple.capture.feed;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.util.Log;
+import androidx.startup.AppInitializer;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.WorkRequest;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.StorageException;
+import com.google.firebase.storage.StorageMetadata;
+import com.google.firebase.storage.StorageReference;
+import com.google.firebase.storage.UploadTask;
+import com.pineapple.capture.data.DataExecutors;
+import com.pineapple.capture.data.DataSource;
+import com.pineapple.capture.data.DataSources;
+import com.pineapple.capture.data.FirebaseInitializers;
+import com.pineapple.capture.image.CaptureEncoder;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posts a captured photo. {@link #enqueue} shrinks the capture into app storage and schedules
+ * this worker, which uploads it to Storage and then writes the post, so the post never points
+ * at an image that is not there yet.
+ *
+ * <p>Uploads are resumable: the session of an upload in progress is kept in preferences, and a
+ * retry after a dropped connection, process death or the worker being stopped continues it
+ * from the last byte Storage confirmed. At most {@link #MAX_PARALLEL_UPLOADS} run at a time, see
+ * {@link com.pineapple.capture.CaptureApplication}.
+ */
+public class PostUploadWorker extends Worker {
+    private static final String TAG = "PostUploadWorker";
+
+    public static final int MAX_PARALLEL_UPLOADS = 3;
+    private static final String WORK_TAG = "post-upload";
+    private static final String UPLOAD_DIRECTORY = "uploads";
+    private static final String SESSIONS = "upload_sessions";
+    private static final int MAX_ATTEMPTS = 10;
+
+    private static final String KEY_POST_ID = "post_id";
+    private static final String KEY_USER_ID = "user_id";
+    private static final String KEY_CONTENT = "content";
+
+    private static final Executor encoder =
+        Executors.newSingleThreadExecutor(DataExecutors.backgroundThreads("capture-encode"));
+
+    // The upload in progress, paused when WorkManager stops this worker
+    private volatile UploadTask upload;
+
+    public PostUploadWorker(Context context, WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Shrinks the capture in the background and schedules its upload. Completes with the new
+     * post's id once the upload is scheduled; the post itself appears when it finishes.
+     */
+    public static CompletableFuture<String> enqueue(Context context, String userId, String content, Uri capture) {
+        Context app = context.getApplicationContext();
+        DataSource data = DataSources.data();
+        return CompletableFuture.supplyAsync(() -> {
+            String path = data.newDocumentPath("posts");
+            String postId = path.substring(path.lastIndexOf('/') + 1);
+            try {
+                CaptureEncoder.encode(app.getContentResolver(), capture, imageFile(app, postId));
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not prepare " + capture + " for upload", e);
+            }
+            OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(PostUploadWorker.class)
+                .setInputData(new Data.Builder()
+                    .putString(KEY_POST_ID, postId)
+                    .putString(KEY_USER_ID, userId)
+                    .putString(KEY_CONTENT, content)
+                    .build())
+                .setConstraints(new Constraints.Builder().setRequiredNetworkType(NetworkType.CONNECTED).build())
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, WorkRequest.MIN_BACKOFF_MILLIS, TimeUnit.MILLISECONDS)
+                .addTag(WORK_TAG)
+                .build();
+            WorkManager.getInstance(app).enqueueUniqueWork(WORK_TAG + "-" + postId, ExistingWorkPolicy.KEEP, request);
+            return postId;
+        }, encoder);
+    }
+
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        String postId = getInputData().getString(KEY_POST_ID);
+        String userId = getInputData().getString(KEY_USER_ID);
+        File image = imageFile(context, postId);
+        if (!image.exists()) {
+            Log.w(TAG, "Image of post " + postId + " is gone");
+            clearSession(context, postId);
+            return Result.failure();
+        }
+
+        String imageUrl;
+        try {
+            imageUrl = upload(context, postId, userId, image);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            Log.w(TAG, "Upload of post " + postId + " failed, attempt " + (getRunAttemptCount() + 1), cause);
+            if (!(cause instanceof StorageException && ((StorageException) cause).getIsRecoverableException())) {
+                // The session may be what was rejected, so the next attempt starts a new one
+                clearSession(context, postId);
+            }
+            return retryOrGiveUp(context, postId);
+        } catch (InterruptedException e) {
+            return Result.retry();
+        }
+        if (imageUrl == null) {
+            // Stopped with the session kept, so the next run resumes the upload
+            return Result.retry();
+        }
+
+        FeedItem post = new FeedItem(userId, getInputData().getString(KEY_CONTENT), imageUrl);
+        post.setId(postId);
+        try {
+            // Stored under the id chosen at enqueue, so a retried publish rewrites the same post
+            new PostPublisher(DataSources.data()).publish(post).get();
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Publishing post " + postId + " failed", e.getCause());
+            return retryOrGiveUp(context, postId);
+        } catch (InterruptedException e) {
+            return Result.retry();
+        }
+        clearSession(context, postId);
+        image.delete();
+        return Result.success();
+    }
+
+    @Override
+    public void onStopped() {
+        UploadTask task = upload;
+        if (task != null) {
+            // Pausing rather than cancelling keeps the session open for the next attempt
+            task.pause();
+        }
+    }
+
+    /** Returns the image's download URL, or null if the worker was stopped first. */
+    private String upload(Context context, String postId, String userId, File image)
+            throws ExecutionException, InterruptedException {
+        FirebaseStorage storage = AppInitializer.getInstance(context)
+            .initializeComponent(FirebaseInitializers.Storage.class);
+        StorageReference reference = storage.getReference().child("posts/" + userId + "/" + postId + ".jpg");
+        StorageMetadata metadata = new StorageMetadata.Builder().setContentType("image/jpeg").build();
+        SharedPreferences sessions = sessions(context);
+        String session = sessions.getString(postId, null);
+        UploadTask task = session != null
+            ? reference.putFile(Uri.fromFile(image), metadata, Uri.parse(session))
+            : reference.putFile(Uri.fromFile(image), metadata);
+        task.addOnProgressListener(Runnable::run, snapshot -> {
+            Uri sessionUri = snapshot.getUploadSessionUri();
+            if (sessionUri != null && !sessionUri.toString().equals(sessions.getString(postId, null))) {
+                sessions.edit().putString(postId, sessionUri.toString()).apply();
+            }
+        });
+        CompletableFuture<Void> settled = new CompletableFuture<>();
+        task.addOnPausedListener(Runnable::run, snapshot -> settled.complete(null));
+        task.addOnCompleteListener(Runnable::run, result -> settled.complete(null));
+        upload = task;
+        if (isStopped()) {
+            // Stopped before the task was there for onStopped to pause
+            task.pause();
+        }
+        settled.get();
+        if (!task.isComplete()) {
+            return null;
+        }
+        Tasks.await(task);
+        return Tasks.await(reference.getDownloadUrl()).toString();
+    }
+
+    private Result retryOrGiveUp(Context context, String postId) {
+        if (getRunAttemptCount() + 1 < MAX_ATTEMPTS) {
+            return Result.retry();
+        }
+        Log.w(TAG, "Giving up on post " + postId);
+        clearSession(context, postId);
+        imageFile(context, postId).delete();
+        return Result.failure();
+    }
+
+    private static File imageFile(Context context, String postId) {
+        File directory = new File(context.getFilesDir(), UPLOAD_DIRECTORY);
+        directory.mkdirs();
+        return new File(directory, postId + ".jpg");
+    }
+
+    private static SharedPreferences sessions(Context context) {
+        return context.getSharedPreferences(SESSIONS, Context.MODE_PRIVATE);
+    }
+
+    private static void clearSession(Context context, String postId) {
+        sessions(context).edit().remove(postId).apply();
+    }
+}
@@ -0,0 +1,28 @@
+package com.pineapple.capture.feed;
+
+import com.google.firebase.Timestamp;
+
+/**
+ * A reference to a post as stored in {@code users/{uid}/timeline/{postId}}. Only the fields the
+ * timeline query orders and filters on are copied; the post itself is read from {@code posts}.
+ */
+public class TimelineEntry {
+    private final String postId;
+    private final String authorId;
+    private final Timestamp timestamp;
+
+    public TimelineEntry(String postId, String authorId, Timestamp timestamp) {
+        this.postId = postId;
+        this.authorId = authorId;
+        this.timestamp = timestamp;
+    }
+
+    public static TimelineEntry of(FeedItem post) {
+        return new TimelineEntry(post.getId(), post.getUserId(), post.getTimestamp());
+    }
+
+    // Getters
+    public String getPostId() { return postId; }
+    public String getAuthorId() { return authorId; }
+    public Timestamp getTimestamp() { return timestamp; }
+}
@@ -0,0 +1,111 @@
+package com.pineapple.capture.feed;
+
+import com.pineapple.capture.data.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Copies a reference to a new post into the timeline of each of its author's followers, so the
+ * timeline feed is a single ordered query per reader.
+ *
+ * <p>Followers are written in id order, in batches that also carry a checkpoint with the last
+ * follower written. A run that fails part way resumes after the checkpoint, and since timeline
+ * writes are plain sets, replaying a batch whose commit outcome was unknown is harmless.
+ *
+ * <p>All methods block on the backend; call them off the main thread.
+ */
+public class TimelineFanout {
+    /** Progress of one post's fan-out, stored next to the post by the backend. */
+    public static class Checkpoint {
+        private final TimelineEntry entry;
+        private final String lastFollowerId;
+        private final boolean complete;
+
+        public Checkpoint(TimelineEntry entry, String lastFollowerId, boolean complete) {
+            this.entry = entry;
+            this.lastFollowerId = lastFollowerId;
+            this.complete = complete;
+        }
+
+        // Getters
+        public TimelineEntry getEntry() { return entry; }
+        public String getLastFollowerId() { return lastFollowerId; }
+        public boolean isComplete() { return complete; }
+    }
+
+    /** The storage the fan-out needs, kept narrow so it can run against an in-memory stand-in. */
+    public interface Backend {
+        List<String> loadFollowers(String authorId) throws Exception;
+
+        /** Returns null when the post has never been fanned out. */
+        Checkpoint loadCheckpoint(String authorId, String postId) throws Exception;
+
+        List<Checkpoint> loadIncomplete(String authorId) throws Exception;
+
+        /**
+         * Atomically writes the entry into each follower's timeline together with the checkpoint.
+         * Counts as {@code followerIds.size() + 1} writes.
+         */
+        void commit(TimelineEntry entry, List<String> followerIds, Checkpoint checkpoint) throws Exception;
+    }
+
+    private final Backend backend;
+    private final int followersPerBatch;
+
+    public TimelineFanout(Backend backend) {
+        this(backend, DataSource.MAX_BATCH_WRITES);
+    }
+
+    TimelineFanout(Backend backend, int maxBatchWrites) {
+        if (maxBatchWrites < 2 || maxBatchWrites > DataSource.MAX_BATCH_WRITES) {
+            throw new IllegalArgumentException("maxBatchWrites must be between 2 and " + DataSource.MAX_BATCH_WRITES);
+        }
+        this.backend = backend;
+        // One write in every batch goes to the checkpoint
+        this.followersPerBatch = maxBatchWrites - 1;
+    }
+
+    /**
+     * Fans the entry out, continuing from its checkpoint if an earlier run stopped part way.
+     *
+     * @return the number of timelines written by this run
+     */
+    public int run(TimelineEntry entry) throws Exception {
+        Checkpoint checkpoint = backend.loadCheckpoint(entry.getAuthorId(), entry.getPostId());
+        if (checkpoint != null && checkpoint.isComplete()) {
+            return 0;
+        }
+
+        // The author sees their own posts too
+        TreeSet<String> followers = new TreeSet<>(backend.loadFollowers(entry.getAuthorId()));
+        followers.add(entry.getAuthorId());
+        String after = checkpoint != null ? checkpoint.getLastFollowerId() : null;
+        List<String> remaining = new ArrayList<>(after != null ? followers.tailSet(after, false) : followers);
+
+        if (remaining.isEmpty()) {
+            backend.commit(entry, Collections.emptyList(), new Checkpoint(entry, after, true));
+            return 0;
+        }
+        for (int start = 0; start < remaining.size(); start += followersPerBatch) {
+            int end = Math.min(remaining.size(), start + followersPerBatch);
+            List<String> batch = remaining.subList(start, end);
+            backend.commit(entry, batch, new Checkpoint(entry, batch.get(batch.size() - 1), end == remaining.size()));
+        }
+        return remaining.size();
+    }
+
+    /**
+     * Finishes every fan-out by this author that an earlier run left incomplete.
+     *
+     * @return the number of posts resumed
+     */
+    public int resumeIncomplete(String authorId) throws Exception {
+        List<Checkpoint> incomplete = backend.loadIncomplete(authorId);
+        for (Checkpoint checkpoint : incomplete) {
+            run(checkpoint.getEntry());
+        }
+        return incomplete.size();
+    }
+}
@@ -0,0 +1,48 @@
+package com.pineapple.capture.friends;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * What happened to each id passed to {@link FriendsViewModel#addFriends}, and how long it took.
+ */
+public class FriendAddReport {
+    public enum Outcome {
+        ADDED,
+        ALREADY_FRIEND,
+        // The signed-in user's own id
+        SELF,
+        // No user with this id
+        NOT_FOUND,
+        // The lookup or the write failed; adding again may succeed
+        FAILED
+    }
+
+    private final Map<String, Outcome> outcomes;
+    private final long elapsedMs;
+
+    public FriendAddReport(Map<String, Outcome> outcomes, long elapsedMs) {
+        this.outcomes = Collections.unmodifiableMap(new LinkedHashMap<>(outcomes));
+        this.elapsedMs = elapsedMs;
+    }
+
+    public int count(Outcome outcome) {
+        int count = 0;
+        for (Outcome value : outcomes.values()) {
+            if (value == outcome) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Ids settled per second, whatever their outcome. */
+    public double getIdsPerSecond() {
+        return elapsedMs > 0 ? outcomes.size() * 1000.0 / elapsedMs : outcomes.size();
+    }
+
+    // Getters
+    public Map<String, Outcome> getOutcomes() { return outcomes; }
+    public long getElapsedMs() { return elapsedMs; }
+}
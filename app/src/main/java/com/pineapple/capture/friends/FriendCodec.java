@@ -0,0 +1,32 @@
+package com.pineapple.capture.friends;
+
+import com.pineapple.capture.data.DocumentCodec;
+import java.util.HashMap;
+import java.util.Map;
+
+public final class FriendCodec implements DocumentCodec<Friend> {
+    public static final FriendCodec INSTANCE = new FriendCodec();
+
+    private FriendCodec() {}
+
+    // Friend documents are keyed by the friend's user id
+    @Override
+    public Friend decode(String id, Map<String, Object> data) {
+        Friend friend = new Friend();
+        friend.setUserId(id);
+        friend.setName(DocumentCodec.getString(data, "name"));
+        friend.setProfileImageUrl(DocumentCodec.getString(data, "profileImageUrl"));
+        friend.setFriendsSince(DocumentCodec.getLong(data, "friendsSince"));
+        return friend;
+    }
+
+    @Override
+    public Map<String, Object> encode(Friend friend) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("userId", friend.getUserId());
+        data.put("name", friend.getName());
+        data.put("profileImageUrl", friend.getProfileImageUrl());
+        data.put("friendsSince", friend.getFriendsSince());
+        return data;
+    }
+}
@@ -0,0 +1,323 @@
+package com.pineapple.capture.friends;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Prefix search over the words of friends' names. Every word is stored folded (lower case,
+ * accents removed) in one sorted array, so a query is a binary search plus a scan of the
+ * matching range. Friends are added, changed and removed one at a time as snapshot changes
+ * arrive, and queries fold their characters on the fly and fill a reusable {@link Results}, so
+ * searching allocates nothing. Not thread-safe.
+ */
+public class FriendSearchIndex {
+    /** Reusable holder for matches, in the order of the word each friend matched on. */
+    public static final class Results {
+        private Friend[] items = new Friend[16];
+        private int size;
+
+        public int size() {
+            return size;
+        }
+
+        public Friend get(int index) {
+            if (index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of " + size);
+            }
+            return items[index];
+        }
+
+        void clear() {
+            Arrays.fill(items, 0, size, null);
+            size = 0;
+        }
+
+        void add(Friend friend) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = friend;
+        }
+    }
+
+    // Query words beyond this many are ignored
+    private static final int MAX_QUERY_WORDS = 8;
+    // Folded forms of Latin-1 and Latin Extended-A; other characters are only lower-cased
+    private static final char[] FOLD = new char[0x180];
+
+    static {
+        for (char c = 0; c < FOLD.length; c++) {
+            String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+            FOLD[c] = Character.toLowerCase(decomposed.charAt(0));
+        }
+    }
+
+    // All name words, sorted by word and then by slot
+    private String[] words = new String[64];
+    private int[] wordSlots = new int[64];
+    private int wordCount;
+
+    // Friends by slot, with the words each was indexed under
+    private Friend[] friends = new Friend[16];
+    private String[][] friendWords = new String[16][];
+    private final Map<String, Integer> slotsById = new HashMap<>();
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int slotCount;
+
+    // Per-query scratch: word bounds within the query, and a stamp per slot to skip duplicates
+    private final int[] queryStarts = new int[MAX_QUERY_WORDS];
+    private final int[] queryEnds = new int[MAX_QUERY_WORDS];
+    private int[] seen = new int[16];
+    private int stamp;
+
+    public int size() {
+        return slotsById.size();
+    }
+
+    /** Adds the friend or replaces the one with the same user id. */
+    public void upsert(Friend friend) {
+        Integer existing = slotsById.get(friend.getUserId());
+        String[] nameWords = split(friend.getName());
+        if (existing != null) {
+            int slot = existing;
+            friends[slot] = friend;
+            if (Arrays.equals(friendWords[slot], nameWords)) {
+                return;
+            }
+            for (String word : friendWords[slot]) {
+                removeWord(word, slot);
+            }
+            index(slot, nameWords);
+            return;
+        }
+        int slot = freeCount > 0 ? freeSlots[--freeCount] : newSlot();
+        friends[slot] = friend;
+        slotsById.put(friend.getUserId(), slot);
+        index(slot, nameWords);
+    }
+
+    public void remove(String userId) {
+        Integer existing = slotsById.remove(userId);
+        if (existing == null) {
+            return;
+        }
+        int slot = existing;
+        for (String word : friendWords[slot]) {
+            removeWord(word, slot);
+        }
+        friends[slot] = null;
+        friendWords[slot] = null;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    public void clear() {
+        Arrays.fill(words, 0, wordCount, null);
+        Arrays.fill(friends, 0, slotCount, null);
+        Arrays.fill(friendWords, 0, slotCount, null);
+        slotsById.clear();
+        wordCount = 0;
+        slotCount = 0;
+        freeCount = 0;
+    }
+
+    /**
+     * Finds the friends with a name word starting with each word of the query, ignoring case and
+     * accents. An empty query matches nobody.
+     */
+    public void search(CharSequence query, Results out) {
+        out.clear();
+        int queryWords = splitQuery(query);
+        if (queryWords == 0) {
+            return;
+        }
+        if (++stamp == 0) {
+            Arrays.fill(seen, 0);
+            stamp = 1;
+        }
+
+        // Scan the range of the first word and check the others against each candidate
+        int start = queryStarts[0];
+        int end = queryEnds[0];
+        for (int i = lowerBound(query, start, end); i < wordCount; i++) {
+            if (comparePrefix(words[i], query, start, end) != 0) {
+                break;
+            }
+            int slot = wordSlots[i];
+            if (seen[slot] != stamp && matchesRest(slot, query, queryWords)) {
+                seen[slot] = stamp;
+                out.add(friends[slot]);
+            }
+        }
+    }
+
+    private boolean matchesRest(int slot, CharSequence query, int queryWords) {
+        for (int q = 1; q < queryWords; q++) {
+            boolean found = false;
+            for (String word : friendWords[slot]) {
+                if (comparePrefix(word, query, queryStarts[q], queryEnds[q]) == 0) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // First word not sorting before the folded query[start, end)
+    private int lowerBound(CharSequence query, int start, int end) {
+        int low = 0;
+        int high = wordCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparePrefix(words[mid], query, start, end) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compares a folded word with the folded query[start, end): 0 when the word starts with it,
+     * otherwise the order of the word relative to the prefix.
+     */
+    private static int comparePrefix(String word, CharSequence query, int start, int end) {
+        int length = end - start;
+        int n = Math.min(word.length(), length);
+        for (int i = 0; i < n; i++) {
+            int diff = word.charAt(i) - fold(query.charAt(start + i));
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return word.length() < length ? -1 : 0;
+    }
+
+    private int splitQuery(CharSequence query) {
+        int count = 0;
+        int i = 0;
+        int length = query.length();
+        while (i < length && count < MAX_QUERY_WORDS) {
+            while (i < length && !Character.isLetterOrDigit(query.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && Character.isLetterOrDigit(query.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                queryStarts[count] = start;
+                queryEnds[count] = i;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    static char fold(char c) {
+        return c < FOLD.length ? FOLD[c] : Character.toLowerCase(c);
+    }
+
+    // Folded words of a name, without duplicates
+    static String[] split(String name) {
+        if (name == null) {
+            return new String[0];
+        }
+        String[] found = new String[4];
+        int count = 0;
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= name.length(); i++) {
+            char c = i < name.length() ? name.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(fold(c));
+            } else if (word.length() > 0) {
+                String folded = word.toString();
+                word.setLength(0);
+                if (!contains(found, count, folded)) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, count * 2);
+                    }
+                    found[count++] = folded;
+                }
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    private static boolean contains(String[] words, int count, String word) {
+        for (int i = 0; i < count; i++) {
+            if (words[i].equals(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int newSlot() {
+        if (slotCount == friends.length) {
+            int capacity = slotCount * 2;
+            friends = Arrays.copyOf(friends, capacity);
+            friendWords = Arrays.copyOf(friendWords, capacity);
+            seen = Arrays.copyOf(seen, capacity);
+        }
+        return slotCount++;
+    }
+
+    private void index(int slot, String[] nameWords) {
+        friendWords[slot] = nameWords;
+        for (String word : nameWords) {
+            insertWord(word, slot);
+        }
+    }
+
+    private void insertWord(String word, int slot) {
+        if (wordCount == words.length) {
+            words = Arrays.copyOf(words, wordCount * 2);
+            wordSlots = Arrays.copyOf(wordSlots, wordCount * 2);
+        }
+        int position = find(word, slot);
+        System.arraycopy(words, position, words, position + 1, wordCount - position);
+        System.arraycopy(wordSlots, position, wordSlots, position + 1, wordCount - position);
+        words[position] = word;
+        wordSlots[position] = slot;
+        wordCount++;
+    }
+
+    private void removeWord(String word, int slot) {
+        int position = find(word, slot);
+        if (position < wordCount && wordSlots[position] == slot && words[position].equals(word)) {
+            System.arraycopy(words, position + 1, words, position, wordCount - position - 1);
+            System.arraycopy(wordSlots, position + 1, wordSlots, position, wordCount - position - 1);
+            words[--wordCount] = null;
+        }
+    }
+
+    // Position of (word, slot) in the sorted arrays, or where it would be inserted
+    private int find(String word, int slot) {
+        int low = 0;
+        int high = wordCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = words[mid].compareTo(word);
+            if (cmp == 0) {
+                cmp = Integer.compare(wordSlots[mid], slot);
+            }
+            if (cmp < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
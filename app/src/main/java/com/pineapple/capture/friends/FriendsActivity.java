@@ -1,6 +1,7 @@
 package com.pineapple.capture.friends;
 
 import android.os.Bundle;
+import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
@@ -10,6 +11,7 @@ import com.pineapple.capture.R;
 public class FriendsActivity extends AppCompatActivity {
     private FriendsViewModel viewModel;
     private RecyclerView recyclerView;
+    private FriendsAdapter adapter;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -20,10 +22,16 @@ public class FriendsActivity extends AppCompatActivity {
         
         recyclerView = findViewById(R.id.friends_recycler_view);
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        adapter = new FriendsAdapter();
+        recyclerView.setAdapter(adapter);
+        recyclerView.setHasFixedSize(true);
 
         // Observe friends list changes
-        viewModel.getFriends().observe(this, friends -> {
-            // Update RecyclerView adapter with new friends list
+        viewModel.getFriendUpdates().observe(this, adapter::submitSnapshot);
+        viewModel.getErrorMessage().observe(this, error -> {
+            if (error != null) {
+                Toast.makeText(this, error, Toast.LENGTH_SHORT).show();
+            }
         });
     }
 } 
\ No newline at end of file
@@ -0,0 +1,49 @@
+package com.pineapple.capture.friends;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+import com.pineapple.capture.R;
+import com.pineapple.capture.data.ListSnapshotAdapter;
+import java.util.Objects;
+
+public class FriendsAdapter extends ListSnapshotAdapter<Friend, FriendsAdapter.FriendViewHolder> {
+    private static final DiffUtil.ItemCallback<Friend> DIFF_CALLBACK = new DiffUtil.ItemCallback<Friend>() {
+        @Override
+        public boolean areItemsTheSame(Friend oldItem, Friend newItem) {
+            return Objects.equals(oldItem.getUserId(), newItem.getUserId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(Friend oldItem, Friend newItem) {
+            return Objects.equals(oldItem.getName(), newItem.getName());
+        }
+    };
+
+    public FriendsAdapter() {
+        super(DIFF_CALLBACK);
+    }
+
+    @Override
+    public FriendViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_friend, parent, false);
+        return new FriendViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(FriendViewHolder holder, int position) {
+        holder.nameView.setText(getItem(position).getName());
+    }
+
+    static class FriendViewHolder extends RecyclerView.ViewHolder {
+        final TextView nameView;
+
+        FriendViewHolder(View itemView) {
+            super(itemView);
+            nameView = itemView.findViewById(R.id.friend_name);
+        }
+    }
+}
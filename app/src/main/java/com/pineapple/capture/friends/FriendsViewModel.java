@@ -1,68 +1,310 @@
 package com.pineapple.capture.friends;
 
+import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
 import androidx.lifecycle.MutableLiveData;
-import androidx.lifecycle.ViewModel;
-import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.firestore.FirebaseFirestore;
-import java.util.List;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.pineapple.capture.data.AuthSource;
+import com.pineapple.capture.data.DataBatch;
+import com.pineapple.capture.data.DataChange;
+import com.pineapple.capture.data.DataDocument;
+import com.pineapple.capture.data.DataExecutors;
+import com.pineapple.capture.data.DataQuery;
+import com.pineapple.capture.data.DataSnapshot;
+import com.pineapple.capture.data.DataSource;
+import com.pineapple.capture.data.DataSources;
+import com.pineapple.capture.data.IncrementalList;
+import com.pineapple.capture.data.ListSnapshot;
+import com.pineapple.capture.data.SnapshotChanges;
+import com.pineapple.capture.data.SnapshotPipeline;
+import com.pineapple.capture.data.SnapshotRepository;
+import com.pineapple.capture.data.WriteQueue;
+import com.pineapple.capture.profile.UserProfile;
+import com.pineapple.capture.profile.UserProfileCodec;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+public class FriendsViewModel extends AndroidViewModel {
+    private static final String TAG = "FriendsViewModel";
 
-public class FriendsViewModel extends ViewModel {
-    private FirebaseFirestore db;
-    private FirebaseAuth auth;
-    private MutableLiveData<List<Friend>> friends;
+    private final DataSource data;
+    private final AuthSource auth;
+    private final WriteQueue writeQueue;
+    private MediatorLiveData<List<Friend>> friends;
+    private SnapshotPipeline<ListSnapshot<Friend>> friendUpdates;
+    private ListenerRegistration friendsRegistration;
+    private final MutableLiveData<String> errorMessage = new MutableLiveData<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable resubscribe = this::loadFriends;
+    // Failures of the friends listener in a row; confined to the mapping thread
+    private int listenFailures;
+    // Main thread only
+    private boolean cleared;
+
+    // Confined to the mapping thread
+    private final IncrementalList<Friend> friendsList = new IncrementalList<>(Friend::getUserId);
+    private final FriendSearchIndex searchIndex = new FriendSearchIndex();
+    private final FriendSearchIndex.Results searchMatches = new FriendSearchIndex.Results();
+    private String searchQuery = "";
+    private final MutableLiveData<List<Friend>> searchResults = new MutableLiveData<>(new ArrayList<>());
+
+    public FriendsViewModel(Application application) {
+        this(application, DataSources.data(), DataSources.auth());
+    }
 
-    public FriendsViewModel() {
-        db = FirebaseFirestore.getInstance();
-        auth = FirebaseAuth.getInstance();
-        friends = new MutableLiveData<>(new ArrayList<>());
+    public FriendsViewModel(Application application, DataSource data, AuthSource auth) {
+        super(application);
+        this.data = data;
+        this.auth = auth;
+        writeQueue = WriteQueue.getInstance(application, data);
+        friendUpdates = SnapshotPipeline.forList("friends");
+        friends = new MediatorLiveData<>();
+        friends.setValue(new ArrayList<>());
+        friends.addSource(friendUpdates.getLiveData(), snapshot -> friends.setValue(snapshot.getItems()));
         loadFriends();
     }
 
     private void loadFriends() {
-        String userId = auth.getCurrentUser() != null ? auth.getCurrentUser().getUid() : null;
-        if (userId != null) {
-            db.collection("users").document(userId)
-                .collection("friends")
-                .addSnapshotListener((value, error) -> {
-                    if (error != null) {
-                        return;
+        String userId = auth.getCurrentUserId();
+        if (userId == null || cleared) {
+            return;
+        }
+        // Shared with every other screen observing this user's friends
+        String friendsPath = "users/" + userId + "/friends";
+        friendsRegistration = SnapshotRepository.getInstance(data).observeQuery(friendsPath,
+            DataQuery.collection(friendsPath), new SnapshotRepository.Observer<DataSnapshot>() {
+                @Override
+                public void onValue(DataSnapshot value, boolean replay) {
+                    if (listenFailures > 0) {
+                        listenFailures = 0;
+                        errorMessage.postValue(null);
                     }
-                    List<Friend> friendsList = new ArrayList<>();
-                    if (value != null) {
-                        for (com.google.firebase.firestore.DocumentSnapshot doc : value) {
-                            Friend friend = doc.toObject(Friend.class);
-                            if (friend != null) {
-                                friendsList.add(friend);
-                            }
-                        }
+                    long generation = friendUpdates.begin();
+                    if (replay) {
+                        rebuildFriends(value);
+                    } else {
+                        applyFriendChanges(value);
+                    }
+                    friendUpdates.publish(generation, friendsList.snapshot());
+                    if (!searchQuery.isEmpty() && (replay || !value.getChanges().isEmpty())) {
+                        runSearch();
+                    }
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    Log.w(TAG, "Friends listener failed", e);
+                    if (listenFailures++ == 0) {
+                        errorMessage.postValue("Could not load friends");
                     }
-                    friends.setValue(friendsList);
-                });
+                    // The list shown so far stays until the new listener's first snapshot, a
+                    // replay that rebuilds it
+                    handler.postDelayed(resubscribe, SnapshotRepository.resubscribeDelayMillis(listenFailures));
+                }
+            });
+    }
+
+    private void applyFriendChanges(DataSnapshot value) {
+        SnapshotChanges.apply(value, friendsList, FriendCodec.INSTANCE::decode);
+        for (DataChange change : value.getChanges()) {
+            String friendId = change.getDocument().getId();
+            Friend friend = friendsList.find(friendId);
+            if (friend != null) {
+                searchIndex.upsert(friend);
+            } else {
+                searchIndex.remove(friendId);
+            }
+        }
+    }
+
+    // A replayed snapshot's changes are relative to one this view model never saw
+    private void rebuildFriends(DataSnapshot value) {
+        friendsList.clear();
+        searchIndex.clear();
+        for (DataDocument doc : value.getDocuments()) {
+            Friend friend = FriendCodec.INSTANCE.decode(doc);
+            if (friend != null) {
+                friendsList.add(friend);
+                searchIndex.upsert(friend);
+            }
         }
     }
 
     public void addFriend(String friendId) {
-        String userId = auth.getCurrentUser() != null ? auth.getCurrentUser().getUid() : null;
+        String userId = auth.getCurrentUserId();
         if (userId != null) {
-            db.collection("users").document(friendId)
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        Friend friend = documentSnapshot.toObject(Friend.class);
-                        if (friend != null) {
-                            db.collection("users").document(userId)
-                                .collection("friends")
-                                .document(friendId)
-                                .set(friend);
+            data.get("users/" + friendId).thenAccept(document -> {
+                UserProfile profile = UserProfileCodec.INSTANCE.decode(document);
+                if (profile != null) {
+                    writeQueue.set("users/" + userId + "/friends/" + friendId,
+                        FriendCodec.INSTANCE.encode(toFriend(friendId, profile)));
+                }
+            });
+        }
+    }
+
+    /**
+     * Adds many friends at once, e.g. from a contact import. Ids already in the friends list and
+     * the user's own id are skipped; the rest are looked up concurrently in chunks and written in
+     * batches. The future always succeeds, with the outcome of every id in its report.
+     */
+    public CompletableFuture<FriendAddReport> addFriends(Collection<String> friendIds) {
+        CompletableFuture<FriendAddReport> result = new CompletableFuture<>();
+        String userId = auth.getCurrentUserId();
+        long startMs = SystemClock.elapsedRealtime();
+        Executor mapping = DataExecutors.mapping();
+        // The friends list is confined to the mapping thread
+        mapping.execute(() -> {
+            Map<String, FriendAddReport.Outcome> outcomes = new LinkedHashMap<>();
+            List<String> toLookUp = new ArrayList<>();
+            for (String friendId : new LinkedHashSet<>(friendIds)) {
+                if (userId == null) {
+                    outcomes.put(friendId, FriendAddReport.Outcome.FAILED);
+                } else if (friendId.equals(userId)) {
+                    outcomes.put(friendId, FriendAddReport.Outcome.SELF);
+                } else if (friendsList.contains(friendId)) {
+                    outcomes.put(friendId, FriendAddReport.Outcome.ALREADY_FRIEND);
+                } else {
+                    toLookUp.add(friendId);
+                }
+            }
+            if (toLookUp.isEmpty()) {
+                finish(result, outcomes, startMs);
+                return;
+            }
+
+            List<List<String>> chunks = new ArrayList<>();
+            List<CompletableFuture<DataSnapshot>> lookups = new ArrayList<>();
+            for (int start = 0; start < toLookUp.size(); start += DataSource.MAX_IN_QUERY) {
+                List<String> chunk = new ArrayList<>(toLookUp.subList(start, Math.min(toLookUp.size(), start + DataSource.MAX_IN_QUERY)));
+                chunks.add(chunk);
+                lookups.add(data.get(DataQuery.collection("users").whereIn(DataQuery.DOCUMENT_ID, chunk)));
+            }
+            // Settles once every lookup has, whether or not it failed
+            CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[0])).whenCompleteAsync((unused, error) -> {
+                List<Friend> found = new ArrayList<>();
+                for (int i = 0; i < chunks.size(); i++) {
+                    CompletableFuture<DataSnapshot> lookup = lookups.get(i);
+                    if (lookup.isCompletedExceptionally()) {
+                        for (String friendId : chunks.get(i)) {
+                            outcomes.put(friendId, FriendAddReport.Outcome.FAILED);
                         }
+                        continue;
                     }
-                });
+                    for (String friendId : chunks.get(i)) {
+                        outcomes.put(friendId, FriendAddReport.Outcome.NOT_FOUND);
+                    }
+                    for (DataDocument doc : lookup.join().getDocuments()) {
+                        UserProfile profile = UserProfileCodec.INSTANCE.decode(doc);
+                        if (profile != null) {
+                            found.add(toFriend(doc.getId(), profile));
+                        }
+                    }
+                }
+                writeFriends(userId, found, outcomes, result, startMs);
+            }, mapping);
+        });
+        return result;
+    }
+
+    private void writeFriends(String userId, List<Friend> friends, Map<String, FriendAddReport.Outcome> outcomes,
+                              CompletableFuture<FriendAddReport> result, long startMs) {
+        if (friends.isEmpty()) {
+            finish(result, outcomes, startMs);
+            return;
+        }
+        List<List<Friend>> batches = new ArrayList<>();
+        List<CompletableFuture<Void>> commits = new ArrayList<>();
+        for (int start = 0; start < friends.size(); start += DataSource.MAX_BATCH_WRITES) {
+            List<Friend> chunk = friends.subList(start, Math.min(friends.size(), start + DataSource.MAX_BATCH_WRITES));
+            DataBatch batch = data.batch();
+            for (Friend friend : chunk) {
+                batch.set("users/" + userId + "/friends/" + friend.getUserId(), FriendCodec.INSTANCE.encode(friend));
+            }
+            batches.add(chunk);
+            commits.add(batch.commit());
+        }
+        CompletableFuture.allOf(commits.toArray(new CompletableFuture<?>[0])).whenCompleteAsync((unused, error) -> {
+            for (int i = 0; i < batches.size(); i++) {
+                FriendAddReport.Outcome outcome = !commits.get(i).isCompletedExceptionally()
+                    ? FriendAddReport.Outcome.ADDED
+                    : FriendAddReport.Outcome.FAILED;
+                for (Friend friend : batches.get(i)) {
+                    outcomes.put(friend.getUserId(), outcome);
+                }
+            }
+            finish(result, outcomes, startMs);
+        }, DataExecutors.mapping());
+    }
+
+    private static void finish(CompletableFuture<FriendAddReport> result,
+                               Map<String, FriendAddReport.Outcome> outcomes, long startMs) {
+        FriendAddReport report = new FriendAddReport(outcomes, SystemClock.elapsedRealtime() - startMs);
+        Log.d(TAG, "Added " + report.count(FriendAddReport.Outcome.ADDED) + " of " + outcomes.size()
+            + " friends in " + report.getElapsedMs() + " ms ("
+            + Math.round(report.getIdsPerSecond()) + " ids/s)");
+        result.complete(report);
+    }
+
+    private static Friend toFriend(String friendId, UserProfile profile) {
+        return new Friend(friendId, profile.getName(), profile.getProfileImageUrl());
+    }
+
+    /**
+     * Matches friends whose name has words starting with the words of the query; results arrive
+     * through {@link #getSearchResults()}.
+     */
+    public void search(String query) {
+        DataExecutors.mapping().execute(() -> {
+            searchQuery = query;
+            runSearch();
+        });
+    }
+
+    private void runSearch() {
+        searchIndex.search(searchQuery, searchMatches);
+        List<Friend> matches = new ArrayList<>(searchMatches.size());
+        for (int i = 0; i < searchMatches.size(); i++) {
+            matches.add(searchMatches.get(i));
         }
+        searchResults.postValue(matches);
+    }
+
+    public LiveData<List<Friend>> getSearchResults() {
+        return searchResults;
     }
 
     public LiveData<List<Friend>> getFriends() {
         return friends;
     }
-} 
\ No newline at end of file
+
+    /** Why the friends list may be out of date, or null while it is current. */
+    public LiveData<String> getErrorMessage() {
+        return errorMessage;
+    }
+
+    public LiveData<ListSnapshot<Friend>> getFriendUpdates() {
+        return friendUpdates.getLiveData();
+    }
+
+    @Override
+    protected void onCleared() {
+        cleared = true;
+        handler.removeCallbacks(resubscribe);
+        if (friendsRegistration != null) {
+            friendsRegistration.remove();
+        }
+    }
+}
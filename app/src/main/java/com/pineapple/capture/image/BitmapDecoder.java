@@ -0,0 +1,63 @@
+package com.pineapple.capture.image;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import java.io.File;
+
+/**
+ * Decodes image files downsampled to the size they are displayed at. Camera-sized images are
+ * never decoded at full resolution.
+ */
+class BitmapDecoder {
+    private final BitmapPool pool;
+
+    BitmapDecoder(BitmapPool pool) {
+        this.pool = pool;
+    }
+
+    Bitmap decode(File file, int targetWidth, int targetHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight, targetWidth, targetHeight);
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+
+        int width = divideRoundingUp(options.outWidth, options.inSampleSize);
+        int height = divideRoundingUp(options.outHeight, options.inSampleSize);
+        options.inBitmap = pool.take(width, height, options.inPreferredConfig);
+        try {
+            return BitmapFactory.decodeFile(file.getPath(), options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap could not be reused for this image
+            if (options.inBitmap != null) {
+                pool.put(options.inBitmap);
+            }
+            options.inBitmap = null;
+            return BitmapFactory.decodeFile(file.getPath(), options);
+        }
+    }
+
+    /**
+     * Largest power of two that keeps both decoded dimensions at or above the target size.
+     */
+    static int sampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            return sampleSize;
+        }
+        while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static int divideRoundingUp(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+}
@@ -0,0 +1,65 @@
+package com.pineapple.capture.image;
+
+import android.graphics.Bitmap;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bitmaps that are no longer shown anywhere, kept so the decoder can reuse their memory through
+ * {@code inBitmap} instead of allocating a fresh buffer for every image.
+ */
+class BitmapPool {
+    private final long maxBytes;
+    private final List<Bitmap> bitmaps = new ArrayList<>();
+    private long bytes;
+
+    BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized void put(Bitmap bitmap) {
+        if (bitmap.isRecycled() || !bitmap.isMutable() || bitmap.getAllocationByteCount() > maxBytes) {
+            return;
+        }
+        bitmaps.add(bitmap);
+        bytes += bitmap.getAllocationByteCount();
+        while (bytes > maxBytes) {
+            Bitmap oldest = bitmaps.remove(0);
+            bytes -= oldest.getAllocationByteCount();
+        }
+    }
+
+    /**
+     * Removes and returns the smallest pooled bitmap that can hold a decode of the given size,
+     * or null if there is none.
+     */
+    synchronized Bitmap take(int width, int height, Bitmap.Config config) {
+        long needed = (long) width * height * bytesPerPixel(config);
+        int best = -1;
+        for (int i = 0; i < bitmaps.size(); i++) {
+            Bitmap candidate = bitmaps.get(i);
+            if (candidate.getConfig() == config && candidate.getAllocationByteCount() >= needed
+                    && (best < 0 || candidate.getAllocationByteCount() < bitmaps.get(best).getAllocationByteCount())) {
+                best = i;
+            }
+        }
+        if (best < 0) {
+            return null;
+        }
+        Bitmap bitmap = bitmaps.remove(best);
+        bytes -= bitmap.getAllocationByteCount();
+        return bitmap;
+    }
+
+    synchronized void clear() {
+        bitmaps.clear();
+        bytes = 0;
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.RGB_565) {
+            return 2;
+        }
+        return config == Bitmap.Config.ALPHA_8 ? 1 : 4;
+    }
+}
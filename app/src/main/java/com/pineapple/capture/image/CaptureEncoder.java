@@ -0,0 +1,104 @@
+package com.pineapple.capture.image;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Shrinks a captured photo to the size posts are shown at and writes it as a JPEG. The capture
+ * is decoded downsampled, like in {@link BitmapDecoder}, and turned upright, since the camera's
+ * orientation tag is not kept. Runs for hundreds of milliseconds, so keep it off the main thread.
+ */
+public final class CaptureEncoder {
+    /** The longest edge of an encoded image, in pixels. */
+    public static final int MAX_EDGE = 2048;
+    private static final int QUALITY = 85;
+
+    private CaptureEncoder() {}
+
+    /**
+     * Writes the capture to {@code target}, which only appears once it is complete.
+     */
+    public static void encode(ContentResolver resolver, Uri capture, File target) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream in = open(resolver, capture)) {
+            BitmapFactory.decodeStream(in, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Not an image: " + capture);
+        }
+
+        float scale = Math.min(1f, (float) MAX_EDGE / Math.max(options.outWidth, options.outHeight));
+        int width = Math.round(options.outWidth * scale);
+        int height = Math.round(options.outHeight * scale);
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = BitmapDecoder.sampleSize(options.outWidth, options.outHeight, width, height);
+        Bitmap decoded;
+        try (InputStream in = open(resolver, capture)) {
+            decoded = BitmapFactory.decodeStream(in, null, options);
+        }
+        if (decoded == null) {
+            throw new IOException("Could not decode " + capture);
+        }
+
+        Matrix matrix = new Matrix();
+        float remaining = Math.min(1f, (float) MAX_EDGE / Math.max(decoded.getWidth(), decoded.getHeight()));
+        matrix.postScale(remaining, remaining);
+        matrix.postRotate(rotation(resolver, capture));
+        Bitmap upright = matrix.isIdentity()
+            ? decoded
+            : Bitmap.createBitmap(decoded, 0, 0, decoded.getWidth(), decoded.getHeight(), matrix, true);
+
+        File partial = new File(target.getPath() + ".partial");
+        try (OutputStream out = new FileOutputStream(partial)) {
+            if (!upright.compress(Bitmap.CompressFormat.JPEG, QUALITY, out)) {
+                throw new IOException("Could not encode " + capture);
+            }
+        } finally {
+            if (upright != decoded) {
+                upright.recycle();
+            }
+            decoded.recycle();
+        }
+        if (!partial.renameTo(target)) {
+            partial.delete();
+            throw new IOException("Could not write " + target);
+        }
+    }
+
+    private static InputStream open(ContentResolver resolver, Uri capture) throws IOException {
+        InputStream in = resolver.openInputStream(capture);
+        if (in == null) {
+            throw new IOException("Could not open " + capture);
+        }
+        return in;
+    }
+
+    private static int rotation(ContentResolver resolver, Uri capture) {
+        try (InputStream in = open(resolver, capture)) {
+            switch (new ExifInterface(in).getAttributeInt(ExifInterface.TAG_ORIENTATION,
+                    ExifInterface.ORIENTATION_NORMAL)) {
+                case ExifInterface.ORIENTATION_ROTATE_90:
+                    return 90;
+                case ExifInterface.ORIENTATION_ROTATE_180:
+                    return 180;
+                case ExifInterface.ORIENTATION_ROTATE_270:
+                    return 270;
+                default:
+                    return 0;
+            }
+        } catch (IOException e) {
+            // Formats without EXIF are stored upright
+            return 0;
+        }
+    }
+}
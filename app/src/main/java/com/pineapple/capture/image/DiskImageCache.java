@@ -0,0 +1,114 @@
+package com.pineapple.capture.image;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Size-bounded cache of downloaded image files, evicting the least recently used files first.
+ */
+class DiskImageCache {
+    private final File directory;
+    private final long maxBytes;
+    private long bytes = -1;
+
+    DiskImageCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized File get(String url) {
+        File file = fileFor(url);
+        if (!file.exists()) {
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    File put(String url, InputStream input) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File file = fileFor(url);
+        File temp = new File(directory, file.getName() + ".tmp" + Thread.currentThread().getId());
+        try (OutputStream output = new FileOutputStream(temp)) {
+            byte[] buffer = new byte[16 * 1024];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+        }
+        synchronized (this) {
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("Cannot write " + file);
+            }
+            if (bytes >= 0) {
+                bytes += file.length();
+            }
+            trim();
+        }
+        return file;
+    }
+
+    synchronized void clear() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        bytes = 0;
+    }
+
+    private void trim() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        if (bytes < 0) {
+            bytes = 0;
+            for (File file : files) {
+                bytes += file.length();
+            }
+        }
+        if (bytes <= maxBytes) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (bytes <= maxBytes * 9 / 10) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                bytes -= length;
+            }
+        }
+    }
+
+    private File fileFor(String url) {
+        return new File(directory, hash(url));
+    }
+
+    private static String hash(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+}
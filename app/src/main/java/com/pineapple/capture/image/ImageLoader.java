@@ -0,0 +1,349 @@
+package com.pineapple.capture.image;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import com.pineapple.capture.R;
+import com.pineapple.capture.data.DataExecutors;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads remote images into ImageViews through a memory LRU of decoded bitmaps and a bounded disk
+ * cache of downloaded files. Images are decoded at the size of the target view, and bitmaps
+ * evicted from memory are reused for later decodes once no view shows them anymore.
+ */
+public class ImageLoader implements ComponentCallbacks2 {
+    private static final String TAG = "ImageLoader";
+    private static final long DISK_CACHE_BYTES = 64L * 1024 * 1024;
+    private static final int LOADER_THREADS = 3;
+    private static final int PREFETCH_THREADS = 1;
+    private static final long INITIAL_LOAD_ESTIMATE_MS = 150;
+    private static final int TIMEOUT_MS = 15_000;
+
+    private static volatile ImageLoader instance;
+
+    private final LruCache<String, Bitmap> memoryCache;
+    private final DiskImageCache diskCache;
+    private final BitmapPool pool;
+    private final BitmapDecoder decoder;
+    private final ExecutorService executor;
+    // Prefetches run on their own thread so they never hold up images already on screen
+    private final ExecutorService prefetchExecutor;
+    private volatile long averageLoadMillis = INITIAL_LOAD_ESTIMATE_MS;
+    private final int fallbackWidth;
+    private final int fallbackHeight;
+
+    // Bitmaps currently shown by a view or about to be, with how many views hold each one
+    private final Object lock = new Object();
+    private final Map<Bitmap, Integer> activeCounts = new IdentityHashMap<>();
+    private final Set<Bitmap> evictedWhileActive = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    public static ImageLoader getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ImageLoader.class) {
+                if (instance == null) {
+                    instance = new ImageLoader(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private ImageLoader(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int memoryCacheBytes = activityManager.getMemoryClass() * 1024 * 1024 / 8;
+        memoryCache = new LruCache<String, Bitmap>(memoryCacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                if (oldValue != newValue) {
+                    onRemovedFromMemory(oldValue);
+                }
+            }
+        };
+        pool = new BitmapPool(memoryCacheBytes / 4);
+        decoder = new BitmapDecoder(pool);
+        diskCache = new DiskImageCache(new File(context.getCacheDir(), "images"), DISK_CACHE_BYTES);
+        executor = Executors.newFixedThreadPool(LOADER_THREADS, DataExecutors.backgroundThreads("image-loader"));
+        prefetchExecutor = Executors.newFixedThreadPool(PREFETCH_THREADS, DataExecutors.backgroundThreads("image-prefetch"));
+        fallbackWidth = context.getResources().getDisplayMetrics().widthPixels;
+        fallbackHeight = context.getResources().getDisplayMetrics().heightPixels / 2;
+        context.registerComponentCallbacks(this);
+    }
+
+    /**
+     * Shows the image at {@code url} in {@code view}, replacing and cancelling whatever the view
+     * was showing or loading before. A null url just clears the view.
+     */
+    public void load(String url, ImageView view) {
+        cancel(view);
+        if (url == null || url.isEmpty()) {
+            return;
+        }
+        int width = targetWidth(view);
+        int height = targetHeight(view);
+        String key = cacheKey(url, width, height);
+
+        Bitmap cached = acquireCached(key);
+        if (cached != null) {
+            bind(view, cached);
+            return;
+        }
+        Request request = new Request(url, key, width, height, view);
+        view.setTag(R.id.image_request, request);
+        request.future = executor.submit(request);
+    }
+
+    /**
+     * Downloads and decodes the image at {@code url} into the memory cache at the given size, so
+     * a later {@link #load} into a view of that size is a cache hit. Returns null if the image is
+     * already in memory.
+     */
+    public Prefetch prefetch(String url, int width, int height) {
+        if (url == null || url.isEmpty()) {
+            return null;
+        }
+        String key = cacheKey(url, width, height);
+        if (memoryCache.get(key) != null) {
+            return null;
+        }
+        Request request = new Request(url, key, width, height, null);
+        request.future = prefetchExecutor.submit(request);
+        return request;
+    }
+
+    /**
+     * Moving average of how long an image takes to fetch and decode when it is not in memory.
+     */
+    public long getAverageLoadMillis() {
+        return averageLoadMillis;
+    }
+
+    private void recordLoadTime(long millis) {
+        // Exponentially weighted, so the estimate follows changing network conditions
+        averageLoadMillis = (averageLoadMillis * 7 + millis) / 8;
+    }
+
+    /**
+     * Cancels any pending load for {@code view} and releases the bitmap it shows. Call when the
+     * view is recycled.
+     */
+    public void cancel(ImageView view) {
+        Object tag = view.getTag(R.id.image_request);
+        if (tag instanceof Request) {
+            ((Request) tag).cancel();
+            view.setTag(R.id.image_request, null);
+        }
+        Object shown = view.getTag(R.id.image_bitmap);
+        if (shown instanceof Bitmap) {
+            view.setImageDrawable(null);
+            view.setTag(R.id.image_bitmap, null);
+            release((Bitmap) shown);
+        }
+    }
+
+    private void bind(ImageView view, Bitmap bitmap) {
+        view.setTag(R.id.image_bitmap, bitmap);
+        view.setImageBitmap(bitmap);
+    }
+
+    private Bitmap acquireCached(String key) {
+        synchronized (lock) {
+            Bitmap bitmap = memoryCache.get(key);
+            if (bitmap != null) {
+                acquire(bitmap);
+            }
+            return bitmap;
+        }
+    }
+
+    private void acquire(Bitmap bitmap) {
+        synchronized (lock) {
+            Integer count = activeCounts.get(bitmap);
+            activeCounts.put(bitmap, count == null ? 1 : count + 1);
+        }
+    }
+
+    private void release(Bitmap bitmap) {
+        synchronized (lock) {
+            Integer count = activeCounts.get(bitmap);
+            if (count == null) {
+                return;
+            }
+            if (count > 1) {
+                activeCounts.put(bitmap, count - 1);
+                return;
+            }
+            activeCounts.remove(bitmap);
+            if (evictedWhileActive.remove(bitmap)) {
+                pool.put(bitmap);
+            }
+        }
+    }
+
+    private void onRemovedFromMemory(Bitmap bitmap) {
+        synchronized (lock) {
+            if (activeCounts.containsKey(bitmap)) {
+                evictedWhileActive.add(bitmap);
+            } else {
+                pool.put(bitmap);
+            }
+        }
+    }
+
+    private File fetch(String url) throws IOException {
+        File file = diskCache.get(url);
+        if (file != null) {
+            return file;
+        }
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+        try (InputStream input = connection.getInputStream()) {
+            return diskCache.put(url, input);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private int targetWidth(ImageView view) {
+        if (view.getWidth() > 0) {
+            return view.getWidth();
+        }
+        ViewGroup.LayoutParams params = view.getLayoutParams();
+        return params != null && params.width > 0 ? params.width : fallbackWidth;
+    }
+
+    private int targetHeight(ImageView view) {
+        if (view.getHeight() > 0) {
+            return view.getHeight();
+        }
+        ViewGroup.LayoutParams params = view.getLayoutParams();
+        return params != null && params.height > 0 ? params.height : fallbackHeight;
+    }
+
+    private static String cacheKey(String url, int width, int height) {
+        return url + '@' + width + 'x' + height;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_MODERATE) {
+            memoryCache.evictAll();
+            pool.clear();
+        } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW) {
+            memoryCache.trimToSize(memoryCache.maxSize() / 2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration configuration) {}
+
+    public interface Prefetch {
+        void cancel();
+
+        boolean isDone();
+    }
+
+    private class Request implements Runnable, Prefetch {
+        final String url;
+        final String key;
+        final int width;
+        final int height;
+        final ImageView view;
+        volatile boolean cancelled;
+        Future<?> future;
+
+        Request(String url, String key, int width, int height, ImageView view) {
+            this.url = url;
+            this.key = key;
+            this.width = width;
+            this.height = height;
+            this.view = view;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        @Override
+        public boolean isDone() {
+            return future != null && future.isDone();
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            Bitmap bitmap;
+            try {
+                // Another request may have decoded the same image in the meantime
+                bitmap = view != null ? acquireCached(key) : memoryCache.get(key);
+                if (bitmap == null) {
+                    long start = SystemClock.uptimeMillis();
+                    File file = fetch(url);
+                    if (cancelled) {
+                        return;
+                    }
+                    bitmap = decoder.decode(file, width, height);
+                    if (bitmap == null) {
+                        return;
+                    }
+                    recordLoadTime(SystemClock.uptimeMillis() - start);
+                    if (view != null) {
+                        acquire(bitmap);
+                    }
+                    memoryCache.put(key, bitmap);
+                }
+                if (view == null) {
+                    return;
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to load " + url, e);
+                return;
+            }
+
+            Bitmap loaded = bitmap;
+            DataExecutors.main().execute(() -> {
+                if (cancelled || view.getTag(R.id.image_request) != this) {
+                    release(loaded);
+                    return;
+                }
+                view.setTag(R.id.image_request, null);
+                bind(view, loaded);
+            });
+        }
+    }
+}
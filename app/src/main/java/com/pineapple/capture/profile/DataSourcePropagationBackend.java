@@ -0,0 +1,74 @@
+package com.pineapple.capture.profile;
+
+import com.pineapple.capture.data.DataBatch;
+import com.pineapple.capture.data.DataDocument;
+import com.pineapple.capture.data.DataQuery;
+import com.pineapple.capture.data.DataSource;
+import com.pineapple.capture.data.DocumentCodec;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds copies with a collection group query over {@code friends} on {@code userId}, ordered by
+ * document path, which needs a collection group index on {@code userId}. Each query reads at
+ * most a batch's worth. The checkpoint lives in {@code users/{uid}/jobs/profilePropagation}.
+ */
+public class DataSourcePropagationBackend implements ProfilePropagation.Backend {
+    private final DataSource data;
+
+    public DataSourcePropagationBackend(DataSource data) {
+        this.data = data;
+    }
+
+    @Override
+    public List<ProfilePropagation.FriendCopy> loadCopies(String userId, String afterPath) throws Exception {
+        DataQuery query = DataQuery.collectionGroup("friends")
+            .whereEqualTo("userId", userId)
+            .orderBy(DataQuery.DOCUMENT_ID)
+            .limit(DataSource.MAX_BATCH_WRITES);
+        if (afterPath != null) {
+            query = query.startAfter(new DataDocument(afterPath, null));
+        }
+        List<ProfilePropagation.FriendCopy> copies = new ArrayList<>();
+        for (DataDocument doc : data.get(query).get().getDocuments()) {
+            copies.add(new ProfilePropagation.FriendCopy(doc.getPath(), doc.getData()));
+        }
+        return copies;
+    }
+
+    @Override
+    public ProfilePropagation.Checkpoint loadCheckpoint(String userId) throws Exception {
+        Map<String, Object> stored = data.get(checkpointPath(userId)).get().getData();
+        if (stored == null) {
+            return null;
+        }
+        Map<String, Object> target = new LinkedHashMap<>();
+        target.put("name", DocumentCodec.getString(stored, "name"));
+        target.put("profileImageUrl", DocumentCodec.getString(stored, "profileImageUrl"));
+        return new ProfilePropagation.Checkpoint(
+            target,
+            DocumentCodec.getString(stored, "lastPath"),
+            Boolean.TRUE.equals(stored.get("complete")));
+    }
+
+    @Override
+    public void commit(String userId, Map<String, Map<String, Object>> updates,
+                       ProfilePropagation.Checkpoint checkpoint) throws Exception {
+        DataBatch batch = data.batch();
+        for (Map.Entry<String, Map<String, Object>> update : updates.entrySet()) {
+            batch.update(update.getKey(), update.getValue());
+        }
+        Map<String, Object> stored = new HashMap<>(checkpoint.getTarget());
+        stored.put("lastPath", checkpoint.getLastPath());
+        stored.put("complete", checkpoint.isComplete());
+        batch.set(checkpointPath(userId), stored);
+        batch.commit().get();
+    }
+
+    private static String checkpointPath(String userId) {
+        return "users/" + userId + "/jobs/profilePropagation";
+    }
+}
@@ -3,9 +3,11 @@ package com.pineapple.capture.profile;
 import android.os.Bundle;
 import android.widget.ImageView;
 import android.widget.TextView;
+import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.lifecycle.ViewModelProvider;
 import com.pineapple.capture.R;
+import com.pineapple.capture.image.ImageLoader;
 
 public class ProfileActivity extends AppCompatActivity {
     private ProfileViewModel viewModel;
@@ -29,8 +31,19 @@ public class ProfileActivity extends AppCompatActivity {
             if (userProfile != null) {
                 userName.setText(userProfile.getName());
                 userBio.setText(userProfile.getBio());
-                // Load profile image using a library like Glide
+                ImageLoader.getInstance(this).load(userProfile.getProfileImageUrl(), profileImage);
             }
         });
+        viewModel.getErrorMessage().observe(this, error -> {
+            if (error != null) {
+                Toast.makeText(this, error, Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        ImageLoader.getInstance(this).cancel(profileImage);
+        super.onDestroy();
     }
 } 
\ No newline at end of file
@@ -0,0 +1,141 @@
+package com.pineapple.capture.profile;
+
+import com.pineapple.capture.data.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Copies a user's name and picture into the {@code friends} documents other users keep for
+ * them, since those documents hold a copy taken when the friend was added.
+ *
+ * <p>Only fields that differ from a document's copy are written, in batches that also carry a
+ * checkpoint with the target values and the last document covered. A run that stops part way
+ * resumes after the checkpoint; a run for values that were already propagated writes nothing.
+ *
+ * <p>All methods block on the backend; call them off the main thread.
+ */
+public class ProfilePropagation {
+    /** A friends document that copies the user's profile, as currently stored. */
+    public static class FriendCopy {
+        private final String path;
+        private final Map<String, Object> fields;
+
+        public FriendCopy(String path, Map<String, Object> fields) {
+            this.path = path;
+            this.fields = fields;
+        }
+
+        // Getters
+        public String getPath() { return path; }
+        public Map<String, Object> getFields() { return fields; }
+    }
+
+    public static class Checkpoint {
+        private final Map<String, Object> target;
+        private final String lastPath;
+        private final boolean complete;
+
+        public Checkpoint(Map<String, Object> target, String lastPath, boolean complete) {
+            this.target = target;
+            this.lastPath = lastPath;
+            this.complete = complete;
+        }
+
+        // Getters
+        public Map<String, Object> getTarget() { return target; }
+        public String getLastPath() { return lastPath; }
+        public boolean isComplete() { return complete; }
+    }
+
+    public interface Backend {
+        /**
+         * The next page of friends documents that reference the user, ordered by path, starting
+         * after afterPath. Empty once there are none left.
+         */
+        List<FriendCopy> loadCopies(String userId, String afterPath) throws Exception;
+
+        /** Returns null when the user's profile has never been propagated. */
+        Checkpoint loadCheckpoint(String userId) throws Exception;
+
+        /**
+         * Atomically updates the given fields of each document together with the checkpoint.
+         * Counts as {@code updates.size() + 1} writes.
+         */
+        void commit(String userId, Map<String, Map<String, Object>> updates, Checkpoint checkpoint) throws Exception;
+    }
+
+    private final Backend backend;
+    private final int updatesPerBatch;
+
+    public ProfilePropagation(Backend backend) {
+        this(backend, DataSource.MAX_BATCH_WRITES);
+    }
+
+    ProfilePropagation(Backend backend, int maxBatchWrites) {
+        if (maxBatchWrites < 2 || maxBatchWrites > DataSource.MAX_BATCH_WRITES) {
+            throw new IllegalArgumentException("maxBatchWrites must be between 2 and " + DataSource.MAX_BATCH_WRITES);
+        }
+        this.backend = backend;
+        // One write in every batch goes to the checkpoint
+        this.updatesPerBatch = maxBatchWrites - 1;
+    }
+
+    /** The profile fields a friends document copies. */
+    public static Map<String, Object> copiedFields(UserProfile profile) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("name", profile.getName());
+        fields.put("profileImageUrl", profile.getProfileImageUrl());
+        return fields;
+    }
+
+    /**
+     * Brings every copy of the user's profile up to date, continuing an earlier run for the same
+     * values where it stopped.
+     *
+     * @return the number of documents written by this run
+     */
+    public int run(String userId, UserProfile profile) throws Exception {
+        Map<String, Object> target = copiedFields(profile);
+        Checkpoint checkpoint = backend.loadCheckpoint(userId);
+        boolean sameTarget = checkpoint != null && target.equals(checkpoint.getTarget());
+        if (sameTarget && checkpoint.isComplete()) {
+            return 0;
+        }
+        // A run for other values leaves nothing worth resuming
+        String after = sameTarget ? checkpoint.getLastPath() : null;
+
+        Map<String, Map<String, Object>> batch = new LinkedHashMap<>();
+        String lastPath = after;
+        int written = 0;
+        // A page at a time, so a user with many friends never has every copy in memory
+        for (List<FriendCopy> copies = backend.loadCopies(userId, after); !copies.isEmpty();
+                copies = backend.loadCopies(userId, lastPath)) {
+            for (FriendCopy copy : copies) {
+                Map<String, Object> changed = changedFields(copy.getFields(), target);
+                if (!changed.isEmpty()) {
+                    batch.put(copy.getPath(), changed);
+                }
+                lastPath = copy.getPath();
+                if (batch.size() == updatesPerBatch) {
+                    backend.commit(userId, batch, new Checkpoint(target, lastPath, false));
+                    written += batch.size();
+                    batch = new LinkedHashMap<>();
+                }
+            }
+        }
+        backend.commit(userId, batch, new Checkpoint(target, lastPath, true));
+        return written + batch.size();
+    }
+
+    private static Map<String, Object> changedFields(Map<String, Object> current, Map<String, Object> target) {
+        Map<String, Object> changed = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> field : target.entrySet()) {
+            if (!Objects.equals(current.get(field.getKey()), field.getValue())) {
+                changed.put(field.getKey(), field.getValue());
+            }
+        }
+        return changed;
+    }
+}
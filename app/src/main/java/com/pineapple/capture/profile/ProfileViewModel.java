@@ -1,49 +1,151 @@
 package com.pineapple.capture.profile;
 
+import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
-import androidx.lifecycle.ViewModel;
-import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.firestore.FirebaseFirestore;
-
-public class ProfileViewModel extends ViewModel {
-    private FirebaseFirestore db;
-    private FirebaseAuth auth;
-    private MutableLiveData<UserProfile> userProfile;
-
-    public ProfileViewModel() {
-        db = FirebaseFirestore.getInstance();
-        auth = FirebaseAuth.getInstance();
-        userProfile = new MutableLiveData<>();
+import com.google.firebase.firestore.ListenerRegistration;
+import com.pineapple.capture.data.AuthSource;
+import com.pineapple.capture.data.DataDocument;
+import com.pineapple.capture.data.DataExecutors;
+import com.pineapple.capture.data.DataSource;
+import com.pineapple.capture.data.DataSources;
+import com.pineapple.capture.data.SnapshotPipeline;
+import com.pineapple.capture.data.SnapshotRepository;
+import com.pineapple.capture.data.WriteQueue;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ProfileViewModel extends AndroidViewModel {
+    private static final String TAG = "ProfileViewModel";
+
+    private final DataSource data;
+    private final AuthSource auth;
+    private final WriteQueue writeQueue;
+    private SnapshotPipeline<UserProfile> userProfile;
+    private final ProfilePropagation propagation;
+    // Copied fields last propagated by this view model; confined to the mapping thread
+    private Map<String, Object> propagated;
+    private ListenerRegistration profileRegistration;
+    private final MutableLiveData<String> errorMessage = new MutableLiveData<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable resubscribe = this::loadUserProfile;
+    // Failures of the profile listener in a row; confined to the mapping thread
+    private int listenFailures;
+    // Main thread only
+    private boolean cleared;
+
+    public ProfileViewModel(Application application) {
+        this(application, DataSources.data(), DataSources.auth());
+    }
+
+    public ProfileViewModel(Application application, DataSource data, AuthSource auth) {
+        super(application);
+        this.data = data;
+        this.auth = auth;
+        writeQueue = WriteQueue.getInstance(application, data);
+        propagation = new ProfilePropagation(new DataSourcePropagationBackend(data));
+        userProfile = new SnapshotPipeline<>("profile");
         loadUserProfile();
     }
 
     private void loadUserProfile() {
-        String userId = auth.getCurrentUser() != null ? auth.getCurrentUser().getUid() : null;
-        if (userId != null) {
-            db.collection("users").document(userId)
-                .addSnapshotListener((document, error) -> {
-                    if (error != null) {
-                        return;
+        String userId = auth.getCurrentUserId();
+        if (userId == null || cleared) {
+            return;
+        }
+        // Shared with every other screen observing this profile. Metadata changes are included
+        // so the snapshot in which the server accepts a write arrives too
+        profileRegistration = SnapshotRepository.getInstance(data).observeDocumentWithMetadata(
+            "users/" + userId, new SnapshotRepository.Observer<DataDocument>() {
+                @Override
+                public void onValue(DataDocument document, boolean replay) {
+                    if (listenFailures > 0) {
+                        listenFailures = 0;
+                        errorMessage.postValue(null);
                     }
-                    if (document != null && document.exists()) {
-                        UserProfile profile = document.toObject(UserProfile.class);
-                        userProfile.setValue(profile);
+                    if (document.exists()) {
+                        UserProfile profile = UserProfileCodec.INSTANCE.decode(document);
+                        userProfile.publish(userProfile.begin(), profile);
+                        // Local writes not yet accepted by the server may still be rejected
+                        if (!document.hasPendingWrites()) {
+                            propagate(userId, profile);
+                        }
                     }
-                });
-        }
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    Log.w(TAG, "Profile listener failed", e);
+                    if (listenFailures++ == 0) {
+                        errorMessage.postValue("Could not load profile");
+                    }
+                    handler.postDelayed(resubscribe, SnapshotRepository.resubscribeDelayMillis(listenFailures));
+                }
+            });
     }
 
     public void updateProfile(String name, String bio) {
-        String userId = auth.getCurrentUser() != null ? auth.getCurrentUser().getUid() : null;
+        String userId = auth.getCurrentUserId();
         if (userId != null) {
             UserProfile profile = new UserProfile(name, bio);
-            db.collection("users").document(userId)
-                .set(profile);
+            UserProfile current = userProfile.getLiveData().getValue();
+            if (current != null) {
+                profile.setProfileImageUrl(current.getProfileImageUrl());
+            }
+            // Merged rather than set, so fields this screen does not edit are kept
+            Map<String, Object> fields = new HashMap<>();
+            fields.put("name", name);
+            fields.put("bio", bio);
+            writeQueue.merge("users/" + userId, fields);
+            // Shown right away; the listener only sees the write once the queue commits it
+            DataExecutors.mapping().execute(() -> userProfile.publish(userProfile.begin(), profile));
         }
     }
 
+    /**
+     * Pushes the copied fields into the friends documents that reference this user, when they
+     * changed since the last run. Each snapshot of the profile triggers this, so an interrupted
+     * run is picked up again the next time the profile loads.
+     */
+    private void propagate(String userId, UserProfile profile) {
+        Map<String, Object> target = ProfilePropagation.copiedFields(profile);
+        if (target.equals(propagated)) {
+            return;
+        }
+        propagated = target;
+        DataExecutors.fanout().execute(() -> {
+            try {
+                propagation.run(userId, profile);
+            } catch (Exception e) {
+                Log.w(TAG, "Profile propagation stopped", e);
+                DataExecutors.mapping().execute(() -> {
+                    if (target.equals(propagated)) {
+                        propagated = null;
+                    }
+                });
+            }
+        });
+    }
+
     public LiveData<UserProfile> getUserProfile() {
-        return userProfile;
+        return userProfile.getLiveData();
+    }
+
+    /** Why the profile may be out of date, or null while it is current. */
+    public LiveData<String> getErrorMessage() {
+        return errorMessage;
+    }
+
+    @Override
+    protected void onCleared() {
+        cleared = true;
+        handler.removeCallbacks(resubscribe);
+        if (profileRegistration != null) {
+            profileRegistration.remove();
+        }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,29 @@
+package com.pineapple.capture.profile;
+
+import com.pineapple.capture.data.DocumentCodec;
+import java.util.HashMap;
+import java.util.Map;
+
+public final class UserProfileCodec implements DocumentCodec<UserProfile> {
+    public static final UserProfileCodec INSTANCE = new UserProfileCodec();
+
+    private UserProfileCodec() {}
+
+    @Override
+    public UserProfile decode(String id, Map<String, Object> data) {
+        UserProfile profile = new UserProfile();
+        profile.setName(DocumentCodec.getString(data, "name"));
+        profile.setBio(DocumentCodec.getString(data, "bio"));
+        profile.setProfileImageUrl(DocumentCodec.getString(data, "profileImageUrl"));
+        return profile;
+    }
+
+    @Override
+    public Map<String, Object> encode(UserProfile profile) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("name", profile.getName());
+        data.put("bio", profile.getBio());
+        data.put("profileImageUrl", profile.getProfileImageUrl());
+        return data;
+    }
+}
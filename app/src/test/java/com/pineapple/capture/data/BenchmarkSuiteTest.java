@@ -0,0 +1,44 @@
+package com.pineapple.capture.data;
+
+import java.io.File;
+import org.junit.Test;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs the JMH benchmarks of the data path, only when asked for since a full run takes several
+ * minutes: {@code ./gradlew testDebugUnitTest -Pjmh --tests '*BenchmarkSuiteTest'}. A value
+ * such as {@code -Pjmh=Snapshot} narrows the run to matching benchmarks.
+ *
+ * <p>Scores are operations per second. The GC profiler adds the allocation rate, where
+ * {@code gc.alloc.rate.norm} is bytes per operation. Results are also written as JSON to
+ * {@code build/reports/jmh/results.json} for comparing runs.
+ */
+public class BenchmarkSuiteTest {
+    @Test
+    public void run() throws Exception {
+        String include = System.getProperty("jmh");
+        assumeTrue("Pass -Pjmh to run the benchmarks", include != null);
+
+        File results = new File("build/reports/jmh/results.json");
+        results.getParentFile().mkdirs();
+        Options options = new OptionsBuilder()
+            .include(include.isEmpty() ? "com\\.pineapple\\.capture\\..*Benchmark" : include)
+            .warmupIterations(3)
+            .warmupTime(TimeValue.seconds(1))
+            .measurementIterations(5)
+            .measurementTime(TimeValue.seconds(1))
+            .forks(1)
+            .addProfiler(GCProfiler.class)
+            .resultFormat(ResultFormatType.JSON)
+            .result(results.getPath())
+            .build();
+        new Runner(options).run();
+    }
+}
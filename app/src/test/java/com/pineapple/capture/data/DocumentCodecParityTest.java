@@ -0,0 +1,113 @@
+package com.pineapple.capture.data;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.util.CustomClassMapper;
+import com.pineapple.capture.auth.AuthViewModel;
+import com.pineapple.capture.auth.UsernameReservationCodec;
+import com.pineapple.capture.feed.FeedItem;
+import com.pineapple.capture.feed.FeedItemCodec;
+import com.pineapple.capture.friends.Friend;
+import com.pineapple.capture.friends.FriendCodec;
+import com.pineapple.capture.profile.UserProfile;
+import com.pineapple.capture.profile.UserProfileCodec;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the hand-written codecs read and write exactly what Firestore's reflective
+ * bean mapper does for the same models.
+ */
+public class DocumentCodecParityTest {
+    @Test
+    public void feedItem_matchesReflectiveMapping() {
+        FeedItem item = new FeedItem("user-1", "Hello", "https://example.com/a.jpg");
+        item.setId("post-1");
+        item.setTimestamp(new Timestamp(1700000000L, 123000));
+        item.setLikes(42);
+        item.setLikeShards(10);
+
+        Map<String, Object> encoded = FeedItemCodec.INSTANCE.encode(item);
+        assertEquals(CustomClassMapper.convertToPlainJavaTypes(item), encoded);
+
+        FeedItem reflective = CustomClassMapper.convertToCustomClass(encoded, FeedItem.class, null);
+        FeedItem decoded = FeedItemCodec.INSTANCE.decode("post-1", encoded);
+        assertEquals(reflective.getId(), decoded.getId());
+        assertEquals(reflective.getUserId(), decoded.getUserId());
+        assertEquals(reflective.getContent(), decoded.getContent());
+        assertEquals(reflective.getImageUrl(), decoded.getImageUrl());
+        assertEquals(reflective.getTimestamp(), decoded.getTimestamp());
+        assertEquals(reflective.getLikes(), decoded.getLikes());
+        assertEquals(reflective.getLikeShards(), decoded.getLikeShards());
+    }
+
+    @Test
+    public void feedItem_nullFieldsMatchReflectiveMapping() {
+        FeedItem item = new FeedItem();
+        item.setId("post-2");
+
+        Map<String, Object> encoded = FeedItemCodec.INSTANCE.encode(item);
+        assertEquals(CustomClassMapper.convertToPlainJavaTypes(item), encoded);
+
+        FeedItem decoded = FeedItemCodec.INSTANCE.decode("post-2", encoded);
+        assertNull(decoded.getContent());
+        assertNull(decoded.getTimestamp());
+        assertEquals(0, decoded.getLikes());
+    }
+
+    @Test
+    public void friend_matchesReflectiveMapping() {
+        Friend friend = new Friend("user-2", "Ana", "https://example.com/ana.jpg");
+        friend.setFriendsSince(1700000000000L);
+
+        Map<String, Object> encoded = FriendCodec.INSTANCE.encode(friend);
+        assertEquals(CustomClassMapper.convertToPlainJavaTypes(friend), encoded);
+
+        Friend reflective = CustomClassMapper.convertToCustomClass(encoded, Friend.class, null);
+        Friend decoded = FriendCodec.INSTANCE.decode("user-2", encoded);
+        assertEquals(reflective.getUserId(), decoded.getUserId());
+        assertEquals(reflective.getName(), decoded.getName());
+        assertEquals(reflective.getProfileImageUrl(), decoded.getProfileImageUrl());
+        assertEquals(reflective.getFriendsSince(), decoded.getFriendsSince());
+    }
+
+    @Test
+    public void userProfile_matchesReflectiveMapping() {
+        UserProfile profile = new UserProfile("Ana", "Likes pineapples");
+        profile.setProfileImageUrl("https://example.com/ana.jpg");
+
+        Map<String, Object> encoded = UserProfileCodec.INSTANCE.encode(profile);
+        assertEquals(CustomClassMapper.convertToPlainJavaTypes(profile), encoded);
+
+        UserProfile reflective = CustomClassMapper.convertToCustomClass(encoded, UserProfile.class, null);
+        UserProfile decoded = UserProfileCodec.INSTANCE.decode("user-2", encoded);
+        assertEquals(reflective.getName(), decoded.getName());
+        assertEquals(reflective.getBio(), decoded.getBio());
+        assertEquals(reflective.getProfileImageUrl(), decoded.getProfileImageUrl());
+    }
+
+    @Test
+    public void usernameReservation_matchesReflectiveMapping() {
+        AuthViewModel.UsernameReservation reservation = new AuthViewModel.UsernameReservation("user-3");
+
+        Map<String, Object> encoded = UsernameReservationCodec.INSTANCE.encode(reservation);
+        assertEquals(CustomClassMapper.convertToPlainJavaTypes(reservation), encoded);
+
+        AuthViewModel.UsernameReservation reflective =
+            CustomClassMapper.convertToCustomClass(encoded, AuthViewModel.UsernameReservation.class, null);
+        AuthViewModel.UsernameReservation decoded = UsernameReservationCodec.INSTANCE.decode("ana", encoded);
+        assertEquals(reflective.getUserId(), decoded.getUserId());
+    }
+
+    @Test
+    public void decode_toleratesNumericWidening() {
+        Map<String, Object> encoded = FeedItemCodec.INSTANCE.encode(new FeedItem("user-1", "Hi", null));
+        // Firestore hands integers back as Long
+        encoded.put("likes", 7L);
+
+        FeedItem reflective = CustomClassMapper.convertToCustomClass(encoded, FeedItem.class, null);
+        FeedItem decoded = FeedItemCodec.INSTANCE.decode(null, encoded);
+        assertEquals(reflective.getLikes(), decoded.getLikes());
+    }
+}
@@ -0,0 +1,116 @@
+package com.pineapple.capture.data;
+
+import com.google.firebase.firestore.ListenerRegistration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class InMemoryDataSourceTest {
+    private InMemoryDataSource data;
+
+    @Before
+    public void setUp() throws Exception {
+        data = new InMemoryDataSource();
+        for (int i = 0; i < 10; i++) {
+            data.set("posts/p" + i, post(i * 10L)).get();
+        }
+    }
+
+    @Test
+    public void query_pagesInOrderWithCursor() throws Exception {
+        DataQuery query = DataQuery.collection("posts").orderBy("timestamp", DataQuery.Direction.DESCENDING);
+
+        List<DataDocument> first = data.get(query.limit(4)).get().getDocuments();
+        assertEquals(Arrays.asList("p9", "p8", "p7", "p6"), ids(first));
+
+        List<DataDocument> second = data.get(query.startAfter(first.get(3)).limit(4)).get().getDocuments();
+        assertEquals(Arrays.asList("p5", "p4", "p3", "p2"), ids(second));
+    }
+
+    @Test
+    public void query_filtersByDocumentId() throws Exception {
+        DataQuery query = DataQuery.collection("posts").whereIn(DataQuery.DOCUMENT_ID, Arrays.asList("p2", "p7", "missing"));
+
+        assertEquals(Arrays.asList("p2", "p7"), ids(data.get(query).get().getDocuments()));
+    }
+
+    @Test
+    public void listen_reportsChangesWithinLimit() throws Exception {
+        BlockingQueue<DataSnapshot> events = new LinkedBlockingQueue<>();
+        DataQuery query = DataQuery.collection("posts").orderBy("timestamp", DataQuery.Direction.DESCENDING).limit(3);
+        ListenerRegistration registration = data.listen(query, Runnable::run, (value, error) -> events.add(value));
+
+        DataSnapshot initial = events.poll(5, TimeUnit.SECONDS);
+        assertEquals(3, initial.getChanges().size());
+        assertEquals(Arrays.asList("p9", "p8", "p7"), ids(initial.getDocuments()));
+
+        // The newest post pushes the oldest one out of the page
+        data.set("posts/new", post(1000L)).get();
+        DataSnapshot next = events.poll(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("new", "p9", "p8"), ids(next.getDocuments()));
+        List<DataChange> changes = next.getChanges();
+        assertEquals(2, changes.size());
+        assertEquals(DataChange.Type.REMOVED, changes.get(0).getType());
+        assertEquals("p7", changes.get(0).getDocument().getId());
+        assertEquals(2, changes.get(0).getOldIndex());
+        assertEquals(DataChange.Type.ADDED, changes.get(1).getType());
+        assertEquals(0, changes.get(1).getNewIndex());
+
+        // Outside the page, so nothing to report
+        data.set("posts/old", post(-1L)).get();
+        registration.remove();
+        assertNull(events.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void batch_appliesNothingWhenAWriteFails() throws Exception {
+        DataBatch batch = data.batch();
+        batch.set("posts/extra", post(5L));
+        batch.update("posts/missing", Collections.singletonMap("likes", 1L));
+        try {
+            batch.commit().get();
+            fail("Expected the update of a missing document to fail");
+        } catch (ExecutionException expected) {
+        }
+        assertFalse(data.get("posts/extra").get().exists());
+    }
+
+    @Test
+    public void update_incrementsNestedFields() throws Exception {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("likes", DataSource.increment(2));
+        fields.put("stats.views", DataSource.increment(1));
+        data.update("posts/p1", fields).get();
+        data.update("posts/p1", Collections.singletonMap("likes", DataSource.increment(-1))).get();
+
+        DataDocument document = data.get("posts/p1").get();
+        assertEquals(1L, document.get("likes"));
+        assertEquals(Collections.singletonMap("views", 1L), document.get("stats"));
+        assertEquals(10L, document.get("timestamp"));
+    }
+
+    private static Map<String, Object> post(long timestamp) {
+        Map<String, Object> post = new HashMap<>();
+        post.put("timestamp", timestamp);
+        return post;
+    }
+
+    private static List<String> ids(List<DataDocument> documents) {
+        List<String> ids = new ArrayList<>();
+        for (DataDocument document : documents) {
+            ids.add(document.getId());
+        }
+        return ids;
+    }
+}
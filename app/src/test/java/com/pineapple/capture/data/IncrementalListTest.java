@@ -0,0 +1,61 @@
+package com.pineapple.capture.data;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class IncrementalListTest {
+    private final IncrementalList<String> list = new IncrementalList<>(item -> item);
+
+    @Test
+    public void snapshot_isNotChangedByLaterEdits() {
+        list.add("a");
+        list.add("b");
+        ListSnapshot<String> first = list.snapshot();
+
+        list.remove(0);
+        list.add("c");
+
+        assertEquals(Arrays.asList("a", "b"), first.getItems());
+        assertEquals(Arrays.asList("b", "c"), list.snapshot().getItems());
+    }
+
+    @Test
+    public void indexOf_followsInsertsMovesAndRemovals() {
+        for (String item : Arrays.asList("a", "b", "c", "d")) {
+            list.add(item);
+        }
+        assertEquals(3, list.indexOf("d"));
+
+        list.insert(0, "e");
+        list.move(4, 1);
+        list.remove(2);
+
+        assertItems(Arrays.asList("e", "d", "b", "c"));
+        assertEquals(-1, list.indexOf("a"));
+    }
+
+    @Test
+    public void snapshots_chainByVersion() {
+        list.add("a");
+        ListSnapshot<String> first = list.snapshot();
+        list.add("b");
+        ListSnapshot<String> second = list.snapshot();
+
+        assertEquals(ListSnapshot.empty().getVersion(), first.getBaseVersion());
+        assertEquals(first.getVersion(), second.getBaseVersion());
+        ListSnapshot<String> merged = ListSnapshot.merge(first, second);
+        assertEquals(first.getBaseVersion(), merged.getBaseVersion());
+        assertEquals(second.getVersion(), merged.getVersion());
+    }
+
+    private void assertItems(List<String> expected) {
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), list.get(i));
+            assertEquals(i, list.indexOf(expected.get(i)));
+        }
+        assertEquals(expected.size(), list.size());
+    }
+}
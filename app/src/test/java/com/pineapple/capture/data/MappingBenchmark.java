@@ -0,0 +1,86 @@
+package com.pineapple.capture.data;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.util.CustomClassMapper;
+import com.pineapple.capture.feed.FeedItem;
+import com.pineapple.capture.feed.FeedItemCodec;
+import com.pineapple.capture.friends.Friend;
+import com.pineapple.capture.friends.FriendCodec;
+import com.pineapple.capture.profile.UserProfile;
+import com.pineapple.capture.profile.UserProfileCodec;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Document mapping throughput of the hand-written codecs, with Firestore's reflective mapper
+ * as the baseline for the feed item.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MappingBenchmark {
+    private FeedItem feedItem;
+    private Friend friend;
+    private UserProfile profile;
+    private Map<String, Object> feedItemData;
+    private Map<String, Object> friendData;
+    private Map<String, Object> profileData;
+
+    @Setup
+    public void setUp() {
+        feedItem = new FeedItem("user-1", "Sunset over the bay", "https://example.com/posts/1.jpg");
+        feedItem.setId("post-1");
+        feedItem.setTimestamp(new Timestamp(1700000000L, 123000));
+        feedItem.setLikes(42);
+        feedItem.setLikeShards(10);
+        friend = new Friend("user-2", "Ana Nguyen", "https://example.com/users/2.jpg");
+        profile = new UserProfile("Ana Nguyen", "Likes pineapples");
+        profile.setProfileImageUrl("https://example.com/users/2.jpg");
+
+        feedItemData = FeedItemCodec.INSTANCE.encode(feedItem);
+        friendData = FriendCodec.INSTANCE.encode(friend);
+        profileData = UserProfileCodec.INSTANCE.encode(profile);
+    }
+
+    @Benchmark
+    public FeedItem decodeFeedItem() {
+        return FeedItemCodec.INSTANCE.decode("post-1", feedItemData);
+    }
+
+    @Benchmark
+    public FeedItem decodeFeedItemReflective() {
+        return CustomClassMapper.convertToCustomClass(feedItemData, FeedItem.class, null);
+    }
+
+    @Benchmark
+    public Map<String, Object> encodeFeedItem() {
+        return FeedItemCodec.INSTANCE.encode(feedItem);
+    }
+
+    @Benchmark
+    public Friend decodeFriend() {
+        return FriendCodec.INSTANCE.decode("user-2", friendData);
+    }
+
+    @Benchmark
+    public Map<String, Object> encodeFriend() {
+        return FriendCodec.INSTANCE.encode(friend);
+    }
+
+    @Benchmark
+    public UserProfile decodeUserProfile() {
+        return UserProfileCodec.INSTANCE.decode("user-2", profileData);
+    }
+
+    @Benchmark
+    public Map<String, Object> encodeUserProfile() {
+        return UserProfileCodec.INSTANCE.encode(profile);
+    }
+}
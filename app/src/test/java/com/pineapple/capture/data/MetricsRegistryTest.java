@@ -0,0 +1,66 @@
+package com.pineapple.capture.data;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MetricsRegistryTest {
+    private final MetricsRegistry metrics = MetricsRegistry.getInstance();
+
+    @Before
+    public void setUp() {
+        metrics.reset();
+    }
+
+    @Test
+    public void histogram_percentilesWithinBucket() {
+        MetricsRegistry.Histogram histogram = new MetricsRegistry.Histogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(50.5, histogram.getMean(), 0.001);
+        assertEquals(63, histogram.getPercentile(50));
+        assertEquals(100, histogram.getPercentile(99));
+        assertEquals(100, histogram.getMax());
+    }
+
+    @Test
+    public void histogram_emptyReportsZero() {
+        MetricsRegistry.Histogram histogram = new MetricsRegistry.Histogram();
+
+        assertEquals(0, histogram.getPercentile(90));
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void trace_recordsOperationsByPattern() throws Exception {
+        TracingDataSource data = new TracingDataSource(new InMemoryDataSource());
+        data.set("users/u1", Collections.singletonMap("name", "Ana")).get();
+        data.set("users/u2", Collections.singletonMap("name", "Bao")).get();
+        data.get(DataQuery.collection("users")).get();
+
+        assertEquals(2, metrics.timer("set users/*").getCount());
+        assertEquals(1, metrics.timer("query users").getCount());
+        assertEquals(2, metrics.size("query users").getMax());
+    }
+
+    @Test
+    public void trace_countsFailures() {
+        CompletableFuture<Void> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new Exception("offline"));
+
+        assertSame(failed, metrics.trace("op", () -> failed));
+        assertEquals(1, metrics.timer("op").getCount());
+    }
+
+    @Test
+    public void pattern_hidesDocumentIds() {
+        assertEquals("users/*/friends/*", TracingDataSource.pattern("users/u1/friends/u2"));
+        assertEquals("users/*/friends", TracingDataSource.pattern("users/u1/friends"));
+    }
+}
@@ -0,0 +1,193 @@
+package com.pineapple.capture.data;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PendingWriteTest {
+    private static final String PATH = "users/u1";
+
+    @Test
+    public void anyThenSet_isTheSet() {
+        PendingWrite set = PendingWrite.set(PATH, fields("name", "b"));
+        for (PendingWrite first : everyKind()) {
+            assertSame(set, first.then(set));
+        }
+    }
+
+    @Test
+    public void anyThenDelete_isTheDelete() {
+        PendingWrite delete = PendingWrite.delete(PATH);
+        for (PendingWrite first : everyKind()) {
+            assertSame(delete, first.then(delete));
+        }
+    }
+
+    @Test
+    public void setThenMerge_staysSetWithFieldsOverlaid() {
+        PendingWrite folded = PendingWrite.set(PATH, fields("name", "a", "bio", "x"))
+            .then(PendingWrite.merge(PATH, fields("name", "b")));
+
+        assertEquals(PendingWrite.Kind.SET, folded.getKind());
+        assertEquals(fields("name", "b", "bio", "x"), folded.getFields());
+        assertTrue(folded.getIncrements().isEmpty());
+    }
+
+    @Test
+    public void setThenUpdate_staysSet() {
+        PendingWrite folded = PendingWrite.set(PATH, fields("name", "a"))
+            .then(PendingWrite.update(PATH, fields("bio", "x")));
+
+        assertEquals(PendingWrite.Kind.SET, folded.getKind());
+        assertEquals(fields("name", "a", "bio", "x"), folded.getFields());
+    }
+
+    @Test
+    public void mergeThenMerge_isMerge() {
+        PendingWrite folded = PendingWrite.merge(PATH, fields("name", "a"))
+            .then(PendingWrite.merge(PATH, fields("bio", "x")));
+
+        assertEquals(PendingWrite.Kind.MERGE, folded.getKind());
+        assertEquals(fields("name", "a", "bio", "x"), folded.getFields());
+    }
+
+    @Test
+    public void mergeThenUpdate_staysMerge() {
+        PendingWrite folded = PendingWrite.merge(PATH, fields("name", "a"))
+            .then(PendingWrite.update(PATH, fields("name", "b")));
+
+        assertEquals(PendingWrite.Kind.MERGE, folded.getKind());
+        assertEquals(fields("name", "b"), folded.getFields());
+    }
+
+    @Test
+    public void updateThenUpdate_isUpdate() {
+        PendingWrite folded = PendingWrite.update(PATH, fields("name", "a"))
+            .then(PendingWrite.update(PATH, fields("bio", "x")));
+
+        assertEquals(PendingWrite.Kind.UPDATE, folded.getKind());
+        assertEquals(fields("name", "a", "bio", "x"), folded.getFields());
+    }
+
+    @Test
+    public void updateThenMerge_isMerge() {
+        PendingWrite folded = PendingWrite.update(PATH, fields("name", "a"))
+            .then(PendingWrite.merge(PATH, fields("bio", "x")));
+
+        assertEquals(PendingWrite.Kind.MERGE, folded.getKind());
+        assertEquals(fields("name", "a", "bio", "x"), folded.getFields());
+    }
+
+    @Test
+    public void deleteThenUpdate_staysDelete() {
+        PendingWrite delete = PendingWrite.delete(PATH);
+
+        assertSame(delete, delete.then(PendingWrite.update(PATH, fields("name", "a"))));
+    }
+
+    @Test
+    public void deleteThenMerge_setsMergedFieldsAndIncrementsAsValues() {
+        PendingWrite merge = PendingWrite.merge(PATH, fields("name", "a"))
+            .then(PendingWrite.increment(PATH, "count", 2L));
+        PendingWrite folded = PendingWrite.delete(PATH).then(merge);
+
+        assertEquals(PendingWrite.Kind.SET, folded.getKind());
+        assertEquals(fields("name", "a", "count", 2L), folded.getFields());
+        assertTrue(folded.getIncrements().isEmpty());
+    }
+
+    @Test
+    public void increments_addUp() {
+        PendingWrite folded = PendingWrite.increment(PATH, "count", 1L)
+            .then(PendingWrite.increment(PATH, "count", 2L));
+
+        assertEquals(PendingWrite.Kind.MERGE, folded.getKind());
+        assertEquals(Collections.singletonMap("count", 3L), folded.getIncrements());
+    }
+
+    @Test
+    public void increments_thatCancelOut_leaveNothing() {
+        assertNull(PendingWrite.increment(PATH, "count", 1L).then(PendingWrite.increment(PATH, "count", -1L)));
+    }
+
+    @Test
+    public void increments_thatCancelOut_keepOtherFields() {
+        PendingWrite folded = PendingWrite.merge(PATH, fields("name", "a"))
+            .then(PendingWrite.increment(PATH, "count", 1L))
+            .then(PendingWrite.increment(PATH, "count", -1L));
+
+        assertEquals(fields("name", "a"), folded.getFields());
+        assertTrue(folded.getIncrements().isEmpty());
+    }
+
+    @Test
+    public void increment_ofKnownValue_foldsIntoIt() {
+        PendingWrite folded = PendingWrite.set(PATH, fields("count", 5L))
+            .then(PendingWrite.increment(PATH, "count", 2L));
+
+        assertEquals(fields("count", 7L), folded.getFields());
+        assertTrue(folded.getIncrements().isEmpty());
+    }
+
+    @Test
+    public void increment_ofKnownNonNumber_startsFromZero() {
+        PendingWrite folded = PendingWrite.merge(PATH, fields("count", "none"))
+            .then(PendingWrite.increment(PATH, "count", 2L));
+
+        assertEquals(fields("count", 2L), folded.getFields());
+        assertTrue(folded.getIncrements().isEmpty());
+    }
+
+    @Test
+    public void increment_ofFieldMissingFromSet_startsFromZero() {
+        PendingWrite folded = PendingWrite.set(PATH, fields("name", "a"))
+            .then(PendingWrite.increment(PATH, "count", 0.5));
+
+        assertEquals(fields("name", "a", "count", 0.5), folded.getFields());
+    }
+
+    @Test
+    public void fieldWrittenAfterIncrement_replacesIt() {
+        PendingWrite folded = PendingWrite.increment(PATH, "count", 1L)
+            .then(PendingWrite.merge(PATH, fields("count", 10L)));
+
+        assertEquals(fields("count", 10L), folded.getFields());
+        assertTrue(folded.getIncrements().isEmpty());
+    }
+
+    @Test
+    public void markerTaps_foldIntoTheLastWithItsCounter() {
+        PendingWrite folded = PendingWrite.setMarker(PATH, fields("likedAt", 1L), "posts/p1", "likes");
+        for (int tap = 0; tap < 4; tap++) {
+            folded = tap % 2 == 0
+                ? folded.then(PendingWrite.deleteMarker(PATH, "posts/p1", "likes"))
+                : folded.then(PendingWrite.setMarker(PATH, fields("likedAt", 2L), "posts/p1", "likes"));
+        }
+
+        assertEquals(PendingWrite.Kind.SET, folded.getKind());
+        assertTrue(folded.isMarker());
+        assertEquals("posts/p1", folded.getCounterPath());
+        assertEquals(fields("likedAt", 2L), folded.getFields());
+    }
+
+    private static PendingWrite[] everyKind() {
+        return new PendingWrite[] {
+            PendingWrite.set(PATH, fields("name", "a")),
+            PendingWrite.merge(PATH, fields("name", "a")),
+            PendingWrite.update(PATH, fields("name", "a")),
+            PendingWrite.delete(PATH),
+            PendingWrite.increment(PATH, "count", 1L),
+        };
+    }
+
+    private static Map<String, Object> fields(Object... keysAndValues) {
+        Map<String, Object> fields = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            fields.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return fields;
+    }
+}
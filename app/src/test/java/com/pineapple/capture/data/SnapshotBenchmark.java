@@ -0,0 +1,141 @@
+package com.pineapple.capture.data;
+
+import androidx.recyclerview.widget.DiffUtil;
+import com.google.firebase.Timestamp;
+import com.pineapple.capture.feed.FeedAdapter;
+import com.pineapple.capture.feed.FeedItem;
+import com.pineapple.capture.feed.FeedItemCodec;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of turning a feed snapshot into the list the UI shows, by mapping every document again
+ * or by applying only the changes, and of the DiffUtil pass FeedAdapter runs on the two lists
+ * when it has no changes to replay. Each snapshot adds a post at the head, drops the oldest one and edits one post in a hundred.
+ * Invocations alternate between that snapshot and the one undoing it, so the list stays the
+ * same size throughout.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SnapshotBenchmark {
+    private static final Comparator<DataDocument> NEWEST_FIRST = (a, b) -> {
+        int byTimestamp = InMemoryDataSource.compareValues(a.get("timestamp"), b.get("timestamp"));
+        return byTimestamp != 0 ? -byTimestamp : -a.getPath().compareTo(b.getPath());
+    };
+
+    @Param({"100", "1000", "10000"})
+    public int size;
+
+    private List<DataDocument> before;
+    private List<DataDocument> after;
+    private DataSnapshot forward;
+    private DataSnapshot backward;
+    private List<FeedItem> beforeItems;
+    private List<FeedItem> afterItems;
+    private IncrementalList<FeedItem> list;
+    private boolean atAfter;
+
+    @Setup
+    public void setUp() {
+        before = new ArrayList<>(size);
+        for (int i = size; i > 0; i--) {
+            before.add(post(i, 0));
+        }
+        after = new ArrayList<>(size);
+        after.add(post(size + 1, 0));
+        for (int i = 0; i < size - 1; i++) {
+            DataDocument document = before.get(i);
+            after.add(i % 100 == 50 ? post(size - i, 1) : document);
+        }
+        forward = new DataSnapshot(after, InMemoryDataSource.diff(before, after, NEWEST_FIRST));
+        backward = new DataSnapshot(before, InMemoryDataSource.diff(after, before, NEWEST_FIRST));
+        beforeItems = decode(before);
+        afterItems = decode(after);
+
+        list = new IncrementalList<>(FeedItem::getId);
+        for (DataDocument document : before) {
+            list.add(FeedItemCodec.INSTANCE.decode(document));
+        }
+        list.snapshot();
+        atAfter = false;
+    }
+
+    @Benchmark
+    public ListSnapshot<FeedItem> rebuild() {
+        return new ListSnapshot<>(decode(next().getDocuments()), new ListChanges());
+    }
+
+    @Benchmark
+    public ListSnapshot<FeedItem> applyIncrementally() {
+        SnapshotChanges.apply(next(), list, FeedItemCodec.INSTANCE::decode);
+        return list.snapshot();
+    }
+
+    @Benchmark
+    public DiffUtil.DiffResult diff() {
+        atAfter = !atAfter;
+        return atAfter ? calculateDiff(beforeItems, afterItems) : calculateDiff(afterItems, beforeItems);
+    }
+
+    private DataSnapshot next() {
+        atAfter = !atAfter;
+        return atAfter ? forward : backward;
+    }
+
+    // As AsyncListDiffer runs it for FeedAdapter, moves included
+    private static DiffUtil.DiffResult calculateDiff(List<FeedItem> oldItems, List<FeedItem> newItems) {
+        return DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldItems.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newItems.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                return FeedAdapter.DIFF_CALLBACK.areItemsTheSame(oldItems.get(oldPosition), newItems.get(newPosition));
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                return FeedAdapter.DIFF_CALLBACK.areContentsTheSame(oldItems.get(oldPosition), newItems.get(newPosition));
+            }
+
+            @Override
+            public Object getChangePayload(int oldPosition, int newPosition) {
+                return FeedAdapter.DIFF_CALLBACK.getChangePayload(oldItems.get(oldPosition), newItems.get(newPosition));
+            }
+        }, true);
+    }
+
+    private static List<FeedItem> decode(List<DataDocument> documents) {
+        List<FeedItem> items = new ArrayList<>(documents.size());
+        for (DataDocument document : documents) {
+            items.add(FeedItemCodec.INSTANCE.decode(document));
+        }
+        return items;
+    }
+
+    private static DataDocument post(int n, int likes) {
+        FeedItem item = new FeedItem("user-" + (n % 50), "Post " + n, "https://example.com/posts/" + n + ".jpg");
+        item.setId(String.format("p%05d", n));
+        item.setTimestamp(new Timestamp(1700000000L + n, 0));
+        item.setLikes(likes);
+        return new DataDocument("posts/" + item.getId(), FeedItemCodec.INSTANCE.encode(item));
+    }
+}
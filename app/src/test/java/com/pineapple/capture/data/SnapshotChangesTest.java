@@ -0,0 +1,74 @@
+package com.pineapple.capture.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SnapshotChangesTest {
+    private static final Comparator<DataDocument> BY_PATH = Comparator.comparing(DataDocument::getPath);
+
+    // Maps a document to its id, or rejects it when it is not marked valid
+    private static final DocumentMapper<String> MAPPER = document ->
+        Boolean.TRUE.equals(document.get("valid")) ? document.getId() : null;
+
+    private final IncrementalList<String> list = new IncrementalList<>(id -> id);
+    private List<DataDocument> documents = Collections.emptyList();
+
+    @Test
+    public void malformedDocument_thenRemovalAfterIt_removesTheRightItem() {
+        emit(valid("a"), malformed("b"), valid("c"), valid("d"));
+        assertEquals(Arrays.asList("a", "c", "d"), items());
+
+        emit(valid("a"), malformed("b"), valid("d"));
+
+        assertEquals(Arrays.asList("a", "d"), items());
+    }
+
+    @Test
+    public void malformedDocument_keepsLaterAdditionsInOrder() {
+        emit(malformed("a"), valid("c"));
+
+        emit(malformed("a"), valid("b"), valid("c"), valid("d"));
+
+        assertEquals(Arrays.asList("b", "c", "d"), items());
+    }
+
+    @Test
+    public void documentBecomingMalformed_leavesTheList() {
+        emit(valid("a"), valid("b"), valid("c"));
+
+        emit(valid("a"), malformed("b"), valid("c"));
+        assertEquals(Arrays.asList("a", "c"), items());
+
+        emit(valid("a"), valid("b"), valid("c"));
+        assertEquals(Arrays.asList("a", "b", "c"), items());
+    }
+
+    private void emit(DataDocument... next) {
+        List<DataDocument> sorted = new ArrayList<>(Arrays.asList(next));
+        sorted.sort(BY_PATH);
+        SnapshotChanges.apply(new DataSnapshot(sorted, InMemoryDataSource.diff(documents, sorted, BY_PATH)), list, MAPPER);
+        documents = sorted;
+    }
+
+    private List<String> items() {
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < list.size(); i++) {
+            items.add(list.get(i));
+        }
+        return items;
+    }
+
+    private static DataDocument valid(String id) {
+        return new DataDocument("items/" + id, Collections.singletonMap("valid", true));
+    }
+
+    private static DataDocument malformed(String id) {
+        return new DataDocument("items/" + id, Collections.singletonMap("valid", false));
+    }
+}
@@ -0,0 +1,245 @@
+package com.pineapple.capture.data;
+
+import com.google.firebase.firestore.ListenerRegistration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SnapshotRepositoryTest {
+    private static final long GRACE_PERIOD_MS = 10_000;
+
+    private FakeSource<String> source;
+    private ManualScheduler scheduler;
+    private SnapshotRepository repository;
+    private int mapped;
+
+    @Before
+    public void setUp() {
+        source = new FakeSource<>();
+        scheduler = new ManualScheduler();
+        // Runs everything on the calling thread, in place of the mapping thread
+        repository = new SnapshotRepository(new InMemoryDataSource(), GRACE_PERIOD_MS, Runnable::run, scheduler);
+    }
+
+    @Test
+    public void observersOfOneKey_shareOneListenerAndMapping() {
+        RecordingObserver first = new RecordingObserver();
+        RecordingObserver second = new RecordingObserver();
+        observe(first);
+        observe(second);
+
+        source.emit("a");
+
+        assertEquals(1, source.attached);
+        assertEquals(1, mapped);
+        assertEquals(Collections.singletonList("A"), first.values);
+        assertEquals(Collections.singletonList("A"), second.values);
+        assertEquals(Collections.singletonList(true), second.replays);
+
+        source.emit("b");
+        assertEquals(Arrays.asList(true, false), second.replays);
+    }
+
+    @Test
+    public void lateObserver_getsLastValueAsReplay() {
+        observe(new RecordingObserver());
+        source.emit("a");
+
+        RecordingObserver late = new RecordingObserver();
+        observe(late);
+
+        assertEquals(Collections.singletonList("A"), late.values);
+        assertEquals(Collections.singletonList(true), late.replays);
+        assertEquals(1, mapped);
+    }
+
+    @Test
+    public void lastObserverLeaving_detachesAfterGracePeriod() {
+        ListenerRegistration first = observe(new RecordingObserver());
+        ListenerRegistration second = observe(new RecordingObserver());
+
+        first.remove();
+        assertTrue(scheduler.tasks.isEmpty());
+        second.remove();
+        assertEquals(0, source.removed);
+        assertEquals(Collections.singletonList(GRACE_PERIOD_MS), scheduler.delays);
+
+        scheduler.runAll();
+        assertEquals(1, source.removed);
+
+        // The next observer starts over with a new listener
+        observe(new RecordingObserver());
+        assertEquals(2, source.attached);
+    }
+
+    @Test
+    public void observerReturningWithinGracePeriod_keepsListener() {
+        observe(new RecordingObserver()).remove();
+        source.emit("a");
+
+        RecordingObserver returning = new RecordingObserver();
+        observe(returning);
+        scheduler.runAll();
+
+        assertEquals(1, source.attached);
+        assertEquals(0, source.removed);
+        assertEquals(Collections.singletonList("A"), returning.values);
+    }
+
+    @Test
+    public void error_reachesEveryObserverAndDropsTheListener() {
+        RecordingObserver first = new RecordingObserver();
+        RecordingObserver second = new RecordingObserver();
+        observe(first);
+        observe(second);
+        Exception error = new Exception("denied");
+
+        source.fail(error);
+
+        assertEquals(Collections.singletonList(error), first.errors);
+        assertEquals(Collections.singletonList(error), second.errors);
+        assertEquals(1, source.removed);
+
+        RecordingObserver again = new RecordingObserver();
+        observe(again);
+        source.emit("b");
+        assertEquals(2, source.attached);
+        assertEquals(Collections.singletonList("B"), again.values);
+        assertTrue(first.values.isEmpty());
+    }
+
+    @Test
+    public void resubscribeAfterError_rebuildsWithoutADocumentRemovedInBetween() {
+        FakeSource<DataSnapshot> friends = new FakeSource<>();
+        IncrementalList<String> list = new IncrementalList<>(id -> id);
+        // Handles snapshots as FriendsViewModel does
+        SnapshotRepository.Observer<DataSnapshot> observer = new SnapshotRepository.Observer<DataSnapshot>() {
+            @Override
+            public void onValue(DataSnapshot value, boolean replay) {
+                if (replay) {
+                    list.clear();
+                    for (DataDocument document : value.getDocuments()) {
+                        list.add(document.getId());
+                    }
+                } else {
+                    SnapshotChanges.apply(value, list, DataDocument::getId);
+                }
+            }
+
+            @Override
+            public void onError(Exception e) {
+            }
+        };
+        repository.observe("friends", friends, value -> value, observer);
+        friends.emit(friendsSnapshot(Collections.emptyList(), Arrays.asList("a", "b")));
+        friends.emit(friendsSnapshot(Arrays.asList("a", "b"), Arrays.asList("a", "b", "c")));
+        friends.fail(new Exception("unavailable"));
+
+        // b is removed while no listener is attached, so no snapshot ever reports the removal
+        repository.observe("friends", friends, value -> value, observer);
+        friends.emit(friendsSnapshot(Collections.emptyList(), Arrays.asList("a", "c")));
+
+        assertEquals(2, list.size());
+        assertEquals("a", list.get(0));
+        assertEquals("c", list.get(1));
+    }
+
+    @Test
+    public void resubscribeDelay_backsOffUpToItsCap() {
+        assertEquals(1_000, SnapshotRepository.resubscribeDelayMillis(1));
+        assertEquals(2_000, SnapshotRepository.resubscribeDelayMillis(2));
+        assertEquals(5 * 60_000, SnapshotRepository.resubscribeDelayMillis(100));
+    }
+
+    private ListenerRegistration observe(RecordingObserver observer) {
+        return repository.observe("key", source, value -> {
+            mapped++;
+            return value.toUpperCase();
+        }, observer);
+    }
+
+    private static DataSnapshot friendsSnapshot(List<String> previousIds, List<String> ids) {
+        List<DataDocument> previous = friendDocuments(previousIds);
+        List<DataDocument> documents = friendDocuments(ids);
+        return new DataSnapshot(documents, InMemoryDataSource.diff(previous, documents, Comparator.comparing(DataDocument::getPath)));
+    }
+
+    private static List<DataDocument> friendDocuments(List<String> ids) {
+        List<DataDocument> documents = new ArrayList<>();
+        for (String id : ids) {
+            documents.add(new DataDocument("users/u1/friends/" + id, Collections.singletonMap("name", id)));
+        }
+        return documents;
+    }
+
+    private static class FakeSource<S> implements SnapshotRepository.Source<S> {
+        int attached;
+        int removed;
+        private Executor executor;
+        private DataSource.Listener<S> listener;
+
+        @Override
+        public ListenerRegistration listen(Executor executor, DataSource.Listener<S> listener) {
+            attached++;
+            this.executor = executor;
+            this.listener = listener;
+            return () -> removed++;
+        }
+
+        void emit(S value) {
+            executor.execute(() -> listener.onEvent(value, null));
+        }
+
+        void fail(Exception error) {
+            executor.execute(() -> listener.onEvent(null, error));
+        }
+    }
+
+    private static class ManualScheduler implements SnapshotRepository.Scheduler {
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<Long> delays = new ArrayList<>();
+
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            tasks.add(task);
+            delays.add(delayMs);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            tasks.remove(task);
+        }
+
+        void runAll() {
+            List<Runnable> due = new ArrayList<>(tasks);
+            tasks.clear();
+            for (Runnable task : due) {
+                task.run();
+            }
+        }
+    }
+
+    private static class RecordingObserver implements SnapshotRepository.Observer<String> {
+        final List<String> values = new ArrayList<>();
+        final List<Boolean> replays = new ArrayList<>();
+        final List<Exception> errors = new ArrayList<>();
+
+        @Override
+        public void onValue(String value, boolean replay) {
+            values.add(value);
+            replays.add(replay);
+        }
+
+        @Override
+        public void onError(Exception e) {
+            errors.add(e);
+        }
+    }
+}
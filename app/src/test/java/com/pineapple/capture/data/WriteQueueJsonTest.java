@@ -0,0 +1,86 @@
+package com.pineapple.capture.data;
+
+import com.google.firebase.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pending writes as they are saved to and restored from the write queue's file.
+ */
+public class WriteQueueJsonTest {
+    @Test
+    public void roundTrip_keepsEveryValueType() throws Exception {
+        Map<String, Object> nested = new HashMap<>();
+        nested.put("city", "Hanoi");
+        nested.put("visits", 3L);
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("name", "Ana");
+        fields.put("verified", true);
+        fields.put("age", 31L);
+        fields.put("score", 4.5);
+        fields.put("big", Long.MAX_VALUE);
+        fields.put("missing", null);
+        fields.put("joined", new Timestamp(1700000000L, 123456789));
+        fields.put("home", nested);
+        fields.put("tags", Arrays.asList("a", 2L, new Timestamp(5L, 6)));
+
+        PendingWrite restored = roundTrip(PendingWrite.set("users/u1", fields));
+
+        assertEquals(PendingWrite.Kind.SET, restored.getKind());
+        assertEquals("users/u1", restored.getPath());
+        assertEquals(fields, restored.getFields());
+        assertTrue(restored.getFields().get("age") instanceof Long);
+        assertTrue(restored.getFields().get("score") instanceof Double);
+    }
+
+    @Test
+    public void roundTrip_keepsIncrementsApartFromFields() throws Exception {
+        PendingWrite write = PendingWrite.merge("posts/p1/likeShards/3", Collections.singletonMap("updated", true))
+            .then(PendingWrite.increment("posts/p1/likeShards/3", "count", 2L))
+            .then(PendingWrite.increment("posts/p1/likeShards/3", "weight", 0.25));
+
+        PendingWrite restored = roundTrip(write);
+
+        assertEquals(PendingWrite.Kind.MERGE, restored.getKind());
+        assertEquals(write.getFields(), restored.getFields());
+        assertEquals(write.getIncrements(), restored.getIncrements());
+        assertTrue(restored.getIncrements().get("count") instanceof Long);
+        assertTrue(restored.getIncrements().get("weight") instanceof Double);
+    }
+
+    @Test
+    public void roundTrip_keepsKind() throws Exception {
+        assertEquals(PendingWrite.Kind.DELETE, roundTrip(PendingWrite.delete("users/u1")).getKind());
+        assertEquals(PendingWrite.Kind.UPDATE,
+            roundTrip(PendingWrite.update("users/u1", Collections.singletonMap("name", "b"))).getKind());
+    }
+
+    @Test
+    public void roundTrip_keepsMarkerCounter() throws Exception {
+        PendingWrite restored = roundTrip(PendingWrite.deleteMarker("posts/p1/likes/u1", "posts/p1/likeShards/3", "count"));
+
+        assertEquals(PendingWrite.Kind.DELETE, restored.getKind());
+        assertEquals("posts/p1/likeShards/3", restored.getCounterPath());
+        assertEquals("count", restored.getCounterField());
+        assertFalse(roundTrip(PendingWrite.delete("users/u1")).isMarker());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fromJson_rejectsUnknownValueType() throws Exception {
+        JSONObject json = WriteQueue.toJson(PendingWrite.set("users/u1", Collections.singletonMap("name", "a")));
+        json.getJSONObject("fields").getJSONArray("name").put(0, "blob");
+        WriteQueue.fromJson(json);
+    }
+
+    // Through the text form, as written to disk
+    private static PendingWrite roundTrip(PendingWrite write) throws Exception {
+        return WriteQueue.fromJson(new JSONObject(WriteQueue.toJson(write).toString()));
+    }
+}
@@ -0,0 +1,69 @@
+package com.pineapple.capture.feed;
+
+import com.pineapple.capture.data.DataDocument;
+import com.pineapple.capture.data.DocumentCodec;
+import com.pineapple.capture.data.InMemoryDataSource;
+import java.util.Collections;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Likes as the write queue commits them: the net marker write for one user and post.
+ */
+public class DataSourceLikeBackendTest {
+    private InMemoryDataSource data;
+    private FeedItem post;
+
+    @Before
+    public void setUp() throws Exception {
+        data = new InMemoryDataSource();
+        post = new FeedItem("author", "hello", null);
+        post.setId("p1");
+        data.set("posts/p1", FeedItemCodec.INSTANCE.encode(post)).get();
+    }
+
+    @Test
+    public void like_followsMarkerAcrossRestarts() throws Exception {
+        assertEquals(Integer.valueOf(1), commit("u1", true));
+        assertTrue(data.get("posts/p1/likes/u1").get().exists());
+
+        // A new session that takes the post as unliked does not count the like twice
+        assertEquals(Integer.valueOf(0), commit("u1", true));
+        assertEquals(Integer.valueOf(-1), commit("u1", false));
+        assertFalse(data.get("posts/p1/likes/u1").get().exists());
+        assertEquals(0, likes("posts/p1", "likes"));
+    }
+
+    @Test
+    public void like_countsEachUserOnce() throws Exception {
+        commit("u1", true);
+        commit("u2", true);
+        commit("u1", false);
+        commit("u1", false);
+
+        assertEquals(1, likes("posts/p1", "likes"));
+    }
+
+    @Test
+    public void like_countsInPinnedShard() throws Exception {
+        post.setLikeShards(LikeCounter.DEFAULT_SHARDS);
+        commit("u1", true);
+
+        DataSourceLikeBackend likes = new DataSourceLikeBackend(data, null);
+        assertEquals(Collections.singletonMap("p1", 1L), likes.sumShards(Collections.singletonList("p1")));
+    }
+
+    private Integer commit(String userId, boolean liked) throws Exception {
+        Map<String, Object> marker = liked ? Collections.singletonMap("likedAt", 1L) : null;
+        return data.setMarker(DataSourceLikeBackend.likePath(post.getId(), userId), marker,
+            DataSourceLikeBackend.counterPath(post, userId), DataSourceLikeBackend.counterField(post)).get();
+    }
+
+    private long likes(String path, String field) throws Exception {
+        DataDocument document = data.get(path).get();
+        return DocumentCodec.getLong(document.getData(), field);
+    }
+}
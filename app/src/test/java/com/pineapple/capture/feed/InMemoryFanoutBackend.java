@@ -0,0 +1,56 @@
+package com.pineapple.capture.feed;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Stand-in for {@link DataSourceFanoutBackend} that keeps timelines and checkpoints in maps and
+ * can be told to fail a given commit.
+ */
+class InMemoryFanoutBackend implements TimelineFanout.Backend {
+    final Map<String, List<String>> followersByAuthor = new HashMap<>();
+    // user id -> post ids in their timeline, counting repeated writes
+    final Map<String, Map<String, Integer>> timelines = new TreeMap<>();
+    final Map<String, TimelineFanout.Checkpoint> checkpoints = new HashMap<>();
+    final List<Integer> batchSizes = new ArrayList<>();
+    int failOnCommit = -1;
+    private int commits;
+
+    @Override
+    public List<String> loadFollowers(String authorId) {
+        return followersByAuthor.getOrDefault(authorId, new ArrayList<>());
+    }
+
+    @Override
+    public TimelineFanout.Checkpoint loadCheckpoint(String authorId, String postId) {
+        return checkpoints.get(authorId + "/" + postId);
+    }
+
+    @Override
+    public List<TimelineFanout.Checkpoint> loadIncomplete(String authorId) {
+        List<TimelineFanout.Checkpoint> incomplete = new ArrayList<>();
+        for (Map.Entry<String, TimelineFanout.Checkpoint> entry : checkpoints.entrySet()) {
+            if (entry.getKey().startsWith(authorId + "/") && !entry.getValue().isComplete()) {
+                incomplete.add(entry.getValue());
+            }
+        }
+        return incomplete;
+    }
+
+    @Override
+    public void commit(TimelineEntry entry, List<String> followerIds, TimelineFanout.Checkpoint checkpoint) throws IOException {
+        if (commits++ == failOnCommit) {
+            throw new IOException("Injected failure on commit " + failOnCommit);
+        }
+        batchSizes.add(followerIds.size() + 1);
+        for (String followerId : followerIds) {
+            timelines.computeIfAbsent(followerId, id -> new HashMap<>())
+                .merge(entry.getPostId(), 1, Integer::sum);
+        }
+        checkpoints.put(entry.getAuthorId() + "/" + entry.getPostId(), checkpoint);
+    }
+}
@@ -0,0 +1,67 @@
+package com.pineapple.capture.feed;
+
+import com.pineapple.capture.data.InMemoryDataSource;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Like taps per second on one post tapped by many users at once, each tap committed as the
+ * write queue commits it: a transaction that sets or removes the user's marker and moves the
+ * counter. Every write holds its document for a millisecond, as a round trip would. With no
+ * shards every commit waits for the one post document; with shards they spread over that
+ * many documents, while the markers never conflict.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(16)
+public class LikeCounterBenchmark {
+    private static final long WRITE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // Unsharded, and LikeCounter.DEFAULT_SHARDS
+    @Param({"0", "10"})
+    public int shards;
+
+    private InMemoryDataSource data;
+    private FeedItem post;
+    private final AtomicInteger users = new AtomicInteger();
+
+    /** One liker per benchmark thread, who likes and unlikes in turn. */
+    @State(Scope.Thread)
+    public static class Liker {
+        String userId;
+        boolean liked;
+
+        @Setup
+        public void setUp(LikeCounterBenchmark benchmark) {
+            userId = "user-" + benchmark.users.incrementAndGet();
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        data = new InMemoryDataSource();
+        post = LikeCounterTest.post(shards);
+        data.set("posts/" + post.getId(), FeedItemCodec.INSTANCE.encode(post)).get();
+        data.setDocumentWriteNanos(WRITE_NANOS);
+    }
+
+    @Benchmark
+    public Integer toggleLike(Liker liker) throws Exception {
+        liker.liked = !liker.liked;
+        Map<String, Object> marker = liker.liked ? Collections.singletonMap("likedAt", 1L) : null;
+        return data.setMarker(DataSourceLikeBackend.likePath(post.getId(), liker.userId), marker,
+            DataSourceLikeBackend.counterPath(post, liker.userId), DataSourceLikeBackend.counterField(post)).get();
+    }
+}
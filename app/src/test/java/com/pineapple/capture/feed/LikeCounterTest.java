@@ -0,0 +1,79 @@
+package com.pineapple.capture.feed;
+
+import com.pineapple.capture.data.DocumentCodec;
+import com.pineapple.capture.data.InMemoryDataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Many likers tapping one post at once, with every write holding its document for a
+ * millisecond. Every like must be counted once whether the post has one counter document or
+ * shards; how much faster the shards are is measured by {@link LikeCounterBenchmark}.
+ */
+public class LikeCounterTest {
+    private static final int LIKERS = 32;
+    // Odd, so every liker ends up liking the post
+    private static final int TAPS_PER_LIKER = 5;
+    private static final long WRITE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void concurrentTaps_countEachLikerOnce() throws Exception {
+        FeedItem single = post(0);
+        InMemoryDataSource singleData = tapConcurrently(single);
+
+        FeedItem sharded = post(LikeCounter.DEFAULT_SHARDS);
+        InMemoryDataSource shardedData = tapConcurrently(sharded);
+        LikeCounter shardedCounter = new LikeCounter(new DataSourceLikeBackend(shardedData, null));
+
+        assertEquals(LIKERS, DocumentCodec.getLong(singleData.get("posts/" + single.getId()).get().getData(), "likes"));
+        assertEquals(Long.valueOf(LIKERS), shardedCounter.count(Collections.singletonList(sharded)).get(sharded.getId()));
+        assertTrue(shardedCounter.count(Collections.singletonList(single)).isEmpty());
+    }
+
+    static FeedItem post(int shards) {
+        FeedItem post = new FeedItem();
+        post.setId("post-" + shards);
+        post.setLikeShards(shards);
+        return post;
+    }
+
+    private static InMemoryDataSource tapConcurrently(FeedItem post) throws Exception {
+        InMemoryDataSource data = new InMemoryDataSource();
+        data.set("posts/" + post.getId(), FeedItemCodec.INSTANCE.encode(post)).get();
+        data.setDocumentWriteNanos(WRITE_NANOS);
+        ExecutorService likers = Executors.newFixedThreadPool(LIKERS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < LIKERS; i++) {
+                String userId = "user-" + i;
+                results.add(likers.submit(() -> {
+                    start.await();
+                    for (int tap = 0; tap < TAPS_PER_LIKER; tap++) {
+                        Map<String, Object> marker = tap % 2 == 0 ? Collections.singletonMap("likedAt", 1L) : null;
+                        data.setMarker(DataSourceLikeBackend.likePath(post.getId(), userId), marker,
+                            DataSourceLikeBackend.counterPath(post, userId), DataSourceLikeBackend.counterField(post)).get();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            likers.shutdownNow();
+        }
+        return data;
+    }
+}
@@ -0,0 +1,58 @@
+package com.pineapple.capture.feed;
+
+import com.google.firebase.Timestamp;
+import com.pineapple.capture.data.IncrementalList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MainFeedViewModelTest {
+    @Test
+    public void twoPostsPushedOutByOneSnapshot_keepTheirOrderBeforeOlderPages() {
+        // A head of four posts followed by an older page of two
+        IncrementalList<FeedItem> items = new IncrementalList<>(FeedItem::getId);
+        for (int seconds : new int[] {10, 9, 8, 7, 5, 4}) {
+            items.add(post(seconds));
+        }
+        int headSize = 4;
+
+        // Two newer posts push out 8 and then 7; each removal's index is taken after the last
+        headSize--;
+        MainFeedViewModel.movePushedOut(items, 2, headSize);
+        headSize--;
+        MainFeedViewModel.movePushedOut(items, 2, headSize);
+
+        assertEquals(Arrays.asList("p10", "p9", "p8", "p7", "p5", "p4"), ids(items));
+        assertEquals(2, headSize);
+    }
+
+    @Test
+    public void pushedOutPost_withNoOlderPage_goesToTheEnd() {
+        IncrementalList<FeedItem> items = new IncrementalList<>(FeedItem::getId);
+        for (int seconds : new int[] {10, 9, 8}) {
+            items.add(post(seconds));
+        }
+
+        MainFeedViewModel.movePushedOut(items, 2, 2);
+
+        assertEquals(Arrays.asList("p10", "p9", "p8"), ids(items));
+    }
+
+    private static FeedItem post(int seconds) {
+        FeedItem item = new FeedItem("author", "Post " + seconds, null);
+        item.setId("p" + seconds);
+        item.setTimestamp(new Timestamp(seconds, 0));
+        return item;
+    }
+
+    private static List<String> ids(IncrementalList<FeedItem> items) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            ids.add(items.get(i).getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,86 @@
+package com.pineapple.capture.feed;
+
+import com.pineapple.capture.data.DataSource;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TimelineFanoutTest {
+    private static final int FOLLOWERS = 1200;
+
+    private InMemoryFanoutBackend backend;
+    private TimelineEntry entry;
+
+    @Before
+    public void setUp() {
+        backend = new InMemoryFanoutBackend();
+        List<String> followers = new ArrayList<>();
+        for (int i = 0; i < FOLLOWERS; i++) {
+            followers.add("follower-" + i);
+        }
+        backend.followersByAuthor.put("author", followers);
+        entry = new TimelineEntry("post-1", "author", null);
+    }
+
+    @Test
+    public void run_writesEveryTimelineOnceWithinBatchLimit() throws Exception {
+        int written = new TimelineFanout(backend).run(entry);
+
+        assertEquals(FOLLOWERS + 1, written);
+        assertEveryTimelineWrittenOnce();
+        for (int size : backend.batchSizes) {
+            assertTrue(size <= DataSource.MAX_BATCH_WRITES);
+        }
+        assertEquals(3, backend.batchSizes.size());
+        assertTrue(backend.loadCheckpoint("author", "post-1").isComplete());
+    }
+
+    @Test
+    public void run_resumesAfterFailedBatch() throws Exception {
+        TimelineFanout fanout = new TimelineFanout(backend, 100);
+        backend.failOnCommit = 5;
+        try {
+            fanout.run(entry);
+            fail("Expected the injected failure");
+        } catch (IOException expected) {
+        }
+        assertEquals(1, backend.loadIncomplete("author").size());
+
+        assertEquals(1, fanout.resumeIncomplete("author"));
+
+        assertEveryTimelineWrittenOnce();
+        assertTrue(backend.loadIncomplete("author").isEmpty());
+    }
+
+    @Test
+    public void run_isNoOpOnceComplete() throws Exception {
+        TimelineFanout fanout = new TimelineFanout(backend);
+        fanout.run(entry);
+        int batches = backend.batchSizes.size();
+
+        assertEquals(0, fanout.run(entry));
+        assertEquals(batches, backend.batchSizes.size());
+    }
+
+    @Test
+    public void run_withoutFollowersReachesAuthorOnly() throws Exception {
+        TimelineEntry lonely = new TimelineEntry("post-2", "nobody", null);
+
+        new TimelineFanout(backend).run(lonely);
+
+        assertEquals(1, (int) backend.timelines.get("nobody").get("post-2"));
+        assertTrue(backend.loadCheckpoint("nobody", "post-2").isComplete());
+    }
+
+    private void assertEveryTimelineWrittenOnce() {
+        assertEquals(FOLLOWERS + 1, backend.timelines.size());
+        for (Map.Entry<String, Map<String, Integer>> timeline : backend.timelines.entrySet()) {
+            assertEquals(timeline.getKey(), Integer.valueOf(1), timeline.getValue().get("post-1"));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.pineapple.capture.friends;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Friend search lookups against indexes of different sizes, cycling through queries from one
+ * letter to several words, and the cost of keeping the index current as friends change.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FriendSearchBenchmark {
+    private static final String[] QUERIES = FriendSearchFixtures.QUERIES;
+
+    @Param({"100", "1000", "10000"})
+    public int size;
+
+    private FriendSearchIndex index;
+    private final FriendSearchIndex.Results results = new FriendSearchIndex.Results();
+    private Friend[] renamed;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        index = new FriendSearchIndex();
+        Random random = new Random(42);
+        for (Friend friend : FriendSearchFixtures.friends(size, random)) {
+            index.upsert(friend);
+        }
+        renamed = new Friend[64];
+        for (int i = 0; i < renamed.length; i++) {
+            renamed[i] = new Friend("user-" + random.nextInt(size), FriendSearchFixtures.name(random), null);
+        }
+    }
+
+    @Benchmark
+    public int search() {
+        index.search(QUERIES[next++ & 15], results);
+        return results.size();
+    }
+
+    @Benchmark
+    public int rename() {
+        index.upsert(renamed[next++ & 63]);
+        return index.size();
+    }
+}
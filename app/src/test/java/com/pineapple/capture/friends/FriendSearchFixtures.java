@@ -0,0 +1,35 @@
+package com.pineapple.capture.friends;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Friends and queries shared by {@link FriendSearchIndexTest} and {@link FriendSearchBenchmark}:
+ * names from a mix of scripts and accents, and queries from one letter to several words.
+ */
+final class FriendSearchFixtures {
+    private static final String[] FIRST = {"Ana", "Andr\u00e9s", "Bao", "Chlo\u00e9", "Daniel", "\u00c9lodie", "Farah", "Giulia",
+        "Hiro", "Ines", "Jonas", "Kemal", "Linh", "Mateo", "Noor", "Olek", "Priya", "Quentin", "Rosa", "S\u00f8ren"};
+    private static final String[] LAST = {"Nguyen", "Smith", "Garc\u00eda", "M\u00fcller", "Rossi", "Tanaka", "Kowalski",
+        "Dubois", "Silva", "\u00d6zt\u00fcrk", "Johansson", "Ivanova", "Kim", "Okafor", "Novak", "Haddad"};
+
+    // Sixteen, so the benchmark can cycle through them with a mask
+    static final String[] QUERIES = {"a", "an", "and", "chlo", "elo", "mull", "oz", "gar",
+        "tanaka", "priya r", "so", "x", "daniel kim", "in", "no", "q"};
+
+    private FriendSearchFixtures() {}
+
+    static String name(Random random) {
+        return FIRST[random.nextInt(FIRST.length)] + " " + LAST[random.nextInt(LAST.length)];
+    }
+
+    /** Friends {@code user-0} to {@code user-(count - 1)} with names drawn from random. */
+    static List<Friend> friends(int count, Random random) {
+        List<Friend> friends = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            friends.add(new Friend("user-" + i, name(random), null));
+        }
+        return friends;
+    }
+}
@@ -0,0 +1,125 @@
+package com.pineapple.capture.friends;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class FriendSearchIndexTest {
+    private static final int FRIENDS = 10_000;
+    private static final String[] QUERIES = FriendSearchFixtures.QUERIES;
+
+    private FriendSearchIndex index;
+    private List<Friend> friends;
+    private final FriendSearchIndex.Results results = new FriendSearchIndex.Results();
+
+    @Before
+    public void setUp() {
+        index = new FriendSearchIndex();
+        friends = FriendSearchFixtures.friends(FRIENDS, new Random(42));
+        for (Friend friend : friends) {
+            index.upsert(friend);
+        }
+    }
+
+    @Test
+    public void search_matchesWordPrefixesIgnoringCaseAndAccents() {
+        FriendSearchIndex small = new FriendSearchIndex();
+        small.upsert(new Friend("1", "\u00c9lodie Dubois", null));
+        small.upsert(new Friend("2", "Elon M\u00fcller", null));
+        small.upsert(new Friend("3", "Anna-Lena Annabel", null));
+
+        small.search("elo", results);
+        assertEquals(2, results.size());
+        small.search("MUL", results);
+        assertEquals("2", results.get(0).getUserId());
+        small.search("ann", results);
+        assertEquals(1, results.size());
+        small.search("el dub", results);
+        assertEquals(1, results.size());
+        assertEquals("1", results.get(0).getUserId());
+        small.search("  ", results);
+        assertEquals(0, results.size());
+    }
+
+    @Test
+    public void upsertAndRemove_updateMatchesIncrementally() {
+        FriendSearchIndex small = new FriendSearchIndex();
+        small.upsert(new Friend("1", "Rosa Silva", null));
+        small.upsert(new Friend("1", "Rosa Kim", null));
+        small.search("silva", results);
+        assertEquals(0, results.size());
+        small.search("kim", results);
+        assertEquals(1, results.size());
+
+        small.remove("1");
+        small.search("rosa", results);
+        assertEquals(0, results.size());
+        assertEquals(0, small.size());
+
+        small.upsert(new Friend("2", "Rosa Novak", null));
+        small.search("ro", results);
+        assertEquals("2", results.get(0).getUserId());
+    }
+
+    // How fast this is at each size is measured by FriendSearchBenchmark
+    @Test
+    public void search_at10kFriends_findsWhatAScanOfEveryNameFinds() {
+        for (String query : QUERIES) {
+            Set<String> expected = new HashSet<>();
+            for (Friend friend : friends) {
+                if (matches(friend.getName(), query)) {
+                    expected.add(friend.getUserId());
+                }
+            }
+            index.search(query, results);
+            Set<String> found = new HashSet<>();
+            for (int i = 0; i < results.size(); i++) {
+                found.add(results.get(i).getUserId());
+            }
+            assertEquals(query, expected.size(), results.size());
+            assertEquals(query, expected, found);
+        }
+    }
+
+    private static boolean matches(String name, String query) {
+        String[] nameWords = FriendSearchIndex.split(name);
+        for (String queryWord : FriendSearchIndex.split(query)) {
+            boolean found = false;
+            for (String nameWord : nameWords) {
+                found |= nameWord.startsWith(queryWord);
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    public void search_doesNotAllocate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        // Let the results buffer reach its largest size first
+        for (int i = 0; i < 20_000; i++) {
+            index.search(QUERIES[i % QUERIES.length], results);
+        }
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 10_000; i++) {
+            index.search(QUERIES[i % QUERIES.length], results);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        // Leaves room for the measurement itself, but not for even one byte per query
+        assertTrue(allocated + " bytes", allocated < 10_000);
+    }
+}
@@ -0,0 +1,66 @@
+package com.pineapple.capture.profile;
+
+import com.pineapple.capture.data.DataSource;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Stand-in for {@link DataSourcePropagationBackend} holding friends documents in a sorted
+ * map, with a count of field writes and an optional failing commit.
+ */
+class InMemoryPropagationBackend implements ProfilePropagation.Backend {
+    // Friends documents by path
+    final TreeMap<String, Map<String, Object>> documents = new TreeMap<>();
+    final Map<String, ProfilePropagation.Checkpoint> checkpoints = new HashMap<>();
+    final List<Integer> batchSizes = new ArrayList<>();
+    int pageSize = DataSource.MAX_BATCH_WRITES;
+    int documentWrites;
+    int failOnCommit = -1;
+    private int commits;
+
+    void addFriendDocument(String ownerId, String friendId, String name) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("userId", friendId);
+        data.put("name", name);
+        data.put("profileImageUrl", null);
+        documents.put("users/" + ownerId + "/friends/" + friendId, data);
+    }
+
+    @Override
+    public List<ProfilePropagation.FriendCopy> loadCopies(String userId, String afterPath) {
+        List<ProfilePropagation.FriendCopy> copies = new ArrayList<>();
+        Map<String, Map<String, Object>> range = afterPath != null ? documents.tailMap(afterPath, false) : documents;
+        for (Map.Entry<String, Map<String, Object>> doc : range.entrySet()) {
+            if (copies.size() == pageSize) {
+                break;
+            }
+            if (userId.equals(doc.getValue().get("userId"))) {
+                copies.add(new ProfilePropagation.FriendCopy(doc.getKey(), new HashMap<>(doc.getValue())));
+            }
+        }
+        return copies;
+    }
+
+    @Override
+    public ProfilePropagation.Checkpoint loadCheckpoint(String userId) {
+        return checkpoints.get(userId);
+    }
+
+    @Override
+    public void commit(String userId, Map<String, Map<String, Object>> updates,
+                       ProfilePropagation.Checkpoint checkpoint) throws IOException {
+        if (commits++ == failOnCommit) {
+            throw new IOException("Injected failure on commit " + failOnCommit);
+        }
+        batchSizes.add(updates.size() + 1);
+        for (Map.Entry<String, Map<String, Object>> update : updates.entrySet()) {
+            documents.get(update.getKey()).putAll(update.getValue());
+            documentWrites++;
+        }
+        checkpoints.put(userId, checkpoint);
+    }
+}
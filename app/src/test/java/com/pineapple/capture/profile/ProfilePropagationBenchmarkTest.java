@@ -0,0 +1,90 @@
+package com.pineapple.capture.profile;
+
+import com.pineapple.capture.data.DataSource;
+import java.io.IOException;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * A user with 5k followers renames themselves; every follower's copy must follow, within
+ * Firestore's batch limit, and without rewriting copies that are already current.
+ */
+public class ProfilePropagationBenchmarkTest {
+    private static final int FOLLOWERS = 5_000;
+
+    private InMemoryPropagationBackend backend;
+
+    @Before
+    public void setUp() {
+        backend = new InMemoryPropagationBackend();
+        for (int i = 0; i < FOLLOWERS; i++) {
+            backend.addFriendDocument(String.format("follower-%05d", i), "star", "Old name");
+            // Copies of someone else, which must not be touched
+            backend.addFriendDocument(String.format("follower-%05d", i), "other", "Other");
+        }
+    }
+
+    @Test
+    public void run_updatesEveryCopyInBoundedBatches() throws Exception {
+        int written = new ProfilePropagation(backend).run("star", new UserProfile("New name", ""));
+
+        assertEquals(FOLLOWERS, written);
+        assertEquals(FOLLOWERS, backend.documentWrites);
+        for (int size : backend.batchSizes) {
+            assertTrue(size <= DataSource.MAX_BATCH_WRITES);
+        }
+        assertAllCopiesNamed("New name");
+    }
+
+    @Test
+    public void run_isIdempotent() throws Exception {
+        ProfilePropagation propagation = new ProfilePropagation(backend);
+        propagation.run("star", new UserProfile("New name", ""));
+        int writes = backend.documentWrites;
+
+        assertEquals(0, propagation.run("star", new UserProfile("New name", "a new bio")));
+        assertEquals(writes, backend.documentWrites);
+    }
+
+    @Test
+    public void run_resumesAfterFailedBatch() throws Exception {
+        ProfilePropagation propagation = new ProfilePropagation(backend);
+        backend.failOnCommit = 4;
+        try {
+            propagation.run("star", new UserProfile("New name", ""));
+            fail("Expected the injected failure");
+        } catch (IOException expected) {
+        }
+        int writtenBeforeFailure = backend.documentWrites;
+
+        int written = propagation.run("star", new UserProfile("New name", ""));
+
+        assertEquals(FOLLOWERS, writtenBeforeFailure + written);
+        assertAllCopiesNamed("New name");
+    }
+
+    @Test
+    public void run_forNewValuesRestartsFromTheBeginning() throws Exception {
+        ProfilePropagation propagation = new ProfilePropagation(backend);
+        backend.failOnCommit = 2;
+        try {
+            propagation.run("star", new UserProfile("Interim", ""));
+            fail("Expected the injected failure");
+        } catch (IOException expected) {
+        }
+
+        propagation.run("star", new UserProfile("Final", ""));
+
+        assertAllCopiesNamed("Final");
+    }
+
+    private void assertAllCopiesNamed(String name) {
+        for (Map.Entry<String, Map<String, Object>> doc : backend.documents.entrySet()) {
+            Object expected = "star".equals(doc.getValue().get("userId")) ? name : "Other";
+            assertEquals(doc.getKey(), expected, doc.getValue().get("name"));
+        }
+    }
+}
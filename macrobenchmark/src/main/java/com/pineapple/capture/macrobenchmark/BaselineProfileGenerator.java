@@ -0,0 +1,36 @@
+package com.pineapple.capture.macrobenchmark;
+
+import androidx.benchmark.macro.junit4.BaselineProfileRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import kotlin.Unit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Records the classes and methods used while starting the app, opening the feed and the
+ * friends list, and flinging both. To update the profile the app ships, run
+ * {@code ./gradlew :macrobenchmark:connectedBenchmarkAndroidTest
+ * -Pandroid.testInstrumentationRunnerArguments.class=com.pineapple.capture.macrobenchmark.BaselineProfileGenerator}
+ * and copy {@code BaselineProfileGenerator_generate-baseline-prof.txt} from
+ * {@code macrobenchmark/build/outputs/connected_android_test_additional_output} over
+ * {@code app/src/main/baseline-prof.txt}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BaselineProfileGenerator {
+    @Rule
+    public BaselineProfileRule rule = new BaselineProfileRule();
+
+    @Test
+    public void generate() {
+        rule.collect(Journeys.PACKAGE_NAME, 15, 3, null, true, false, className -> true, scope -> {
+            scope.pressHome();
+            scope.startActivityAndWait();
+            Journeys.open(scope, Journeys.feed(), Journeys.FEED_ROW);
+            Journeys.fling(scope, Journeys.FEED_LIST);
+            Journeys.open(scope, Journeys.friends(), Journeys.FRIENDS_ROW);
+            Journeys.fling(scope, Journeys.FRIENDS_LIST);
+            return Unit.INSTANCE;
+        });
+    }
+}
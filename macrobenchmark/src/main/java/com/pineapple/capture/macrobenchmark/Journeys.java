@@ -0,0 +1,54 @@
+package com.pineapple.capture.macrobenchmark;
+
+import android.content.Intent;
+import androidx.benchmark.macro.MacrobenchmarkScope;
+import androidx.test.uiautomator.By;
+import androidx.test.uiautomator.Direction;
+import androidx.test.uiautomator.UiDevice;
+import androidx.test.uiautomator.UiObject2;
+import androidx.test.uiautomator.Until;
+
+/**
+ * The user journeys the benchmarks and the baseline profile share. The app's benchmark build
+ * seeds its data and signs a user in, so every screen opens straight onto a full list.
+ */
+final class Journeys {
+    static final String PACKAGE_NAME = "com.pineapple.capture";
+    static final String FEED_LIST = "feed_recycler_view";
+    static final String FEED_ROW = "post_content";
+    static final String FRIENDS_LIST = "friends_recycler_view";
+    static final String FRIENDS_ROW = "friend_name";
+
+    private static final long TIMEOUT_MS = 10_000;
+    private static final int FLINGS = 3;
+
+    private Journeys() {}
+
+    static Intent feed() {
+        return new Intent().setClassName(PACKAGE_NAME, PACKAGE_NAME + ".feed.MainFeedActivity");
+    }
+
+    static Intent friends() {
+        return new Intent().setClassName(PACKAGE_NAME, PACKAGE_NAME + ".friends.FriendsActivity");
+    }
+
+    /** Opens the screen and waits for the first rows of its list to be drawn. */
+    static void open(MacrobenchmarkScope scope, Intent intent, String rowId) {
+        scope.startActivityAndWait(intent);
+        if (!scope.getDevice().wait(Until.hasObject(By.res(PACKAGE_NAME, rowId)), TIMEOUT_MS)) {
+            throw new AssertionError("No " + rowId + " row shown within " + TIMEOUT_MS + " ms");
+        }
+    }
+
+    /** Flings the list down a few times, waiting for it to settle after each. */
+    static void fling(MacrobenchmarkScope scope, String listId) {
+        UiDevice device = scope.getDevice();
+        UiObject2 list = device.findObject(By.res(PACKAGE_NAME, listId));
+        // Keeps the gesture clear of the system navigation areas
+        list.setGestureMargin(device.getDisplayWidth() / 5);
+        for (int i = 0; i < FLINGS; i++) {
+            list.fling(Direction.DOWN);
+            device.waitForIdle();
+        }
+    }
+}
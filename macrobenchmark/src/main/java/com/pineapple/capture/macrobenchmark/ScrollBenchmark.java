@@ -0,0 +1,62 @@
+package com.pineapple.capture.macrobenchmark;
+
+import android.content.Intent;
+import androidx.benchmark.macro.BaselineProfileMode;
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.FrameTimingMetric;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import kotlin.Unit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Frame timing while flinging the feed and the friends list over the seeded data, without any
+ * ahead of time compilation and with the shipped baseline profile.
+ */
+@RunWith(Parameterized.class)
+public class ScrollBenchmark {
+    private static final int ITERATIONS = 5;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static List<CompilationMode> compilationModes() {
+        return Arrays.asList(new CompilationMode.None(), new CompilationMode.Partial(BaselineProfileMode.Require));
+    }
+
+    @Rule
+    public MacrobenchmarkRule rule = new MacrobenchmarkRule();
+
+    private final CompilationMode compilationMode;
+
+    public ScrollBenchmark(CompilationMode compilationMode) {
+        this.compilationMode = compilationMode;
+    }
+
+    @Test
+    public void scrollFeed() {
+        scroll(Journeys.feed(), Journeys.FEED_LIST, Journeys.FEED_ROW);
+    }
+
+    @Test
+    public void scrollFriends() {
+        scroll(Journeys.friends(), Journeys.FRIENDS_LIST, Journeys.FRIENDS_ROW);
+    }
+
+    private void scroll(Intent intent, String listId, String rowId) {
+        rule.measureRepeated(Journeys.PACKAGE_NAME, Collections.singletonList(new FrameTimingMetric()),
+            compilationMode, StartupMode.WARM, ITERATIONS,
+            scope -> {
+                Journeys.open(scope, intent, rowId);
+                return Unit.INSTANCE;
+            },
+            scope -> {
+                Journeys.fling(scope, listId);
+                return Unit.INSTANCE;
+            });
+    }
+}
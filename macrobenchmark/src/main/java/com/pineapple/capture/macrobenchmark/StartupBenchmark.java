@@ -0,0 +1,62 @@
+package com.pineapple.capture.macrobenchmark;
+
+import androidx.benchmark.macro.BaselineProfileMode;
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.StartupTimingMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import kotlin.Unit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Time from launch to the first frame of the feed with its posts, from a killed process (cold)
+ * and from a live process whose activity was destroyed (warm). Each runs without any ahead of
+ * time compilation and with the shipped baseline profile, to show what the profile saves.
+ */
+@RunWith(Parameterized.class)
+public class StartupBenchmark {
+    private static final int ITERATIONS = 10;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static List<CompilationMode> compilationModes() {
+        return Arrays.asList(new CompilationMode.None(), new CompilationMode.Partial(BaselineProfileMode.Require));
+    }
+
+    @Rule
+    public MacrobenchmarkRule rule = new MacrobenchmarkRule();
+
+    private final CompilationMode compilationMode;
+
+    public StartupBenchmark(CompilationMode compilationMode) {
+        this.compilationMode = compilationMode;
+    }
+
+    @Test
+    public void coldStartToFeed() {
+        startToFeed(StartupMode.COLD);
+    }
+
+    @Test
+    public void warmStartToFeed() {
+        startToFeed(StartupMode.WARM);
+    }
+
+    private void startToFeed(StartupMode startupMode) {
+        rule.measureRepeated(Journeys.PACKAGE_NAME, Collections.singletonList(new StartupTimingMetric()),
+            compilationMode, startupMode, ITERATIONS,
+            scope -> {
+                scope.pressHome();
+                return Unit.INSTANCE;
+            },
+            scope -> {
+                Journeys.open(scope, Journeys.feed(), Journeys.FEED_ROW);
+                return Unit.INSTANCE;
+            });
+    }
+}